@@ -7,6 +7,7 @@ import net.gotev.uploadservice.UploadFile;
 import net.gotev.uploadservice.UploadRequest;
 import net.gotev.uploadservice.UploadServiceBroadcastReceiver;
 import net.gotev.uploadservice.UploadTask;
+import net.gotev.uploadservice.UploadTaskRegistry;
 
 import java.io.File;
 import java.io.FileNotFoundException;
@@ -17,6 +18,12 @@ import java.io.FileNotFoundException;
  */
 public class FTPUploadRequest extends UploadRequest<FTPUploadRequest> {
 
+    public static final String TASK_TYPE = "net.gotev.uploadservice.ftp";
+
+    static {
+        UploadTaskRegistry.register(TASK_TYPE, FTPUploadTask.class, FTPUploadTask::new);
+    }
+
     protected final FTPUploadTaskParameters ftpParams = new FTPUploadTaskParameters();
 
     @Override
@@ -36,6 +36,10 @@ public class FTPUploadTask extends UploadTask implements CopyStreamListener {
     private FTPUploadTaskParameters ftpParams = null;
     private FTPClient ftpClient = null;
 
+    // path of the file whose transfer has been interrupted by a pause. When the upload is
+    // resumed, its transfer restarts from the bytes already stored on the server
+    private String pausedFilePath = null;
+
     @Override
     protected void init(UploadService service, Intent intent) throws IOException {
         super.init(service, intent);
@@ -118,7 +122,15 @@ public class FTPUploadTask extends UploadTask implements CopyStreamListener {
                 if (!shouldContinue)
                     break;
 
-                uploadFile(baseWorkingDir, file);
+                try {
+                    uploadFile(baseWorkingDir, file);
+                } catch (IOException exc) {
+                    if (isPaused()) {
+                        pausedFilePath = file.getPath();
+                    }
+                    throw exc;
+                }
+
                 addSuccessfullyUploadedFile(file);
                 iterator.remove();
             }
@@ -176,9 +188,19 @@ public class FTPUploadTask extends UploadTask implements CopyStreamListener {
 
         makeDirectories(remoteDestination, ftpParams.createdDirectoriesPermissions);
 
+        String remoteFileName = getRemoteFileName(file);
+        long restartOffset = getRestartOffset(file, remoteFileName);
+
         InputStream localStream = file.getStream(service);
         try {
-            String remoteFileName = getRemoteFileName(file);
+            if (restartOffset > 0) {
+                skip(localStream, restartOffset);
+                ftpClient.setRestartOffset(restartOffset);
+                uploadedBytes += restartOffset;
+                Logger.debug(LOG_TAG, "Resuming upload of: " + file.getName(service)
+                                      + " from byte " + restartOffset);
+            }
+
             if (!ftpClient.storeFile(remoteFileName, localStream)) {
                 throw new IOException("Error while uploading: " + file.getName(service)
                                       + " to: " + file.getProperty(PARAM_REMOTE_PATH));
@@ -196,6 +218,52 @@ public class FTPUploadTask extends UploadTask implements CopyStreamListener {
         }
     }
 
+    /**
+     * Gets the offset from which to restart the transfer of a file, using REST. The transfer
+     * is restarted only for the file which was being uploaded when the upload got paused, from
+     * the size of the partial file acknowledged by the server.
+     * @param file file to upload
+     * @param remoteFileName remote file name
+     * @return offset in bytes, or 0 to upload the whole file
+     */
+    private long getRestartOffset(UploadFile file, String remoteFileName) {
+        if (!file.getPath().equals(pausedFilePath) || ftpParams.compressedFileTransfer)
+            return 0;
+
+        pausedFilePath = null;
+
+        try {
+            if (!FTPReply.isPositiveCompletion(ftpClient.sendCommand("SIZE", remoteFileName)))
+                return 0;
+
+            String reply = ftpClient.getReplyString().trim();
+            long remoteSize = Long.parseLong(reply.substring(reply.indexOf(' ') + 1).trim());
+
+            return remoteSize <= file.length(service) ? remoteSize : 0;
+
+        } catch (IOException | NumberFormatException exc) {
+            Logger.error(LOG_TAG, "Can't get the size of: " + remoteFileName
+                                  + ". Its upload will restart from the beginning", exc);
+            return 0;
+        }
+    }
+
+    private static void skip(InputStream stream, long bytes) throws IOException {
+        long left = bytes;
+
+        while (left > 0) {
+            long skipped = stream.skip(left);
+
+            if (skipped <= 0) {
+                if (stream.read() < 0)
+                    throw new IOException("Unexpected end of stream while skipping " + bytes + " bytes");
+                skipped = 1;
+            }
+
+            left -= skipped;
+        }
+    }
+
     private void setPermission(String remoteFileName, String permissions) {
         if (permissions == null || "".equals(permissions))
             return;
@@ -224,6 +292,7 @@ public class FTPUploadTask extends UploadTask implements CopyStreamListener {
     public void bytesTransferred(long totalBytesTransferred, int bytesTransferred, long streamSize) {
         uploadedBytes += bytesTransferred;
         broadcastProgress(uploadedBytes, totalBytes);
+        throttle(bytesTransferred);
 
         if (!shouldContinue) {
             try {
@@ -0,0 +1,252 @@
+package net.gotev.uploadservice.s3;
+
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.TreeMap;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Implements AWS Signature Version 4 for payloads transferred in multiple chunks
+ * ({@code STREAMING-AWS4-HMAC-SHA256-PAYLOAD}). Each chunk signature is computed while the
+ * chunk is being written and it's chained to the previous one, so the payload doesn't have to be
+ * hashed before starting the upload.
+ * https://docs.aws.amazon.com/AmazonS3/latest/API/sigv4-streaming.html
+ *
+ * @author Aleksandar Gotev
+ */
+public class AwsV4ChunkSigner {
+
+    public static final String STREAMING_PAYLOAD = "STREAMING-AWS4-HMAC-SHA256-PAYLOAD";
+
+    private static final String ALGORITHM = "AWS4-HMAC-SHA256";
+    private static final String CHUNK_ALGORITHM = "AWS4-HMAC-SHA256-PAYLOAD";
+    private static final String SERVICE = "s3";
+    private static final String CHUNK_SIGNATURE = ";chunk-signature=";
+    private static final String NEW_LINE = "\r\n";
+    private static final int SIGNATURE_LENGTH = 64;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final String accessKeyId;
+    private final String amzDate;
+    private final String scope;
+    private final byte[] signingKey;
+    private final String emptyHash;
+    private final MessageDigest sha256;
+    private String seedSignature;
+    private String previousSignature;
+
+    /**
+     * Creates a new signer for a single request.
+     *
+     * @param accessKeyId access key ID
+     * @param secretKey secret access key
+     * @param region region of the bucket, e.g. us-east-1
+     * @param requestDate date of the request. A new signer has to be created for every
+     *                    request attempt, as the signatures are valid only for 15 minutes
+     */
+    public AwsV4ChunkSigner(String accessKeyId, String secretKey, String region, Date requestDate) {
+        this.accessKeyId = accessKeyId;
+
+        SimpleDateFormat dateTimeFormat = new SimpleDateFormat("yyyyMMdd'T'HHmmss'Z'", Locale.US);
+        dateTimeFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        amzDate = dateTimeFormat.format(requestDate);
+
+        String date = amzDate.substring(0, 8);
+        scope = date + "/" + region + "/" + SERVICE + "/aws4_request";
+
+        try {
+            sha256 = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException exc) {
+            throw new IllegalStateException(exc);
+        }
+
+        signingKey = hmac(hmac(hmac(hmac(("AWS4" + secretKey).getBytes(UTF8), date),
+                region), SERVICE), "aws4_request");
+        emptyHash = hex(sha256.digest());
+    }
+
+    /**
+     * Gets the value of the {@code x-amz-date} header.
+     *
+     * @return ISO8601 basic format date
+     */
+    public String getAmzDate() {
+        return amzDate;
+    }
+
+    /**
+     * Computes the length of the aws-chunked encoded body.
+     *
+     * @param payloadLength length of the payload (the decoded content length)
+     * @param chunkSize size of each chunk. The last one may be smaller
+     * @return encoded body length, which is the request Content-Length
+     */
+    public static long getEncodedLength(long payloadLength, int chunkSize) {
+        long fullChunks = payloadLength / chunkSize;
+        int lastChunkSize = (int) (payloadLength % chunkSize);
+
+        long length = fullChunks * getChunkLength(chunkSize);
+
+        if (lastChunkSize > 0) {
+            length += getChunkLength(lastChunkSize);
+        }
+
+        // final zero-length chunk
+        return length + getChunkLength(0);
+    }
+
+    private static long getChunkLength(int chunkSize) {
+        return Integer.toHexString(chunkSize).length() + CHUNK_SIGNATURE.length()
+                + SIGNATURE_LENGTH + NEW_LINE.length() + chunkSize + NEW_LINE.length();
+    }
+
+    /**
+     * Signs the request headers and computes the seed signature, which will be chained
+     * to the first chunk signature.
+     * The headers map must contain all the headers to sign, except {@code Host}, which is
+     * taken from the URL, {@code x-amz-date} and {@code x-amz-content-sha256}, which are added
+     * by this method.
+     *
+     * @param method HTTP method
+     * @param url request URL
+     * @param headers headers to sign. The signed headers are added to this map
+     * @return value of the {@code Authorization} header
+     */
+    public String signRequest(String method, URL url, Map<String, String> headers) {
+        headers.put("x-amz-date", amzDate);
+        headers.put("x-amz-content-sha256", STREAMING_PAYLOAD);
+
+        TreeMap<String, String> canonicalHeaders = new TreeMap<>();
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            canonicalHeaders.put(header.getKey().toLowerCase(Locale.US), header.getValue().trim());
+        }
+        canonicalHeaders.put("host", getHost(url));
+
+        StringBuilder headersBuilder = new StringBuilder();
+        StringBuilder signedHeaders = new StringBuilder();
+        for (Map.Entry<String, String> header : canonicalHeaders.entrySet()) {
+            headersBuilder.append(header.getKey()).append(':').append(header.getValue()).append('\n');
+
+            if (signedHeaders.length() > 0) {
+                signedHeaders.append(';');
+            }
+            signedHeaders.append(header.getKey());
+        }
+
+        String path = url.getPath();
+        String canonicalRequest = method + "\n"
+                + (path == null || path.isEmpty() ? "/" : path) + "\n"
+                + getCanonicalQueryString(url.getQuery()) + "\n"
+                + headersBuilder.toString() + "\n"
+                + signedHeaders.toString() + "\n"
+                + STREAMING_PAYLOAD;
+
+        String stringToSign = ALGORITHM + "\n" + amzDate + "\n" + scope + "\n"
+                + hex(sha256.digest(canonicalRequest.getBytes(UTF8)));
+
+        seedSignature = hex(hmac(signingKey, stringToSign));
+        previousSignature = seedSignature;
+
+        return ALGORITHM + " Credential=" + accessKeyId + "/" + scope
+                + ", SignedHeaders=" + signedHeaders.toString()
+                + ", Signature=" + previousSignature;
+    }
+
+    /**
+     * Restarts the chunk signatures chain from the seed signature. Call this if the body
+     * has to be written again for the same request.
+     */
+    public void restartChunks() {
+        previousSignature = seedSignature;
+    }
+
+    /**
+     * Signs a chunk and returns the header which has to precede its data in the body.
+     * Chunks have to be signed in the same order as they are written.
+     *
+     * @param chunk array with the chunk data
+     * @param length length of the chunk. Pass 0 for the final chunk
+     * @return chunk header bytes
+     */
+    public byte[] signChunk(byte[] chunk, int length) {
+        if (previousSignature == null)
+            throw new IllegalStateException("Sign the request before signing chunks!");
+
+        sha256.update(chunk, 0, length);
+
+        String stringToSign = CHUNK_ALGORITHM + "\n" + amzDate + "\n" + scope + "\n"
+                + previousSignature + "\n" + emptyHash + "\n" + hex(sha256.digest());
+
+        previousSignature = hex(hmac(signingKey, stringToSign));
+
+        return (Integer.toHexString(length) + CHUNK_SIGNATURE + previousSignature + NEW_LINE)
+                .getBytes(UTF8);
+    }
+
+    private static String getHost(URL url) {
+        int port = url.getPort();
+
+        if (port == -1 || port == url.getDefaultPort()) {
+            return url.getHost();
+        }
+
+        return url.getHost() + ":" + port;
+    }
+
+    private static String getCanonicalQueryString(String rawQuery) {
+        if (rawQuery == null || rawQuery.isEmpty())
+            return "";
+
+        String[] parameters = rawQuery.split("&");
+
+        for (int i = 0; i < parameters.length; i++) {
+            if (!parameters[i].contains("=")) {
+                parameters[i] = parameters[i] + "=";
+            }
+        }
+
+        Arrays.sort(parameters);
+
+        StringBuilder builder = new StringBuilder();
+        for (String parameter : parameters) {
+            if (builder.length() > 0) {
+                builder.append('&');
+            }
+            builder.append(parameter);
+        }
+
+        return builder.toString();
+    }
+
+    private static byte[] hmac(byte[] key, String data) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(key, "HmacSHA256"));
+            return mac.doFinal(data.getBytes(UTF8));
+        } catch (Exception exc) {
+            throw new IllegalStateException("Unable to compute HMAC-SHA256", exc);
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = HEX[(bytes[i] >> 4) & 0x0F];
+            chars[i * 2 + 1] = HEX[bytes[i] & 0x0F];
+        }
+
+        return new String(chars);
+    }
+}
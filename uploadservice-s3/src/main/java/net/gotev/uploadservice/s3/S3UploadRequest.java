@@ -0,0 +1,186 @@
+package net.gotev.uploadservice.s3;
+
+import android.content.Context;
+import android.content.Intent;
+
+import net.gotev.uploadservice.HttpUploadRequest;
+import net.gotev.uploadservice.Logger;
+import net.gotev.uploadservice.ServiceParameters;
+import net.gotev.uploadservice.UploadFile;
+import net.gotev.uploadservice.UploadServiceBroadcastReceiver;
+import net.gotev.uploadservice.UploadTask;
+import net.gotev.uploadservice.UploadTaskRegistry;
+
+import java.net.MalformedURLException;
+import java.util.List;
+
+/**
+ * Uploads a single file directly to an S3 compatible storage, using AWS Signature Version 4
+ * with a streaming payload ({@code STREAMING-AWS4-HMAC-SHA256-PAYLOAD}).
+ * The server URL must be the object URL, e.g. {@code https://bucket.s3.amazonaws.com/key}
+ * or {@code http://127.0.0.1:9000/bucket/key} for a local S3 compatible server.
+ * @author Aleksandar Gotev
+ */
+public class S3UploadRequest extends HttpUploadRequest<S3UploadRequest> {
+
+    public static final String TASK_TYPE = "net.gotev.uploadservice.s3";
+
+    static {
+        UploadTaskRegistry.register(TASK_TYPE, S3UploadTask.class, S3UploadTask::new);
+    }
+
+    protected final S3UploadTaskParameters s3Params = new S3UploadTaskParameters();
+
+    /**
+     * Creates a new S3 upload request.
+     *
+     * @param context application context
+     * @param uploadId unique ID to assign to this upload request.<br>
+     *                 It can be whatever string you want, as long as it's unique.
+     *                 If you set it to null or an empty string, an UUID will be automatically
+     *                 generated.<br> It's advised to keep a reference to it in your code,
+     *                 so when you receive status updates in {@link UploadServiceBroadcastReceiver},
+     *                 you know to which upload they refer to.
+     * @param serverUrl URL of the object to create
+     * @throws IllegalArgumentException if one or more arguments are not valid
+     * @throws MalformedURLException if the server URL is not valid
+     */
+    public S3UploadRequest(final Context context, final String uploadId, final String serverUrl)
+            throws IllegalArgumentException, MalformedURLException {
+        super(context, uploadId, serverUrl);
+        httpParams.method = "PUT";
+    }
+
+    /**
+     * Creates a new S3 upload request and automatically generates an upload id, that will
+     * be returned when you call {@link S3UploadRequest#startUpload(ServiceParameters)}.
+     *
+     * @param context application context
+     * @param serverUrl URL of the object to create
+     * @throws IllegalArgumentException if one or more arguments are not valid
+     * @throws MalformedURLException if the server URL is not valid
+     */
+    public S3UploadRequest(final Context context, final String serverUrl)
+            throws MalformedURLException, IllegalArgumentException {
+        this(context, null, serverUrl);
+    }
+
+    @Override
+    protected Class<? extends UploadTask> getTaskClass() {
+        return S3UploadTask.class;
+    }
+
+    @Override
+    protected void initializeIntent(Intent intent) {
+        super.initializeIntent(intent);
+        intent.putExtra(S3UploadTaskParameters.PARAM_S3_TASK_PARAMETERS, s3Params);
+    }
+
+    /**
+     * Sets the credentials used to sign the request.
+     * @param accessKeyId access key ID
+     * @param secretKey secret access key
+     * @return {@link S3UploadRequest}
+     */
+    public S3UploadRequest setCredentials(String accessKeyId, String secretKey) {
+        if (accessKeyId == null || "".equals(accessKeyId)) {
+            throw new IllegalArgumentException("Specify access key ID!");
+        }
+
+        if (secretKey == null || "".equals(secretKey)) {
+            throw new IllegalArgumentException("Specify secret access key!");
+        }
+
+        s3Params.accessKeyId = accessKeyId;
+        s3Params.secretKey = secretKey;
+        return this;
+    }
+
+    /**
+     * Sets the session token to use with temporary security credentials.
+     * @param sessionToken session token
+     * @return {@link S3UploadRequest}
+     */
+    public S3UploadRequest setSessionToken(String sessionToken) {
+        s3Params.sessionToken = sessionToken;
+        return this;
+    }
+
+    /**
+     * Sets the region of the bucket, e.g. {@code us-east-1}.
+     * @param region region name
+     * @return {@link S3UploadRequest}
+     */
+    public S3UploadRequest setRegion(String region) {
+        if (region == null || "".equals(region)) {
+            throw new IllegalArgumentException("Specify the region!");
+        }
+
+        s3Params.region = region;
+        return this;
+    }
+
+    /**
+     * Sets the size of each signed chunk.
+     * The default value is defined in {@link S3UploadTaskParameters#DEFAULT_CHUNK_SIZE}.
+     * @param bytes chunk size in bytes. It must be at least
+     *              {@link S3UploadTaskParameters#MIN_CHUNK_SIZE}
+     * @return {@link S3UploadRequest}
+     */
+    public S3UploadRequest setChunkSize(int bytes) {
+        if (bytes < S3UploadTaskParameters.MIN_CHUNK_SIZE) {
+            throw new IllegalArgumentException("Chunk size must be at least "
+                    + S3UploadTaskParameters.MIN_CHUNK_SIZE + " bytes!");
+        }
+
+        s3Params.chunkSize = bytes;
+        return this;
+    }
+
+    /**
+     * Sets the file to upload as the object content.
+     *
+     * @param upload file that you want to upload
+     * @return {@link S3UploadRequest}
+     */
+    public S3UploadRequest setFileToUpload(UploadFile upload) {
+        params.files.clear();
+        params.files.add(upload);
+        return this;
+    }
+
+    @Override
+    public S3UploadRequest addParameter(String paramName, String paramValue) {
+        logDoesNotSupportParameters();
+        return this;
+    }
+
+    @Override
+    public S3UploadRequest addArrayParameter(String paramName, String... array) {
+        logDoesNotSupportParameters();
+        return this;
+    }
+
+    @Override
+    public S3UploadRequest addArrayParameter(String paramName, List<String> list) {
+        logDoesNotSupportParameters();
+        return this;
+    }
+
+    @Override
+    protected void validate() throws IllegalArgumentException {
+        if (params.files.isEmpty())
+            throw new IllegalArgumentException("Set the file to upload first!");
+
+        if (s3Params.accessKeyId == null)
+            throw new IllegalArgumentException("Set the credentials first!");
+
+        if (s3Params.region == null)
+            throw new IllegalArgumentException("Set the region first!");
+    }
+
+    private void logDoesNotSupportParameters() {
+        Logger.error(getClass().getSimpleName(),
+                "This upload method does not support adding parameters");
+    }
+}
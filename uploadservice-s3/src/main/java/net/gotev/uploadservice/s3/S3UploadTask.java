@@ -0,0 +1,162 @@
+package net.gotev.uploadservice.s3;
+
+import android.content.Intent;
+
+import net.gotev.uploadservice.HttpUploadTask;
+import net.gotev.uploadservice.NameValue;
+import net.gotev.uploadservice.UploadFile;
+import net.gotev.uploadservice.UploadService;
+import net.gotev.uploadservice.http.BodyWriter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Uploads a file to an S3 compatible storage as the raw body of the request, signing it with
+ * AWS Signature Version 4 in multiple chunks while it's being written. The file is read only
+ * once and the upload starts immediately, without hashing the whole file first.
+ * @author Aleksandar Gotev
+ */
+public class S3UploadTask extends HttpUploadTask {
+
+    private static final byte[] NEW_LINE = "\r\n".getBytes(Charset.forName("US-ASCII"));
+
+    private S3UploadTaskParameters s3Params = null;
+    private AwsV4ChunkSigner signer;
+    private List<NameValue> requestHeaders;
+
+    @Override
+    protected void init(UploadService service, Intent intent) throws IOException {
+        super.init(service, intent);
+        this.s3Params = intent.getParcelableExtra(S3UploadTaskParameters.PARAM_S3_TASK_PARAMETERS);
+
+        // S3 requires the Content-Length of aws-chunked bodies
+        httpParams.usesFixedLengthStreamingMode = true;
+    }
+
+    @Override
+    protected void upload() throws Exception {
+        // signatures are valid only for a limited amount of time, so every attempt is
+        // signed again with the current date
+        signer = new AwsV4ChunkSigner(s3Params.accessKeyId, s3Params.secretKey,
+                s3Params.region, new Date());
+
+        Map<String, String> headers = new LinkedHashMap<>();
+
+        // all the x-amz-* headers must be signed
+        for (NameValue header : httpParams.getRequestHeaders()) {
+            if (header.getName().toLowerCase(Locale.US).startsWith("x-amz-")) {
+                headers.put(header.getName().toLowerCase(Locale.US), header.getValue());
+            }
+        }
+
+        headers.put("content-encoding", "aws-chunked");
+        headers.put("content-length", Long.toString(getBodyLength()));
+        headers.put("x-amz-decoded-content-length", Long.toString(getFile().length(service)));
+
+        if (s3Params.sessionToken != null) {
+            headers.put("x-amz-security-token", s3Params.sessionToken);
+        }
+
+        String authorization = signer.signRequest(httpParams.method, new URL(params.serverUrl), headers);
+
+        // Content-Length is set by the HTTP stack from the body length
+        headers.remove("content-length");
+
+        // the signed headers are valid only for this attempt, so they're not added to the
+        // upload parameters, which are kept across attempts
+        requestHeaders = new ArrayList<>();
+        for (NameValue header : httpParams.getRequestHeaders()) {
+            if (!headers.containsKey(header.getName().toLowerCase(Locale.US))) {
+                requestHeaders.add(header);
+            }
+        }
+
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            requestHeaders.add(NameValue.header(header.getKey(), header.getValue()));
+        }
+        requestHeaders.add(NameValue.header("Authorization", authorization));
+
+        super.upload();
+    }
+
+    @Override
+    protected List<NameValue> getRequestHeaders() {
+        return requestHeaders;
+    }
+
+    @Override
+    protected long getBodyLength() throws UnsupportedEncodingException {
+        return AwsV4ChunkSigner.getEncodedLength(getFile().length(service), s3Params.chunkSize);
+    }
+
+    @Override
+    public void onBodyReady(BodyWriter bodyWriter) throws IOException {
+        //reset uploaded bytes when the body is ready to be written
+        //because sometimes this gets invoked when network changes
+        uploadedBytes = 0;
+        signer.restartChunks();
+
+        byte[] chunk = new byte[s3Params.chunkSize];
+        InputStream stream = getFile().getStream(service);
+
+        try {
+            int length;
+
+            do {
+                length = readChunk(stream, chunk);
+                writeChunk(bodyWriter, chunk, length);
+            } while (length > 0 && shouldContinue);
+
+        } finally {
+            stream.close();
+        }
+    }
+
+    /**
+     * Fills the chunk with data from the stream, as all the chunks except the last one must
+     * have the same size for the body length to be known in advance.
+     */
+    private int readChunk(InputStream stream, byte[] chunk) throws IOException {
+        int length = 0;
+        int bytesRead;
+
+        while (length < chunk.length
+                && (bytesRead = stream.read(chunk, length, chunk.length - length)) > 0) {
+            length += bytesRead;
+        }
+
+        return length;
+    }
+
+    private void writeChunk(BodyWriter bodyWriter, byte[] chunk, int length) throws IOException {
+        byte[] chunkHeader = signer.signChunk(chunk, length);
+
+        bodyWriter.write(chunkHeader);
+        if (length > 0) {
+            bodyWriter.write(chunk, length);
+        }
+        bodyWriter.write(NEW_LINE);
+        bodyWriter.flush();
+
+        onBytesWritten(chunkHeader.length + length + NEW_LINE.length);
+    }
+
+    private UploadFile getFile() {
+        return params.files.get(0);
+    }
+
+    @Override
+    protected void onSuccessfulUpload() {
+        addSuccessfullyUploadedFile(getFile());
+    }
+}
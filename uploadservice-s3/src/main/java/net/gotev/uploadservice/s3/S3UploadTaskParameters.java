@@ -0,0 +1,70 @@
+package net.gotev.uploadservice.s3;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+
+/**
+ * S3 upload parameters.
+ * @author Aleksandar Gotev
+ */
+public class S3UploadTaskParameters implements Parcelable {
+
+    protected static final String PARAM_S3_TASK_PARAMETERS = "s3TaskParameters";
+
+    /**
+     * The default size in bytes of each signed chunk.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+
+    /**
+     * The minimum chunk size in bytes allowed by S3. Only the last chunk can be smaller.
+     */
+    public static final int MIN_CHUNK_SIZE = 8 * 1024;
+
+    public String accessKeyId;
+    public String secretKey;
+    public String sessionToken;
+    public String region;
+    public int chunkSize = DEFAULT_CHUNK_SIZE;
+
+    public S3UploadTaskParameters() {
+
+    }
+
+    // This is used to regenerate the object.
+    // All Parcelables must have a CREATOR that implements these two methods
+    public static final Creator<S3UploadTaskParameters> CREATOR =
+            new Creator<S3UploadTaskParameters>() {
+                @Override
+                public S3UploadTaskParameters createFromParcel(final Parcel in) {
+                    return new S3UploadTaskParameters(in);
+                }
+
+                @Override
+                public S3UploadTaskParameters[] newArray(final int size) {
+                    return new S3UploadTaskParameters[size];
+                }
+            };
+
+    @Override
+    public void writeToParcel(Parcel parcel, int arg1) {
+        parcel.writeString(accessKeyId);
+        parcel.writeString(secretKey);
+        parcel.writeString(sessionToken);
+        parcel.writeString(region);
+        parcel.writeInt(chunkSize);
+    }
+
+    private S3UploadTaskParameters(Parcel in) {
+        accessKeyId = in.readString();
+        secretKey = in.readString();
+        sessionToken = in.readString();
+        region = in.readString();
+        chunkSize = in.readInt();
+    }
+
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+}
@@ -0,0 +1,64 @@
+package net.gotev.uploadservice;
+
+/**
+ * Limits the total upload rate of all the upload tasks. A different limit can be used while
+ * the app is in the foreground, to leave bandwidth to the app itself, for example to play a
+ * video or to make a call.
+ * Configure it with {@link UploadService#setMaxUploadRate(long)},
+ * {@link UploadService#setForegroundMaxUploadRate(long)} and
+ * {@link UploadService#setForegroundAppActive(boolean)}.
+ *
+ * @author Aleksandar Gotev
+ */
+final class BandwidthLimiter {
+
+    private static class LazyHolder {
+        private static final BandwidthLimiter INSTANCE = new BandwidthLimiter();
+    }
+
+    static BandwidthLimiter getInstance() {
+        return LazyHolder.INSTANCE;
+    }
+
+    private final TokenBucket bucket = new TokenBucket(0);
+    private long maxRate = 0;
+    private long foregroundMaxRate = 0;
+    private boolean foregroundAppActive = false;
+
+    private BandwidthLimiter() {
+    }
+
+    synchronized void setMaxRate(long maxRate) {
+        this.maxRate = maxRate;
+        updateRate();
+    }
+
+    synchronized void setForegroundMaxRate(long foregroundMaxRate) {
+        this.foregroundMaxRate = foregroundMaxRate;
+        updateRate();
+    }
+
+    synchronized void setForegroundAppActive(boolean foregroundAppActive) {
+        this.foregroundAppActive = foregroundAppActive;
+        updateRate();
+    }
+
+    TokenBucket getBucket() {
+        return bucket;
+    }
+
+    private void updateRate() {
+        long rate = maxRate;
+
+        // the foreground limit can only lower the global one
+        if (foregroundAppActive && foregroundMaxRate > 0 && (rate == 0 || foregroundMaxRate < rate)) {
+            rate = foregroundMaxRate;
+        }
+
+        if (rate != bucket.getRate()) {
+            Logger.info(BandwidthLimiter.class.getSimpleName(), rate > 0
+                    ? "Upload rate limited to " + rate + " bytes/s" : "Upload rate not limited");
+            bucket.setRate(rate);
+        }
+    }
+}
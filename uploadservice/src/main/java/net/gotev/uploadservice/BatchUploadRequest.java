@@ -0,0 +1,50 @@
+package net.gotev.uploadservice;
+
+import android.content.Context;
+import android.content.Intent;
+
+import java.net.MalformedURLException;
+
+/**
+ * Upload request which sends many small files in a single multipart request.
+ * It's created by {@link UploadBatcher}, which maps the results back to the original
+ * upload requests.
+ *
+ * @author Aleksandar Gotev
+ */
+final class BatchUploadRequest extends HttpUploadRequest<BatchUploadRequest> {
+
+    private final String multipartSubtype;
+
+    BatchUploadRequest(final Context context, final String serverUrl, final String multipartSubtype)
+            throws IllegalArgumentException, MalformedURLException {
+        super(context, null, serverUrl);
+        this.multipartSubtype = multipartSubtype;
+    }
+
+    @Override
+    protected void initializeIntent(Intent intent) {
+        super.initializeIntent(intent);
+        intent.putExtra(BatchUploadTask.PARAM_MULTIPART_SUBTYPE, multipartSubtype);
+    }
+
+    @Override
+    protected Class<? extends UploadTask> getTaskClass() {
+        return BatchUploadTask.class;
+    }
+
+    /**
+     * Adds a file as a part of the batch.
+     *
+     * @param file file to upload
+     * @param contentId ID of the original upload request, sent in the Content-ID part header
+     * @param contentType content type of the part
+     * @return {@link BatchUploadRequest}
+     */
+    BatchUploadRequest addPart(UploadFile file, String contentId, String contentType) {
+        file.setProperty(BatchUploadTask.PROPERTY_CONTENT_ID, contentId);
+        file.setProperty(BatchUploadTask.PROPERTY_CONTENT_TYPE, contentType);
+        params.files.add(file);
+        return this;
+    }
+}
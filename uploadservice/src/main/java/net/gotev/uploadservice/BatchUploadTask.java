@@ -0,0 +1,115 @@
+package net.gotev.uploadservice;
+
+import android.content.Intent;
+
+import net.gotev.uploadservice.http.BodyWriter;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Implements the upload of many small files in a single multipart request, as done by
+ * {@link UploadBatcher}. Every file is sent in its own body part, identified by a
+ * {@code Content-ID} header which contains the ID of the original upload request.
+ *
+ * @author Aleksandar Gotev
+ */
+public class BatchUploadTask extends HttpUploadTask {
+
+    protected static final String PARAM_MULTIPART_SUBTYPE = "batchMultipartSubtype";
+
+    private static final String BOUNDARY_SIGNATURE = "-------AndroidUploadServiceBatch";
+    private static final Charset US_ASCII = Charset.forName("US-ASCII");
+    private static final String NEW_LINE = "\r\n";
+    private static final String TWO_HYPHENS = "--";
+    private static final byte[] NEW_LINE_BYTES = NEW_LINE.getBytes(US_ASCII);
+
+    // properties associated to each file
+    protected static final String PROPERTY_CONTENT_ID = "batchContentId";
+    protected static final String PROPERTY_CONTENT_TYPE = "batchContentType";
+
+    private byte[] trailerBytes;
+    private List<byte[]> partHeaders;
+    private List<Long> fileLengths;
+    private long bodyLength;
+
+    @Override
+    protected void init(UploadService service, Intent intent) throws IOException {
+        super.init(service, intent);
+
+        String subtype = intent.getStringExtra(PARAM_MULTIPART_SUBTYPE);
+        if (subtype == null) {
+            subtype = UploadBatcher.DEFAULT_MULTIPART_SUBTYPE;
+        }
+
+        String boundary = BOUNDARY_SIGNATURE + System.nanoTime();
+        trailerBytes = (TWO_HYPHENS + boundary + TWO_HYPHENS + NEW_LINE).getBytes(US_ASCII);
+
+        // the layout of the body is computed only once, as the files are small and known
+        // in advance, and it's reused across retries
+        partHeaders = new ArrayList<>(params.files.size());
+        fileLengths = new ArrayList<>(params.files.size());
+        bodyLength = trailerBytes.length;
+
+        for (UploadFile file : params.files) {
+            long fileLength = file.length(service);
+            long partLength = getFileBodyLength(file, fileLength);
+
+            // the part length is omitted if an interceptor can't know it in advance
+            byte[] header = (TWO_HYPHENS + boundary + NEW_LINE
+                    + "Content-Type: " + file.getProperty(PROPERTY_CONTENT_TYPE) + NEW_LINE
+                    + "Content-ID: <" + file.getProperty(PROPERTY_CONTENT_ID) + ">" + NEW_LINE
+                    + (partLength >= 0 ? "Content-Length: " + partLength + NEW_LINE : "")
+                    + NEW_LINE).getBytes(US_ASCII);
+
+            partHeaders.add(header);
+            fileLengths.add(fileLength);
+
+            if (partLength < 0 || bodyLength < 0) {
+                bodyLength = -1;
+            } else {
+                bodyLength += header.length + partLength + NEW_LINE_BYTES.length;
+            }
+        }
+
+        httpParams.addHeader("Content-Type", "multipart/" + subtype + "; boundary=" + boundary);
+    }
+
+    @Override
+    protected long getBodyLength() {
+        return bodyLength;
+    }
+
+    @Override
+    public void onBodyReady(BodyWriter bodyWriter) throws IOException {
+        //reset uploaded bytes when the body is ready to be written
+        //because sometimes this gets invoked when network changes
+        uploadedBytes = 0;
+
+        for (int i = 0; i < params.files.size(); i++) {
+            if (!shouldContinue)
+                break;
+
+            byte[] header = partHeaders.get(i);
+            bodyWriter.write(header);
+            uploadedBytes += header.length;
+
+            UploadFile file = params.files.get(i);
+            bodyWriter.writeStream(getFileBodyStream(file, fileLengths.get(i)), this);
+
+            bodyWriter.write(NEW_LINE_BYTES);
+            uploadedBytes += NEW_LINE_BYTES.length;
+        }
+
+        bodyWriter.write(trailerBytes);
+        uploadedBytes += trailerBytes.length;
+        broadcastProgress(uploadedBytes, totalBytes);
+    }
+
+    @Override
+    protected void onSuccessfulUpload() {
+        addAllFilesToSuccessfullyUploadedFiles();
+    }
+}
@@ -87,11 +87,9 @@ public class BinaryUploadRequest extends HttpUploadRequest<BinaryUploadRequest>
     }
 
     @Override
-    public String startUpload(ServiceParameters serviceParameters) {
+    protected void validate() throws IllegalArgumentException {
         if (params.files.isEmpty())
             throw new IllegalArgumentException("Set the file to be used in the request body first!");
-
-        return super.startUpload(serviceParameters);
     }
 
     private void logDoesNotSupportParameters() {
@@ -15,12 +15,23 @@ public class BinaryUploadTask extends HttpUploadTask {
 
     @Override
     protected long getBodyLength() throws UnsupportedEncodingException {
-        return params.files.get(0).length(service);
+        return getFileBodyLength(params.files.get(0));
     }
 
     @Override
     public void onBodyReady(BodyWriter bodyWriter) throws IOException {
-        bodyWriter.writeStream(params.files.get(0).getStream(service), this);
+        UploadFile file = params.files.get(0);
+
+        if (httpParams.isContentDigestEnabled()) {
+            // the digest is known only after the body has been written, and neither
+            // HttpURLConnection nor OkHttp allow sending request trailers, so it's only
+            // made available in the upload info
+            ContentDigest digest = new ContentDigest(httpParams.contentDigestAlgorithm);
+            bodyWriter.writeStream(getFileBodyStream(file), digest, this);
+            setContentDigest(file, digest.digest());
+        } else {
+            bodyWriter.writeStream(getFileBodyStream(file), this);
+        }
     }
 
     @Override
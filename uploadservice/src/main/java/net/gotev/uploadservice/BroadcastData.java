@@ -4,6 +4,13 @@ import android.content.Intent;
 import android.os.Parcel;
 import android.os.Parcelable;
 
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+
+import javax.net.ssl.SSLException;
+
 /**
  * Class which contains all the data passed in broadcast intents to notify task progress, errors,
  * completion or cancellation.
@@ -16,13 +23,25 @@ class BroadcastData implements Parcelable {
         IN_PROGRESS,
         ERROR,
         COMPLETED,
-        CANCELLED
+        CANCELLED,
+        PAUSED,
+        TAG_PROGRESS
     }
 
+    // codes used to send the error type without serializing the exception
+    private static final int ERROR_NONE = 0;
+    private static final int ERROR_GENERIC = 1;
+    private static final int ERROR_IO = 2;
+    private static final int ERROR_FILE_NOT_FOUND = 3;
+    private static final int ERROR_SOCKET_TIMEOUT = 4;
+    private static final int ERROR_UNKNOWN_HOST = 5;
+    private static final int ERROR_SSL = 6;
+
     private Status status;
     private Exception exception;
     private UploadInfo uploadInfo;
     private ServerResponse serverResponse;
+    private TagProgress tagProgress;
 
     public BroadcastData() {
 
@@ -31,10 +50,36 @@ class BroadcastData implements Parcelable {
     public Intent getIntent() {
         Intent intent = new Intent(UploadService.getActionBroadcast());
         intent.setPackage(UploadService.NAMESPACE);
-        intent.putExtra(UploadService.PARAM_BROADCAST_DATA, this);
+        intent.putExtra(UploadService.PARAM_BROADCAST_DATA, getBroadcastedData());
         return intent;
     }
 
+    /**
+     * Gets the data to broadcast, without the parts which receivers don't need,
+     * as configured in {@link UploadService}.
+     */
+    private BroadcastData getBroadcastedData() {
+        if (UploadService.BROADCAST_FILE_LISTS && UploadService.BROADCAST_RESPONSE_BODY)
+            return this;
+
+        BroadcastData data = new BroadcastData()
+                .setStatus(status)
+                .setException(exception)
+                .setUploadInfo(uploadInfo)
+                .setServerResponse(serverResponse)
+                .setTagProgress(tagProgress);
+
+        if (!UploadService.BROADCAST_FILE_LISTS && uploadInfo != null) {
+            data.uploadInfo = uploadInfo.withoutFileLists();
+        }
+
+        if (!UploadService.BROADCAST_RESPONSE_BODY && serverResponse != null) {
+            data.serverResponse = serverResponse.withoutBody();
+        }
+
+        return data;
+    }
+
     // This is used to regenerate the object.
     // All Parcelables must have a CREATOR that implements these two methods
     public static final Parcelable.Creator<BroadcastData> CREATOR =
@@ -53,16 +98,72 @@ class BroadcastData implements Parcelable {
     @Override
     public void writeToParcel(Parcel parcel, int flags) {
         parcel.writeInt(status.ordinal());
-        parcel.writeSerializable(exception);
+
+        // only the error type and message are sent, as serializing the exception
+        // with its stack trace is expensive
+        int errorCode = getErrorCode(exception);
+        parcel.writeInt(errorCode);
+        if (errorCode != ERROR_NONE) {
+            parcel.writeString(errorCode == ERROR_GENERIC
+                    ? exception.getClass().getName() + ": " + exception.getMessage()
+                    : exception.getMessage());
+        }
+
         parcel.writeParcelable(uploadInfo, flags);
         parcel.writeParcelable(serverResponse, flags);
+        parcel.writeParcelable(tagProgress, flags);
     }
 
     private BroadcastData(Parcel in) {
         status = Status.values()[in.readInt()];
-        exception = (Exception) in.readSerializable();
+
+        int errorCode = in.readInt();
+        if (errorCode != ERROR_NONE) {
+            exception = createException(errorCode, in.readString());
+        }
+
         uploadInfo = in.readParcelable(UploadInfo.class.getClassLoader());
         serverResponse = in.readParcelable(ServerResponse.class.getClassLoader());
+        tagProgress = in.readParcelable(TagProgress.class.getClassLoader());
+    }
+
+    private static int getErrorCode(Exception exception) {
+        if (exception == null)
+            return ERROR_NONE;
+
+        if (exception instanceof FileNotFoundException)
+            return ERROR_FILE_NOT_FOUND;
+
+        if (exception instanceof SocketTimeoutException)
+            return ERROR_SOCKET_TIMEOUT;
+
+        if (exception instanceof UnknownHostException)
+            return ERROR_UNKNOWN_HOST;
+
+        if (exception instanceof SSLException)
+            return ERROR_SSL;
+
+        if (exception instanceof IOException)
+            return ERROR_IO;
+
+        return ERROR_GENERIC;
+    }
+
+    private static Exception createException(int errorCode, String message) {
+        switch (errorCode) {
+            case ERROR_FILE_NOT_FOUND:
+                return new FileNotFoundException(message);
+            case ERROR_SOCKET_TIMEOUT:
+                return new SocketTimeoutException(message);
+            case ERROR_UNKNOWN_HOST:
+                return new UnknownHostException(message);
+            case ERROR_SSL:
+                return new SSLException(message);
+            case ERROR_IO:
+                return new IOException(message);
+            default:
+                return new Exception(message);
+        }
     }
 
     @Override
@@ -110,4 +211,13 @@ class BroadcastData implements Parcelable {
         this.serverResponse = serverResponse;
         return this;
     }
+
+    public TagProgress getTagProgress() {
+        return tagProgress;
+    }
+
+    public BroadcastData setTagProgress(TagProgress tagProgress) {
+        this.tagProgress = tagProgress;
+        return this;
+    }
 }
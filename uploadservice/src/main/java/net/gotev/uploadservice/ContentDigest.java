@@ -0,0 +1,171 @@
+package net.gotev.uploadservice;
+
+import android.util.Base64;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Computes the digest of the content of a file while it's being uploaded, so the file
+ * has to be read only once.
+ *
+ * @author Aleksandar Gotev
+ */
+public final class ContentDigest {
+
+    public static final String MD5 = "MD5";
+    public static final String SHA_1 = "SHA-1";
+    public static final String SHA_256 = "SHA-256";
+    public static final String CRC32C = "CRC32C";
+
+    private final String algorithm;
+    private final MessageDigest messageDigest;
+    private final Crc32c crc32c;
+
+    /**
+     * Creates a new content digest.
+     *
+     * @param algorithm one of the algorithms defined in this class
+     * @throws IllegalArgumentException if the algorithm is not supported
+     */
+    public ContentDigest(String algorithm) {
+        if (!isSupported(algorithm))
+            throw new IllegalArgumentException("Unsupported digest algorithm: " + algorithm);
+
+        this.algorithm = algorithm;
+
+        if (CRC32C.equals(algorithm)) {
+            messageDigest = null;
+            crc32c = new Crc32c();
+        } else {
+            try {
+                messageDigest = MessageDigest.getInstance(algorithm);
+            } catch (NoSuchAlgorithmException exc) {
+                throw new IllegalArgumentException("Unsupported digest algorithm: " + algorithm, exc);
+            }
+            crc32c = null;
+        }
+    }
+
+    /**
+     * Checks if a digest algorithm is supported.
+     *
+     * @param algorithm algorithm name
+     * @return true if supported, false otherwise
+     */
+    public static boolean isSupported(String algorithm) {
+        return MD5.equals(algorithm) || SHA_1.equals(algorithm)
+                || SHA_256.equals(algorithm) || CRC32C.equals(algorithm);
+    }
+
+    /**
+     * Gets the length of the Base64 encoded digest produced by the given algorithm.
+     * This is known before the content is read, so it can be used to compute the
+     * request body length in fixed length streaming mode.
+     *
+     * @param algorithm algorithm name
+     * @return number of characters of the encoded digest
+     */
+    public static int getEncodedLength(String algorithm) {
+        int bytes;
+
+        if (MD5.equals(algorithm)) {
+            bytes = 16;
+        } else if (SHA_1.equals(algorithm)) {
+            bytes = 20;
+        } else if (SHA_256.equals(algorithm)) {
+            bytes = 32;
+        } else if (CRC32C.equals(algorithm)) {
+            bytes = 4;
+        } else {
+            throw new IllegalArgumentException("Unsupported digest algorithm: " + algorithm);
+        }
+
+        return 4 * ((bytes + 2) / 3);
+    }
+
+    /**
+     * Gets the name of the multipart form field which contains the digest of a file.
+     * E.g. the SHA-256 digest of a file sent with the {@code photo} parameter name will be sent
+     * in the {@code photo_sha256} form field.
+     *
+     * @param parameterName name of the form parameter that contains the file
+     * @param algorithm algorithm name
+     * @return form field name
+     */
+    public static String getFieldName(String parameterName, String algorithm) {
+        return parameterName + "_" + algorithm.replace("-", "").toLowerCase();
+    }
+
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    /**
+     * Updates the digest with a portion of a byte array.
+     *
+     * @param bytes array with the bytes
+     * @param offset offset of the first byte
+     * @param length number of bytes
+     */
+    public void update(byte[] bytes, int offset, int length) {
+        if (messageDigest != null) {
+            messageDigest.update(bytes, offset, length);
+        } else {
+            crc32c.update(bytes, offset, length);
+        }
+    }
+
+    /**
+     * Completes the digest computation and resets the digest, so it can be reused.
+     *
+     * @return Base64 encoded digest
+     */
+    public String digest() {
+        byte[] digest;
+
+        if (messageDigest != null) {
+            digest = messageDigest.digest();
+        } else {
+            digest = crc32c.digest();
+        }
+
+        return Base64.encodeToString(digest, Base64.NO_WRAP);
+    }
+
+    /**
+     * CRC32C (Castagnoli), not available in java.util.zip on Android.
+     */
+    private static final class Crc32c {
+        private static final int[] TABLE = new int[256];
+
+        static {
+            for (int n = 0; n < 256; n++) {
+                int crc = n;
+                for (int k = 0; k < 8; k++) {
+                    crc = (crc & 1) != 0 ? (crc >>> 1) ^ 0x82F63B78 : crc >>> 1;
+                }
+                TABLE[n] = crc;
+            }
+        }
+
+        private int crc = 0xFFFFFFFF;
+
+        void update(byte[] bytes, int offset, int length) {
+            int value = crc;
+            for (int i = offset; i < offset + length; i++) {
+                value = (value >>> 8) ^ TABLE[(value ^ bytes[i]) & 0xFF];
+            }
+            crc = value;
+        }
+
+        byte[] digest() {
+            int value = ~crc;
+            crc = 0xFFFFFFFF;
+            return new byte[]{
+                    (byte) (value >>> 24), (byte) (value >>> 16),
+                    (byte) (value >>> 8), (byte) value
+            };
+        }
+    }
+}
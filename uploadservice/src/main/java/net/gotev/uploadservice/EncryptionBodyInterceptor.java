@@ -0,0 +1,101 @@
+package net.gotev.uploadservice;
+
+import android.content.Context;
+import android.os.Parcel;
+import android.os.Parcelable;
+
+import net.gotev.uploadservice.http.BodyInterceptor;
+import net.gotev.uploadservice.http.BufferPool;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.SecureRandom;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Body interceptor which encrypts the uploaded files with AES-GCM while they are being sent,
+ * by using a {@link SegmentedEncryptionInputStream}.
+ *
+ * @author Aleksandar Gotev
+ */
+public final class EncryptionBodyInterceptor implements BodyInterceptor {
+
+    private final byte[] key;
+    private final int segmentSize;
+
+    /**
+     * Nonce prefixes of the files, kept across retries. They are not parcelled, so every
+     * task gets its own random prefixes.
+     */
+    private final Map<String, byte[]> noncePrefixes = new HashMap<>();
+
+    /**
+     * Creates a new encryption interceptor.
+     *
+     * @param key AES key (16, 24 or 32 bytes)
+     * @param segmentSize size in bytes of each plaintext segment
+     */
+    public EncryptionBodyInterceptor(byte[] key, int segmentSize) {
+        this.key = key;
+        this.segmentSize = segmentSize;
+    }
+
+    @Override
+    public long getLength(Context context, UploadFile file, long length) {
+        return SegmentedEncryptionInputStream.getEncryptedLength(length, segmentSize);
+    }
+
+    @Override
+    public InputStream intercept(Context context, UploadFile file, InputStream stream,
+                                 long length, BufferPool pool) throws IOException {
+        if (length < 0)
+            throw new IOException("Encryption requires the length of the content to be known");
+
+        return new SegmentedEncryptionInputStream(stream, length, key, getNoncePrefix(file),
+                segmentSize, 0, pool);
+    }
+
+    private synchronized byte[] getNoncePrefix(UploadFile file) {
+        byte[] prefix = noncePrefixes.get(file.getPath());
+
+        if (prefix == null) {
+            prefix = new byte[SegmentedEncryptionInputStream.NONCE_PREFIX_LENGTH];
+            new SecureRandom().nextBytes(prefix);
+            noncePrefixes.put(file.getPath(), prefix);
+        }
+
+        return prefix;
+    }
+
+    // This is used to regenerate the object.
+    // All Parcelables must have a CREATOR that implements these two methods
+    public static final Parcelable.Creator<EncryptionBodyInterceptor> CREATOR =
+            new Parcelable.Creator<EncryptionBodyInterceptor>() {
+                @Override
+                public EncryptionBodyInterceptor createFromParcel(final Parcel in) {
+                    return new EncryptionBodyInterceptor(in);
+                }
+
+                @Override
+                public EncryptionBodyInterceptor[] newArray(final int size) {
+                    return new EncryptionBodyInterceptor[size];
+                }
+            };
+
+    @Override
+    public void writeToParcel(Parcel parcel, int flags) {
+        parcel.writeByteArray(key);
+        parcel.writeInt(segmentSize);
+    }
+
+    private EncryptionBodyInterceptor(Parcel in) {
+        key = in.createByteArray();
+        segmentSize = in.readInt();
+    }
+
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+}
@@ -0,0 +1,138 @@
+package net.gotev.uploadservice;
+
+import android.content.Context;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps in files of the app the file lists which are too big to be written in the intent which
+ * starts an upload, so that only the path of the list goes through Binder, whose transactions
+ * are limited to 1MB for the whole process. It works also when the upload service runs in
+ * another process of the app.
+ * <p>
+ * A list is deleted as soon as it's read. Lists which are never read, for example because the
+ * service could not be started, are deleted by a later write once they are older than
+ * {@link #MAX_AGE}.
+ *
+ * @author Aleksandar Gotev
+ */
+final class FileListStore {
+
+    private static final String TAG = FileListStore.class.getSimpleName();
+
+    private static final String DIRECTORY = "uploadservice-files";
+    private static final String PREFIX = "files";
+    private static final long MAX_AGE = TimeUnit.DAYS.toMillis(1);
+
+    // written first, to recognize the lists written with another format
+    private static final int FORMAT_VERSION = 1;
+
+    private FileListStore() {
+    }
+
+    /**
+     * Writes a file list in the files of the app.
+     *
+     * @param context application context
+     * @param files files to write
+     * @return path of the written list, to be passed to {@link #read(String)}
+     * @throws IOException if the list can't be written
+     */
+    static String write(Context context, List<UploadFile> files) throws IOException {
+        return write(new File(context.getFilesDir(), DIRECTORY), files);
+    }
+
+    static String write(File directory, List<UploadFile> files) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs())
+            throw new IOException("Can't create directory " + directory);
+
+        deleteExpired(directory, System.currentTimeMillis());
+
+        File list = File.createTempFile(PREFIX, null, directory);
+        boolean written = false;
+
+        try {
+            DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(list)));
+
+            try {
+                out.writeInt(FORMAT_VERSION);
+                out.writeInt(files.size());
+
+                for (UploadFile file : files) {
+                    file.writeTo(out);
+                }
+            } finally {
+                out.close();
+            }
+
+            written = true;
+        } finally {
+            if (!written && !list.delete()) {
+                Logger.error(TAG, "Can't delete incomplete file list " + list);
+            }
+        }
+
+        return list.getAbsolutePath();
+    }
+
+    /**
+     * Reads a file list written with {@link #write(Context, List)} and deletes it.
+     *
+     * @param path path of the list
+     * @return files
+     * @throws IOException if the list doesn't exist anymore or it can't be read
+     */
+    static ArrayList<UploadFile> read(String path) throws IOException {
+        File list = new File(path);
+
+        try {
+            DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(new FileInputStream(list)));
+
+            try {
+                int version = in.readInt();
+                if (version != FORMAT_VERSION)
+                    throw new IOException("Unsupported file list format " + version + " in " + path);
+
+                int count = in.readInt();
+                ArrayList<UploadFile> files = new ArrayList<>(count);
+
+                for (int i = 0; i < count; i++) {
+                    files.add(UploadFile.readFrom(in));
+                }
+
+                return files;
+            } finally {
+                in.close();
+            }
+        } finally {
+            if (list.exists() && !list.delete()) {
+                Logger.error(TAG, "Can't delete file list " + path);
+            }
+        }
+    }
+
+    private static void deleteExpired(File directory, long now) {
+        File[] lists = directory.listFiles();
+        if (lists == null)
+            return;
+
+        for (File list : lists) {
+            if (list.getName().startsWith(PREFIX) && list.lastModified() + MAX_AGE < now
+                    && list.delete()) {
+                Logger.info(TAG, "Deleted file list which has never been read: " + list);
+            }
+        }
+    }
+}
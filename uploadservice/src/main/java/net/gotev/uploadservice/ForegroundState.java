@@ -0,0 +1,99 @@
+package net.gotev.uploadservice;
+
+/**
+ * Foreground state of the {@link UploadService} and upload whose notification is shown as the
+ * foreground one.
+ * <p>
+ * When the service is started with {@code startForegroundService}, it has to enter the
+ * foreground within a few seconds, otherwise the system stops the app. An upload which waits
+ * in the queue or is parked until its constraints are met may never start a task in that time,
+ * so the service enters the foreground as soon as it accepts an upload, with a notification
+ * which is replaced by the one of the first task which runs.
+ * <p>
+ * The service calls {@code startForeground} and {@code stopForeground} while holding the
+ * monitor of this object, so the calls happen in the same order as the state changes.
+ *
+ * @author Aleksandar Gotev
+ */
+final class ForegroundState {
+
+    private boolean inForeground = false;
+
+    // upload whose task shows its notification as the foreground one, or null
+    private String holder;
+
+    /**
+     * Called when the service accepts an upload.
+     * @return true if the service has to enter the foreground now, because it's not already
+     */
+    synchronized boolean enter() {
+        if (inForeground)
+            return false;
+
+        inForeground = true;
+        return true;
+    }
+
+    /**
+     * Called by a running task which wants to show its notification as the foreground one.
+     * Only one upload at a time holds the foreground notification.
+     * @param uploadId ID of the upload
+     * @return true if the upload holds the foreground notification, so it has to be posted with
+     * {@code startForeground}
+     */
+    synchronized boolean hold(String uploadId) {
+        if (holder == null) {
+            holder = uploadId;
+            Logger.debug(ForegroundState.class.getSimpleName(), uploadId
+                    + " now holds the foreground notification");
+        }
+
+        if (!uploadId.equals(holder))
+            return false;
+
+        inForeground = true;
+        return true;
+    }
+
+    /**
+     * Called when the task of an upload stops running, so another one can hold the foreground
+     * notification.
+     * @param uploadId ID of the upload
+     * @return true if the upload was holding the foreground notification
+     */
+    synchronized boolean release(String uploadId) {
+        if (!uploadId.equals(holder))
+            return false;
+
+        holder = null;
+        Logger.debug(ForegroundState.class.getSimpleName(), uploadId
+                + " now un-holded the foreground notification");
+        return true;
+    }
+
+    /**
+     * Called when no upload is running or waiting anymore.
+     * @return true if the service has to leave the foreground
+     */
+    synchronized boolean leave() {
+        holder = null;
+
+        if (!inForeground)
+            return false;
+
+        inForeground = false;
+        return true;
+    }
+
+    synchronized boolean isInForeground() {
+        return inForeground;
+    }
+
+    /**
+     * @return ID of the upload which holds the foreground notification, or null if the
+     * notification doesn't belong to a running task
+     */
+    synchronized String getHolder() {
+        return holder;
+    }
+}
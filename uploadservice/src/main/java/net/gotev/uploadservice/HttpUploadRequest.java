@@ -2,10 +2,14 @@ package net.gotev.uploadservice;
 
 import android.content.Context;
 import android.content.Intent;
+import android.os.Build;
 import android.util.Base64;
 
+import net.gotev.uploadservice.http.BodyInterceptor;
+
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.Iterator;
 import java.util.List;
 
 /**
@@ -146,6 +150,9 @@ public abstract class HttpUploadRequest<B extends HttpUploadRequest<B>>
      * If it uses fixed length streaming mode, then the value returned by
      * {@link HttpUploadTask#getBodyLength()} will be automatically used to properly set the
      * underlying {@link java.net.HttpURLConnection}, otherwise chunked streaming mode will be used.
+     * If the body length is not known in advance, because a
+     * {@link net.gotev.uploadservice.http.BodyInterceptor} can't compute it, chunked streaming
+     * mode is used anyway.
      * @param fixedLength true to use fixed length streaming mode (this is the default setting) or
      *                    false to use chunked streaming mode.
      * @return self instance
@@ -154,4 +161,99 @@ public abstract class HttpUploadRequest<B extends HttpUploadRequest<B>>
         httpParams.usesFixedLengthStreamingMode = fixedLength;
         return self();
     }
+
+    /**
+     * Encrypts the content of the uploaded files with AES-GCM, using
+     * {@link SegmentedEncryptionInputStream#DEFAULT_SEGMENT_SIZE} segments.
+     *
+     * @param key AES key (16, 24 or 32 bytes). Set this to null to disable encryption
+     * @return self instance
+     * @see #setEncryption(byte[], int)
+     */
+    public B setEncryption(final byte[] key) {
+        return setEncryption(key, SegmentedEncryptionInputStream.DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Encrypts the content of the uploaded files with AES-GCM while they are being sent,
+     * so there's no need to write an encrypted copy of them before uploading.
+     * Files are encrypted in authenticated segments, as described in
+     * {@link SegmentedEncryptionInputStream}, and the request body length accounts for the
+     * encryption overhead, so fixed length streaming mode still works.
+     * Encryption is performed by an {@link EncryptionBodyInterceptor}, which is applied after
+     * the body interceptors added before calling this method.
+     * Requires Android API 19 or newer.
+     *
+     * @param key AES key (16, 24 or 32 bytes). Set this to null to disable encryption
+     *            (this is the default setting)
+     * @param segmentSize size in bytes of each plaintext segment
+     * @return self instance
+     */
+    public B setEncryption(final byte[] key, final int segmentSize) {
+        if (key != null) {
+            if (Build.VERSION.SDK_INT < 19) {
+                throw new IllegalStateException("Encryption requires Android API 19 or newer");
+            }
+
+            if (key.length != 16 && key.length != 24 && key.length != 32) {
+                throw new IllegalArgumentException("AES key must be 16, 24 or 32 bytes long");
+            }
+
+            if (segmentSize <= 0) {
+                throw new IllegalArgumentException("Segment size must be greater than zero");
+            }
+        }
+
+        Iterator<BodyInterceptor> iterator = httpParams.getBodyInterceptors().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next() instanceof EncryptionBodyInterceptor) {
+                iterator.remove();
+            }
+        }
+
+        if (key != null) {
+            httpParams.addBodyInterceptor(new EncryptionBodyInterceptor(key, segmentSize));
+        }
+
+        return self();
+    }
+
+    /**
+     * Adds a body interceptor, which transforms the content of the uploaded files while they
+     * are being written in the request body. Interceptors are applied in the same order in
+     * which they are added, each one wrapping the stream produced by the previous one.
+     *
+     * @param interceptor body interceptor
+     * @return self instance
+     */
+    public B addBodyInterceptor(final BodyInterceptor interceptor) {
+        if (interceptor == null) {
+            throw new IllegalArgumentException("Body interceptor must not be null!");
+        }
+
+        httpParams.addBodyInterceptor(interceptor);
+        return self();
+    }
+
+    /**
+     * Computes the digest of each uploaded file while its bytes are being sent, so the
+     * file has to be read only once. The digest is Base64 encoded and it's available in
+     * {@link UploadInfo#getContentDigest(String)} when the upload is completed. Multipart
+     * uploads also send it to the server in an additional form field right after each file,
+     * named as described in {@link ContentDigest#getFieldName(String, String)}.
+     *
+     * @param algorithm one of {@link ContentDigest#MD5}, {@link ContentDigest#SHA_1},
+     *                  {@link ContentDigest#SHA_256} or {@link ContentDigest#CRC32C}.
+     *                  Set this to null to disable the digest computation
+     *                  (this is the default setting).
+     * @return self instance
+     */
+    public B setContentDigest(final String algorithm) {
+        if (algorithm != null && !ContentDigest.isSupported(algorithm)) {
+            throw new IllegalArgumentException("Unsupported digest algorithm: " + algorithm);
+        }
+
+        httpParams.contentDigestAlgorithm = algorithm;
+        return self();
+    }
 }
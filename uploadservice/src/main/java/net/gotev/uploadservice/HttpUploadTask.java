@@ -3,11 +3,15 @@ package net.gotev.uploadservice;
 import android.annotation.SuppressLint;
 import android.content.Intent;
 
+import net.gotev.uploadservice.http.BodyInterceptor;
 import net.gotev.uploadservice.http.BodyWriter;
+import net.gotev.uploadservice.http.BufferPool;
 import net.gotev.uploadservice.http.HttpConnection;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
+import java.util.List;
 
 /**
  * Generic HTTP Upload Task.<br>
@@ -36,6 +40,12 @@ public abstract class HttpUploadTask extends UploadTask
     protected void init(UploadService service, Intent intent) throws IOException {
         super.init(service, intent);
         this.httpParams = intent.getParcelableExtra(HttpUploadTaskParameters.PARAM_HTTP_TASK_PARAMETERS);
+
+        if (httpParams.isCustomUserAgentDefined()) {
+            httpParams.addHeader("User-Agent", httpParams.customUserAgent);
+        } else {
+            httpParams.addHeader("User-Agent", "AndroidUploadService/" + BuildConfig.VERSION_NAME);
+        }
     }
 
     /**
@@ -48,40 +58,58 @@ public abstract class HttpUploadTask extends UploadTask
      *
      * @throws Exception if an error occurs
      */
-    @SuppressLint("NewApi")
     protected void upload() throws Exception {
 
         Logger.debug(LOG_TAG, "Starting upload task with ID " + params.id);
 
-        try {
-            getSuccessfullyUploadedFiles().clear();
-            uploadedBytes = 0;
-            totalBytes = getBodyLength();
-
-            if (httpParams.isCustomUserAgentDefined()) {
-                httpParams.addHeader("User-Agent", httpParams.customUserAgent);
-            } else {
-                httpParams.addHeader("User-Agent", "AndroidUploadService/" + BuildConfig.VERSION_NAME);
-            }
+        getSuccessfullyUploadedFiles().clear();
+        uploadedBytes = 0;
+        totalBytes = getBodyLength();
+
+        final ServerResponse response = sendRequest(totalBytes);
+
+        // Broadcast completion only if the user has not cancelled the operation.
+        // It may happen that when the body is not completely written and the client
+        // closes the connection, no exception is thrown here, and the server responds
+        // with an HTTP status code. Without this, what happened was that completion was
+        // broadcasted and then the cancellation. That behaviour was not desirable as the
+        // library user couldn't execute code on user cancellation.
+        if (shouldContinue) {
+            broadcastCompleted(response);
+        }
+    }
+
+    /**
+     * Performs a single HTTP request to the server, with the method, URL and headers set in
+     * {@link HttpUploadRequest}. The body is written by {@link #onBodyReady(BodyWriter)}.
+     * Tasks which need to make more than one request to complete the upload can call this
+     * multiple times from {@link #upload()}.
+     *
+     * @param bodyLength length of the request body, or -1 if unknown. If unknown, the request
+     *                   is sent in chunked streaming mode
+     * @return response got from the server
+     * @throws IOException if an error occurs while performing the request
+     */
+    @SuppressLint("NewApi")
+    protected final ServerResponse sendRequest(long bodyLength) throws IOException {
+        boolean fixedLength = httpParams.usesFixedLengthStreamingMode;
 
+        if (fixedLength && bodyLength < 0) {
+            Logger.info(LOG_TAG, "Body length of upload " + params.id + " is not known in "
+                    + "advance, using chunked streaming mode");
+            fixedLength = false;
+        }
+
+        try {
             connection = UploadService.HTTP_STACK
                     .createNewConnection(httpParams.method, params.serverUrl)
-                    .setHeaders(httpParams.getRequestHeaders())
-                    .setTotalBodyBytes(totalBytes, httpParams.usesFixedLengthStreamingMode);
+                    .setHeaders(getRequestHeaders())
+                    .setTotalBodyBytes(bodyLength, fixedLength);
 
             final ServerResponse response = connection.getResponse(this);
             Logger.debug(LOG_TAG, "Server responded with HTTP " + response.getHttpCode()
                             + " to upload with ID: " + params.id);
-
-            // Broadcast completion only if the user has not cancelled the operation.
-            // It may happen that when the body is not completely written and the client
-            // closes the connection, no exception is thrown here, and the server responds
-            // with an HTTP status code. Without this, what happened was that completion was
-            // broadcasted and then the cancellation. That behaviour was not desirable as the
-            // library user couldn't execute code on user cancellation.
-            if (shouldContinue) {
-                broadcastCompleted(response);
-            }
+            return response;
 
         } finally {
             if (connection != null)
@@ -89,13 +117,105 @@ public abstract class HttpUploadTask extends UploadTask
         }
     }
 
+    /**
+     * Gets the headers of the requests made by {@link #sendRequest(long)}. Override this to
+     * add headers which change at every attempt, like signatures, without adding them to
+     * the upload parameters, which are kept across attempts.
+     * @return request headers
+     */
+    protected List<NameValue> getRequestHeaders() {
+        return httpParams.getRequestHeaders();
+    }
+
     /**
      * Implement in subclasses to provide the expected upload in the progress notifications.
-     * @return The expected size of the http request body.
+     * @return The expected size of the http request body, or -1 if it's not known in advance
+     * (see {@link BodyInterceptor#getLength}).
      * @throws UnsupportedEncodingException
      */
     protected abstract long getBodyLength() throws UnsupportedEncodingException;
 
+    /**
+     * Gets the number of bytes which will be written in the request body for the given file.
+     * Use this instead of {@link UploadFile#length(android.content.Context)} when computing the
+     * body length, because the content may be transformed while it's written by the
+     * {@link BodyInterceptor}s added to the request (e.g. encrypted).
+     *
+     * @param file file to upload
+     * @return number of bytes, or -1 if one of the body interceptors can't know it in advance
+     */
+    protected final long getFileBodyLength(UploadFile file) {
+        return getFileBodyLength(file, file.length(service));
+    }
+
+    /**
+     * Same as {@link #getFileBodyLength(UploadFile)}, but uses an already known file length,
+     * to not query it again.
+     *
+     * @param file file to upload
+     * @param fileLength file length, as returned by
+     *                   {@link UploadFile#length(android.content.Context)}
+     * @return number of bytes, or -1 if one of the body interceptors can't know it in advance
+     */
+    protected final long getFileBodyLength(UploadFile file, long fileLength) {
+        long length = fileLength;
+
+        for (BodyInterceptor interceptor : httpParams.getBodyInterceptors()) {
+            if (length < 0)
+                break;
+
+            length = interceptor.getLength(service, file, length);
+        }
+
+        return length;
+    }
+
+    /**
+     * Gets the stream with the content to write in the request body for the given file.
+     * Use this instead of {@link UploadFile#getStream(android.content.Context)}, because the
+     * content may be transformed while it's written by the {@link BodyInterceptor}s added to the
+     * request (e.g. encrypted). Closing the returned stream closes the whole chain.
+     *
+     * @param file file to upload
+     * @return stream to write in the request body
+     * @throws IOException if an error occurs while opening the file
+     */
+    protected final InputStream getFileBodyStream(UploadFile file) throws IOException {
+        return getFileBodyStream(file, file.length(service));
+    }
+
+    /**
+     * Same as {@link #getFileBodyStream(UploadFile)}, but uses an already known file length,
+     * to not query it again.
+     *
+     * @param file file to upload
+     * @param fileLength file length, as returned by
+     *                   {@link UploadFile#length(android.content.Context)}
+     * @return stream to write in the request body
+     * @throws IOException if an error occurs while opening the file
+     */
+    protected final InputStream getFileBodyStream(UploadFile file, long fileLength)
+            throws IOException {
+        InputStream stream = file.getStream(service);
+        long length = fileLength;
+
+        try {
+            for (BodyInterceptor interceptor : httpParams.getBodyInterceptors()) {
+                stream = interceptor.intercept(service, file, stream, length,
+                        BufferPool.getInstance());
+
+                if (length >= 0) {
+                    length = interceptor.getLength(service, file, length);
+                }
+            }
+        } catch (IOException | RuntimeException exc) {
+            stream.close();
+            throw exc;
+        }
+
+        return stream;
+    }
+
     // BodyWriter.OnStreamWriteListener methods implementation
 
     @Override
@@ -107,6 +227,7 @@ public abstract class HttpUploadTask extends UploadTask
     public void onBytesWritten(int bytesWritten) {
         uploadedBytes += bytesWritten;
         broadcastProgress(uploadedBytes, totalBytes);
+        throttle(bytesWritten);
     }
 
     @Override
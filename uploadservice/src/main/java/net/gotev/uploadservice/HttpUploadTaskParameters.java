@@ -3,6 +3,8 @@ package net.gotev.uploadservice;
 import android.os.Parcel;
 import android.os.Parcelable;
 
+import net.gotev.uploadservice.http.BodyInterceptor;
+
 import java.util.ArrayList;
 
 /**
@@ -18,8 +20,10 @@ public final class HttpUploadTaskParameters implements Parcelable {
     public String customUserAgent;
     public String method = METHOD_POST;
     public boolean usesFixedLengthStreamingMode = true;
+    public String contentDigestAlgorithm;
     private ArrayList<NameValue> requestHeaders = new ArrayList<>(10);
     private ArrayList<NameValue> requestParameters = new ArrayList<>(10);
+    private ArrayList<BodyInterceptor> bodyInterceptors = new ArrayList<>(2);
 
     public HttpUploadTaskParameters() {
 
@@ -45,16 +49,20 @@ public final class HttpUploadTaskParameters implements Parcelable {
         parcel.writeString(method);
         parcel.writeString(customUserAgent);
         parcel.writeByte((byte) (usesFixedLengthStreamingMode ? 1 : 0));
-        parcel.writeList(requestHeaders);
-        parcel.writeList(requestParameters);
+        parcel.writeString(contentDigestAlgorithm);
+        parcel.writeTypedList(requestHeaders);
+        parcel.writeTypedList(requestParameters);
+        parcel.writeList(bodyInterceptors);
     }
 
     private HttpUploadTaskParameters(Parcel in) {
         method = in.readString();
         customUserAgent = in.readString();
         usesFixedLengthStreamingMode = in.readByte() == 1;
-        in.readList(requestHeaders, NameValue.class.getClassLoader());
-        in.readList(requestParameters, NameValue.class.getClassLoader());
+        contentDigestAlgorithm = in.readString();
+        in.readTypedList(requestHeaders, NameValue.CREATOR);
+        in.readTypedList(requestParameters, NameValue.CREATOR);
+        in.readList(bodyInterceptors, BodyInterceptor.class.getClassLoader());
     }
 
     @Override
@@ -66,6 +74,10 @@ public final class HttpUploadTaskParameters implements Parcelable {
         return customUserAgent != null && !"".equals(customUserAgent);
     }
 
+    public boolean isContentDigestEnabled() {
+        return contentDigestAlgorithm != null;
+    }
+
     public HttpUploadTaskParameters addHeader(String name, String value) {
         requestHeaders.add(NameValue.header(name, value));
         return this;
@@ -83,4 +95,13 @@ public final class HttpUploadTaskParameters implements Parcelable {
     public ArrayList<NameValue> getRequestParameters() {
         return requestParameters;
     }
+
+    public HttpUploadTaskParameters addBodyInterceptor(BodyInterceptor interceptor) {
+        bodyInterceptors.add(interceptor);
+        return this;
+    }
+
+    public ArrayList<BodyInterceptor> getBodyInterceptors() {
+        return bodyInterceptors;
+    }
 }
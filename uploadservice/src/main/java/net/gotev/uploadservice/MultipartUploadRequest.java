@@ -5,6 +5,7 @@ import android.content.Intent;
 
 import java.io.FileNotFoundException;
 import java.net.MalformedURLException;
+import java.util.ArrayList;
 
 /**
  * HTTP/Multipart upload request. This is the most common way to upload files on a server.
@@ -19,6 +20,8 @@ public class MultipartUploadRequest extends HttpUploadRequest<MultipartUploadReq
 
     private static final String LOG_TAG = MultipartUploadRequest.class.getSimpleName();
     private boolean isUtf8Charset = false;
+    private boolean requestPerFile = false;
+    private final ArrayList<UploadFile> streamedParameters = new ArrayList<>();
 
     /**
      * Creates a new multipart upload request.
@@ -59,6 +62,9 @@ public class MultipartUploadRequest extends HttpUploadRequest<MultipartUploadReq
     protected void initializeIntent(Intent intent) {
         super.initializeIntent(intent);
         intent.putExtra(MultipartUploadTask.PARAM_UTF8_CHARSET, isUtf8Charset);
+        intent.putExtra(MultipartUploadTask.PARAM_REQUEST_PER_FILE, requestPerFile);
+        intent.putParcelableArrayListExtra(MultipartUploadTask.PARAM_STREAMED_PARAMETERS,
+                streamedParameters);
     }
 
     @Override
@@ -109,6 +115,47 @@ public class MultipartUploadRequest extends HttpUploadRequest<MultipartUploadReq
         return this;
     }
 
+    /**
+     * Adds a form parameter whose value is read from a file or a content URI while the request
+     * body is being written, instead of being held in memory. Use this for big values, like
+     * JSON metadata. The value is sent as it is, without applying body interceptors.
+     *
+     * @param paramName parameter name
+     * @param path absolute path of the file or Android content URI with the parameter value
+     * @param contentType content type of the value, or null to not send it
+     * @return {@link MultipartUploadRequest}
+     * @throws IllegalArgumentException if one or more parameters are not valid
+     */
+    public MultipartUploadRequest addParameterFromFile(String paramName, String path,
+                                                       String contentType)
+            throws IllegalArgumentException {
+        if (paramName == null || "".equals(paramName)) {
+            throw new IllegalArgumentException("Please specify parameterName value for parameter: "
+                                               + path);
+        }
+
+        streamedParameters.add(UploadFile.Builder.newInstance(path)
+                .setParameterName(paramName)
+                .setContentType(contentType)
+                .build());
+        return this;
+    }
+
+    /**
+     * Adds a form parameter whose value is read from a file or a content URI while the request
+     * body is being written, instead of being held in memory.
+     *
+     * @param paramName parameter name
+     * @param path absolute path of the file or Android content URI with the parameter value
+     * @return {@link MultipartUploadRequest}
+     * @throws IllegalArgumentException if one or more parameters are not valid
+     * @see #addParameterFromFile(String, String, String)
+     */
+    public MultipartUploadRequest addParameterFromFile(String paramName, String path)
+            throws IllegalArgumentException {
+        return addParameterFromFile(paramName, path, null);
+    }
+
     /**
      * Sets the charset for this multipart request to UTF-8. If not set, the standard US-ASCII
      * charset will be used.
@@ -118,4 +165,21 @@ public class MultipartUploadRequest extends HttpUploadRequest<MultipartUploadReq
         isUtf8Charset = true;
         return this;
     }
+
+    /**
+     * Sends each file in its own multipart request, together with all the form parameters.
+     * Every request is closed when its response has been received: stacks which pool
+     * connections, like the OkHttp one, may reuse the same connection for the next request,
+     * while {@link net.gotev.uploadservice.http.impl.HurlStack} opens a new one.
+     * If an attempt fails, the retry resumes from the first file which has not been uploaded
+     * yet, instead of sending all the files again. The server must accept the files one at
+     * a time. When all the files have been uploaded, the response to the last request is the
+     * one delivered as completion. By default all the files are sent in a single request.
+     * @param requestPerFile true to send each file in its own request
+     * @return request instance
+     */
+    public MultipartUploadRequest setRequestPerFile(boolean requestPerFile) {
+        this.requestPerFile = requestPerFile;
+        return this;
+    }
 }
@@ -4,9 +4,14 @@ import android.content.Intent;
 
 import net.gotev.uploadservice.http.BodyWriter;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * Implements an HTTP Multipart upload task.
@@ -18,6 +23,8 @@ import java.nio.charset.Charset;
 public class MultipartUploadTask extends HttpUploadTask {
 
     protected static final String PARAM_UTF8_CHARSET = "multipartUtf8Charset";
+    protected static final String PARAM_STREAMED_PARAMETERS = "multipartStreamedParameters";
+    protected static final String PARAM_REQUEST_PER_FILE = "multipartRequestPerFile";
 
     private static final String BOUNDARY_SIGNATURE = "-------AndroidUploadService";
     private static final Charset US_ASCII = Charset.forName("US-ASCII");
@@ -31,7 +38,94 @@ public class MultipartUploadTask extends HttpUploadTask {
 
     private byte[] boundaryBytes;
     private byte[] trailerBytes;
+    private byte[] newLineBytes;
     private Charset charset;
+    private MultipartPlan plan;
+    private boolean requestPerFile;
+
+    /**
+     * File part to send in the current request, when each file is sent in its own request.
+     */
+    private Part currentFilePart;
+
+    /**
+     * Bytes sent by the requests of the files which have already been uploaded, when each
+     * file is sent in its own request.
+     */
+    private long uploadedRequestsBytes;
+
+    /**
+     * Precomputed part of the multipart body, which streams the content of a file.
+     */
+    private static final class Part {
+        final UploadFile file;
+        final byte[] headerBytes;
+        final long fileLength;
+        final long contentLength;
+        final boolean intercepted;
+        final String digestFieldName;
+        final long length;
+
+        Part(UploadFile file, byte[] headerBytes, long fileLength, long contentLength,
+             boolean intercepted, String digestFieldName, long digestPartLength,
+             int boundaryLength, int newLineLength) {
+            this.file = file;
+            this.headerBytes = headerBytes;
+            this.fileLength = fileLength;
+            this.contentLength = contentLength;
+            this.intercepted = intercepted;
+            this.digestFieldName = digestFieldName;
+            this.length = contentLength < 0 ? -1 : boundaryLength + headerBytes.length
+                    + contentLength + newLineLength + digestPartLength;
+        }
+    }
+
+    /**
+     * Immutable layout of the multipart body, computed once per task and reused across retries.
+     * The preamble contains all the form parameters already encoded, followed by the parts
+     * which stream the parameters values backed by files, which are sent in every request,
+     * and by the files to upload.
+     */
+    private static final class MultipartPlan {
+        final byte[] preamble;
+        final List<Part> parameterParts;
+        final List<Part> fileParts;
+        // lengths are -1 if an interceptor can't know the length of a part in advance
+        final long sharedLength;
+        final long bodyLength;
+
+        MultipartPlan(byte[] preamble, List<Part> parameterParts, List<Part> fileParts,
+                      int trailerLength) {
+            this.preamble = preamble;
+            this.parameterParts = Collections.unmodifiableList(parameterParts);
+            this.fileParts = Collections.unmodifiableList(fileParts);
+
+            long length = preamble.length + trailerLength;
+            for (Part part : parameterParts) {
+                length = add(length, part.length);
+            }
+            this.sharedLength = length;
+
+            for (Part part : fileParts) {
+                length = add(length, part.length);
+            }
+            this.bodyLength = length;
+        }
+
+        /**
+         * Gets the length of the request body which contains only one of the files.
+         */
+        long getRequestLength(Part filePart) {
+            return add(sharedLength, filePart.length);
+        }
+
+        /**
+         * Adds two lengths, returning -1 if one of them is unknown.
+         */
+        static long add(long length, long other) {
+            return length < 0 || other < 0 ? -1 : length + other;
+        }
+    }
 
     @Override
     protected void init(UploadService service, Intent intent) throws IOException {
@@ -42,8 +136,15 @@ public class MultipartUploadTask extends HttpUploadTask {
         trailerBytes = (TWO_HYPHENS + boundary + TWO_HYPHENS + NEW_LINE).getBytes(US_ASCII);
         charset = intent.getBooleanExtra(PARAM_UTF8_CHARSET, false) ?
                 Charset.forName("UTF-8") : US_ASCII;
+        newLineBytes = NEW_LINE.getBytes(charset);
 
-        if (params.files.size() <= 1) {
+        ArrayList<UploadFile> streamedParameters =
+                intent.getParcelableArrayListExtra(PARAM_STREAMED_PARAMETERS);
+        plan = createPlan(streamedParameters);
+        requestPerFile = intent.getBooleanExtra(PARAM_REQUEST_PER_FILE, false)
+                && !params.files.isEmpty();
+
+        if (params.files.size() <= 1 && !requestPerFile) {
             httpParams.addHeader("Connection", "close");
         } else {
             httpParams.addHeader("Connection", "Keep-Alive");
@@ -52,45 +153,156 @@ public class MultipartUploadTask extends HttpUploadTask {
         httpParams.addHeader("Content-Type", "multipart/form-data; boundary=" + boundary);
     }
 
-    @Override
-    protected long getBodyLength() throws UnsupportedEncodingException {
-        return (getRequestParametersLength() + getFilesLength() + trailerBytes.length);
+    private MultipartPlan createPlan(List<UploadFile> streamedParameters)
+            throws UnsupportedEncodingException {
+        ByteArrayOutputStream preamble = new ByteArrayOutputStream();
+
+        for (final NameValue parameter : httpParams.getRequestParameters()) {
+            preamble.write(boundaryBytes, 0, boundaryBytes.length);
+            byte[] formItemBytes = getMultipartBytes(parameter);
+            preamble.write(formItemBytes, 0, formItemBytes.length);
+        }
+
+        ArrayList<Part> parameterParts = new ArrayList<>();
+
+        if (streamedParameters != null) {
+            // parameter values are sent as they are, without applying the body interceptors
+            for (UploadFile parameter : streamedParameters) {
+                long length = parameter.length(service);
+                parameterParts.add(new Part(parameter, getStreamedParameterHeader(parameter), length,
+                        length, false, null, 0, boundaryBytes.length, newLineBytes.length));
+            }
+        }
+
+        ArrayList<Part> fileParts = new ArrayList<>(params.files.size());
+
+        for (UploadFile file : params.files) {
+            long fileLength = file.length(service);
+            String digestFieldName = null;
+            long digestPartLength = 0;
+
+            if (httpParams.isContentDigestEnabled()) {
+                digestFieldName = ContentDigest.getFieldName(file.getProperty(PROPERTY_PARAM_NAME),
+                        httpParams.contentDigestAlgorithm);
+                // the encoded digest length depends only on the algorithm, so the digest
+                // field length is known before the file has been read
+                char[] placeholder = new char[ContentDigest.getEncodedLength(httpParams.contentDigestAlgorithm)];
+                digestPartLength = boundaryBytes.length
+                        + getMultipartBytes(new NameValue(digestFieldName, new String(placeholder))).length;
+            }
+
+            fileParts.add(new Part(file, getMultipartHeader(file), fileLength,
+                    getFileBodyLength(file, fileLength), true, digestFieldName,
+                    digestPartLength, boundaryBytes.length, newLineBytes.length));
+        }
+
+        return new MultipartPlan(preamble.toByteArray(), parameterParts, fileParts,
+                trailerBytes.length);
     }
 
     @Override
-    public void onBodyReady(BodyWriter bodyWriter) throws IOException {
-        //reset uploaded bytes when the body is ready to be written
-        //because sometimes this gets invoked when network changes
-        uploadedBytes = 0;
-        writeRequestParameters(bodyWriter);
-        writeFiles(bodyWriter);
-        bodyWriter.write(trailerBytes);
-        uploadedBytes += trailerBytes.length;
-        broadcastProgress(uploadedBytes, totalBytes);
+    protected long getBodyLength() {
+        return plan.bodyLength;
     }
 
-    private long getFilesLength() throws UnsupportedEncodingException {
+    @Override
+    protected void upload() throws Exception {
+        if (!requestPerFile) {
+            super.upload();
+            return;
+        }
+
+        // Each file is sent together with the form parameters in its own request. Files
+        // successfully uploaded in previous attempts are kept, so a retry resumes from
+        // the first file which has not been uploaded yet.
         long total = 0;
+        for (Part part : plan.fileParts) {
+            total = MultipartPlan.add(total, plan.getRequestLength(part));
+        }
+        totalBytes = total;
 
-        for (UploadFile file : params.files) {
-            total += getTotalMultipartBytes(file);
+        uploadedRequestsBytes = 0;
+        uploadedBytes = 0;
+        ServerResponse response = null;
+
+        for (Part part : plan.fileParts) {
+            if (!shouldContinue)
+                return;
+
+            long requestLength = plan.getRequestLength(part);
+
+            if (getSuccessfullyUploadedFiles().contains(part.file.getPath())) {
+                // the bytes sent in the previous attempts are not known if the length
+                // of the request was not known in advance
+                if (requestLength > 0) {
+                    uploadedRequestsBytes += requestLength;
+                }
+                continue;
+            }
+
+            currentFilePart = part;
+
+            try {
+                response = sendRequest(requestLength);
+            } finally {
+                currentFilePart = null;
+            }
+
+            if (!shouldContinue)
+                return;
+
+            if (response.getHttpCode() < 200 || response.getHttpCode() >= 400) {
+                // the server refused the file, so the upload is not retried
+                broadcastCompleted(response);
+                return;
+            }
+
+            addSuccessfullyUploadedFile(part.file);
+            uploadedRequestsBytes = uploadedBytes;
         }
 
-        return total;
+        // when all the files have been uploaded, the last server response is the
+        // one which gets broadcast
+        if (response != null) {
+            broadcastCompleted(response);
+        }
     }
 
-    private long getRequestParametersLength() throws UnsupportedEncodingException {
-        long parametersBytes = 0;
+    @Override
+    public void onBodyReady(BodyWriter bodyWriter) throws IOException {
+        //reset uploaded bytes when the body is ready to be written
+        //because sometimes this gets invoked when network changes
+        uploadedBytes = currentFilePart == null ? 0 : uploadedRequestsBytes;
+
+        if (plan.preamble.length > 0) {
+            bodyWriter.write(plan.preamble);
+            uploadedBytes += plan.preamble.length;
+            broadcastProgress(uploadedBytes, totalBytes);
+        }
 
-        if (!httpParams.getRequestParameters().isEmpty()) {
-            for (final NameValue parameter : httpParams.getRequestParameters()) {
-                // the bytes needed for every parameter are the sum of the boundary bytes
-                // and the bytes occupied by the parameter
-                parametersBytes += boundaryBytes.length + getMultipartBytes(parameter).length;
+        for (Part part : plan.parameterParts) {
+            if (!shouldContinue)
+                break;
+
+            writePart(bodyWriter, part);
+        }
+
+        if (currentFilePart != null) {
+            if (shouldContinue) {
+                writePart(bodyWriter, currentFilePart);
+            }
+        } else {
+            for (Part part : plan.fileParts) {
+                if (!shouldContinue)
+                    break;
+
+                writePart(bodyWriter, part);
             }
         }
 
-        return parametersBytes;
+        bodyWriter.write(trailerBytes);
+        uploadedBytes += trailerBytes.length;
+        broadcastProgress(uploadedBytes, totalBytes);
     }
 
     private byte[] getMultipartBytes(NameValue parameter) throws UnsupportedEncodingException {
@@ -98,6 +310,16 @@ public class MultipartUploadTask extends HttpUploadTask {
                 + NEW_LINE + NEW_LINE + parameter.getValue() + NEW_LINE).getBytes(charset);
     }
 
+    private byte[] getStreamedParameterHeader(UploadFile parameter) {
+        String header = "Content-Disposition: form-data; name=\"" + parameter.getParameterName() + "\"";
+
+        if (parameter.getContentType() != null && !parameter.getContentType().isEmpty()) {
+            header += NEW_LINE + "Content-Type: " + parameter.getContentType();
+        }
+
+        return (header + NEW_LINE + NEW_LINE).getBytes(charset);
+    }
+
     private byte[] getMultipartHeader(UploadFile file)
             throws UnsupportedEncodingException {
         String header = "Content-Disposition: form-data; name=\"" +
@@ -109,42 +331,32 @@ public class MultipartUploadTask extends HttpUploadTask {
         return header.getBytes(charset);
     }
 
-    private long getTotalMultipartBytes(UploadFile file)
-            throws UnsupportedEncodingException {
-        return boundaryBytes.length + getMultipartHeader(file).length + file.length(service)
-                + NEW_LINE.getBytes(charset).length;
-    }
+    private void writePart(BodyWriter bodyWriter, Part part) throws IOException {
+        bodyWriter.write(boundaryBytes);
+        bodyWriter.write(part.headerBytes);
 
-    private void writeRequestParameters(BodyWriter bodyWriter) throws IOException {
-        if (!httpParams.getRequestParameters().isEmpty()) {
-            for (final NameValue parameter : httpParams.getRequestParameters()) {
-                bodyWriter.write(boundaryBytes);
-                byte[] formItemBytes = getMultipartBytes(parameter);
-                bodyWriter.write(formItemBytes);
+        uploadedBytes += boundaryBytes.length + part.headerBytes.length;
+        broadcastProgress(uploadedBytes, totalBytes);
 
-                uploadedBytes += boundaryBytes.length + formItemBytes.length;
-                broadcastProgress(uploadedBytes, totalBytes);
-            }
-        }
-    }
+        ContentDigest digest = part.digestFieldName != null ?
+                new ContentDigest(httpParams.contentDigestAlgorithm) : null;
 
-    private void writeFiles(BodyWriter bodyWriter) throws IOException {
-        for (UploadFile file : params.files) {
-            if (!shouldContinue)
-                break;
+        InputStream stream = part.intercepted ?
+                getFileBodyStream(part.file, part.fileLength) : part.file.getStream(service);
 
-            bodyWriter.write(boundaryBytes);
-            byte[] headerBytes = getMultipartHeader(file);
-            bodyWriter.write(headerBytes);
+        bodyWriter.writeStream(stream, digest, this);
 
-            uploadedBytes += boundaryBytes.length + headerBytes.length;
-            broadcastProgress(uploadedBytes, totalBytes);
+        bodyWriter.write(newLineBytes);
+        uploadedBytes += newLineBytes.length;
 
-            bodyWriter.writeStream(file.getStream(service), this);
+        if (digest != null) {
+            String encodedDigest = digest.digest();
+            setContentDigest(part.file, encodedDigest);
 
-            byte[] newLineBytes = NEW_LINE.getBytes(charset);
-            bodyWriter.write(newLineBytes);
-            uploadedBytes += newLineBytes.length;
+            bodyWriter.write(boundaryBytes);
+            byte[] digestBytes = getMultipartBytes(new NameValue(part.digestFieldName, encodedDigest));
+            bodyWriter.write(digestBytes);
+            uploadedBytes += boundaryBytes.length + digestBytes.length;
         }
     }
 
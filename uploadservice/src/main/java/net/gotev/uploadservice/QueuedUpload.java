@@ -0,0 +1,174 @@
+package net.gotev.uploadservice;
+
+import android.content.Context;
+import android.os.Bundle;
+
+import net.gotev.uploadservice.scheduling.WaitingUpload;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compact descriptor of an upload waiting in the {@link UploadQueue}. The {@link UploadTask}
+ * which performs the upload is created only when a worker thread is ready to run it.
+ *
+ * @author Aleksandar Gotev
+ */
+final class QueuedUpload implements WaitingUpload {
+
+    // states of the upload. Transitions are atomic, so the worker thread which creates the task
+    // and the thread which cancels the upload never need to lock each other
+    static final int STATE_QUEUED = 0;
+    static final int STATE_MATERIALIZING = 1;
+    static final int STATE_STARTED = 2;
+    static final int STATE_CANCELLED = 3;
+
+    private static final long SIZE_NOT_COMPUTED = Long.MIN_VALUE;
+
+    final String id;
+    final UploadTaskParameters params;
+
+    /**
+     * Type and class of the task which performs the upload, as in the intent which started it.
+     */
+    final String taskType;
+    final String taskClass;
+
+    /**
+     * Extras of the intent which are read only by the task, like the parameters of an HTTP
+     * upload, or null if there are none. The task is created with an intent rebuilt from
+     * them when the upload starts.
+     */
+    final Bundle taskExtras;
+    final UploadService service;
+    final int notificationId;
+
+    /**
+     * Total length of the files, computed the first time it's needed, so that the uploads
+     * are enqueued without querying their files.
+     */
+    private volatile long totalBytes = SIZE_NOT_COMPUTED;
+
+    /**
+     * Task of an upload which has been paused and resumed, so it's not created again.
+     */
+    final UploadTask task;
+
+    private final AtomicInteger state = new AtomicInteger(STATE_QUEUED);
+
+    /**
+     * Arrival order in the queue, assigned when the upload is added to it.
+     */
+    long sequence;
+
+    /**
+     * Dependencies which are not done yet, guarded by the lock of the queue.
+     */
+    final Set<String> pendingDependencies = new HashSet<>();
+
+    /**
+     * First dependency which has not been successful or which is unknown, guarded by the
+     * lock of the queue.
+     */
+    String failedDependency;
+
+    QueuedUpload(UploadService service, String taskType, String taskClass, Bundle taskExtras,
+                 UploadTaskParameters params, int notificationId) {
+        this.id = params.id;
+        this.params = params;
+        this.taskType = taskType;
+        this.taskClass = taskClass;
+        this.taskExtras = taskExtras;
+        this.service = service;
+        this.notificationId = notificationId;
+        this.task = null;
+    }
+
+    QueuedUpload(UploadTask task) {
+        this.id = task.params.id;
+        this.params = task.params;
+        this.taskType = null;
+        this.taskClass = null;
+        this.taskExtras = null;
+        this.service = task.service;
+        this.notificationId = task.getNotificationId();
+        this.task = task;
+    }
+
+    private static long getTotalBytes(Context context, UploadTaskParameters params) {
+        long total = 0;
+
+        for (UploadFile file : params.files) {
+            long length = file.length(context);
+
+            if (length < 0)
+                return -1;
+
+            total += length;
+        }
+
+        return total;
+    }
+
+    @Override
+    public UploadTaskParameters getParams() {
+        return params;
+    }
+
+    /**
+     * Gets the total length of the files. It's computed the first time it's needed, by the
+     * scheduling policies which need it or by the progress of the tags of the upload, so the
+     * files are not queried when the upload is accepted. It can be called from any thread.
+     */
+    @Override
+    public long getTotalBytes() {
+        long total = totalBytes;
+
+        // computing it twice at the same time gives the same result
+        if (total == SIZE_NOT_COMPUTED) {
+            total = getTotalBytes(service, params);
+            totalBytes = total;
+        }
+
+        return total;
+    }
+
+    boolean isQueued() {
+        return state.get() == STATE_QUEUED;
+    }
+
+    /**
+     * Marks the upload as taken by a worker thread, which is going to create its task.
+     * @return true if the upload was waiting in the queue, false if it has been cancelled
+     */
+    boolean startMaterializing() {
+        return state.compareAndSet(STATE_QUEUED, STATE_MATERIALIZING);
+    }
+
+    /**
+     * Marks the task of the upload as started.
+     * @return true if the task can run, false if the upload has been cancelled while its
+     * task was being created
+     */
+    boolean start() {
+        return state.compareAndSet(STATE_MATERIALIZING, STATE_STARTED);
+    }
+
+    /**
+     * Cancels the upload, if its task has not been started yet.
+     * @return the state of the upload before this call. If it's {@link #STATE_STARTED}, the
+     * upload has not been cancelled and its task has to be stopped instead.
+     */
+    int cancel() {
+        while (true) {
+            int current = state.get();
+
+            if (current == STATE_STARTED || current == STATE_CANCELLED)
+                return current;
+
+            if (state.compareAndSet(current, STATE_CANCELLED))
+                return current;
+        }
+    }
+}
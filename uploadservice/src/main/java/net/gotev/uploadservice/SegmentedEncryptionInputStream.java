@@ -0,0 +1,210 @@
+package net.gotev.uploadservice;
+
+import net.gotev.uploadservice.http.BufferPool;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Encrypts a stream with AES-GCM in fixed-size authenticated segments, while it's being read.
+ * This allows to upload encrypted files without writing an encrypted copy first.
+ * <p>
+ * The encrypted stream starts with a header made of one byte containing the header length
+ * followed by a random 7 bytes nonce prefix. Then every plaintext segment of
+ * {@code segmentSize} bytes (the last one may be shorter) is encrypted on its own and followed
+ * by its 16 bytes authentication tag. The nonce of each segment is made of the nonce prefix,
+ * the segment index (4 bytes, big endian) and one byte which is set to 1 only for the last
+ * segment, so segments can't be reordered or truncated without being detected, and every
+ * segment can be decrypted independently, which is what ranged and resumable uploads need.
+ *
+ * @author Aleksandar Gotev
+ */
+public class SegmentedEncryptionInputStream extends InputStream {
+
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024;
+    public static final int NONCE_PREFIX_LENGTH = 7;
+    public static final int HEADER_LENGTH = 1 + NONCE_PREFIX_LENGTH;
+    public static final int TAG_LENGTH = 16;
+
+    private final InputStream plainStream;
+    private final SecretKeySpec key;
+    private final byte[] noncePrefix;
+    private final int segmentSize;
+    private final int segments;
+    private final long plainLength;
+
+    private final BufferPool pool;
+    private final Cipher cipher;
+    private final byte[] plainSegment;
+    private final byte[] output;
+    private final byte[] nonce = new byte[12];
+
+    private int segmentIndex;
+    private long plainBytesLeft;
+    private int outputPosition = 0;
+    private int outputLength = 0;
+    private boolean closed = false;
+
+    /**
+     * Creates a new encrypting stream.
+     *
+     * @param plainStream stream to encrypt
+     * @param plainLength length in bytes of the stream to encrypt
+     * @param key AES key (16, 24 or 32 bytes)
+     * @param noncePrefix random nonce prefix of {@link #NONCE_PREFIX_LENGTH} bytes. It must never
+     *                    be reused with the same key for a different content
+     * @param segmentSize size in bytes of each plaintext segment
+     * @param firstSegment index of the first segment to produce. Set this to 0 to encrypt the
+     *                     whole stream, or to a greater value to resume from a segment boundary.
+     *                     In that case the header is not produced and the plain stream must start
+     *                     from the beginning, as the preceding segments are skipped
+     * @param pool pool from which to get the segment buffers, which are given back when this
+     *             stream gets closed. If null, new buffers are allocated
+     * @throws IOException if the preceding segments can't be skipped
+     */
+    public SegmentedEncryptionInputStream(InputStream plainStream, long plainLength, byte[] key,
+                                          byte[] noncePrefix, int segmentSize, int firstSegment,
+                                          BufferPool pool)
+            throws IOException {
+        if (noncePrefix.length != NONCE_PREFIX_LENGTH)
+            throw new IllegalArgumentException("Nonce prefix must be " + NONCE_PREFIX_LENGTH + " bytes long");
+
+        if (segmentSize <= 0)
+            throw new IllegalArgumentException("Segment size must be greater than zero");
+
+        this.plainStream = plainStream;
+        this.plainLength = plainLength;
+        this.key = new SecretKeySpec(key, "AES");
+        this.noncePrefix = noncePrefix;
+        this.segmentSize = segmentSize;
+        this.segments = getSegments(plainLength, segmentSize);
+        this.pool = pool;
+
+        try {
+            cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        } catch (GeneralSecurityException exc) {
+            throw new IOException("AES-GCM is not available", exc);
+        }
+
+        int outputSize = Math.max(segmentSize + TAG_LENGTH, HEADER_LENGTH);
+
+        if (pool != null) {
+            plainSegment = pool.acquire(segmentSize);
+            output = pool.acquire(outputSize);
+        } else {
+            plainSegment = new byte[segmentSize];
+            output = new byte[outputSize];
+        }
+
+        segmentIndex = firstSegment;
+        plainBytesLeft = plainLength - (long) firstSegment * segmentSize;
+
+        long toSkip = (long) firstSegment * segmentSize;
+        while (toSkip > 0) {
+            long skipped = plainStream.skip(toSkip);
+            if (skipped <= 0)
+                throw new IOException("Unable to skip to segment " + firstSegment);
+            toSkip -= skipped;
+        }
+
+        if (firstSegment == 0) {
+            output[0] = HEADER_LENGTH;
+            System.arraycopy(noncePrefix, 0, output, 1, NONCE_PREFIX_LENGTH);
+            outputLength = HEADER_LENGTH;
+        }
+    }
+
+    /**
+     * Gets the length of the encrypted stream.
+     *
+     * @param plainLength length of the plaintext
+     * @param segmentSize size in bytes of each plaintext segment
+     * @return encrypted length, including header and authentication tags
+     */
+    public static long getEncryptedLength(long plainLength, int segmentSize) {
+        return HEADER_LENGTH + plainLength + (long) getSegments(plainLength, segmentSize) * TAG_LENGTH;
+    }
+
+    private static int getSegments(long plainLength, int segmentSize) {
+        // an empty stream is still encrypted in one segment, to authenticate it
+        if (plainLength == 0)
+            return 1;
+
+        return (int) ((plainLength + segmentSize - 1) / segmentSize);
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] single = new byte[1];
+        int read = read(single, 0, 1);
+        return read <= 0 ? -1 : single[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (length == 0)
+            return 0;
+
+        if (outputPosition == outputLength) {
+            if (segmentIndex >= segments)
+                return -1;
+
+            encryptNextSegment();
+        }
+
+        int toCopy = Math.min(length, outputLength - outputPosition);
+        System.arraycopy(output, outputPosition, buffer, offset, toCopy);
+        outputPosition += toCopy;
+        return toCopy;
+    }
+
+    private void encryptNextSegment() throws IOException {
+        int segmentLength = (int) Math.min(segmentSize, plainBytesLeft);
+        int read = 0;
+
+        while (read < segmentLength) {
+            int bytesRead = plainStream.read(plainSegment, read, segmentLength - read);
+            if (bytesRead < 0) {
+                throw new IOException("Stream ended after " + (plainLength - plainBytesLeft + read)
+                        + " bytes, but " + plainLength + " bytes were expected");
+            }
+            read += bytesRead;
+        }
+
+        System.arraycopy(noncePrefix, 0, nonce, 0, NONCE_PREFIX_LENGTH);
+        nonce[7] = (byte) (segmentIndex >>> 24);
+        nonce[8] = (byte) (segmentIndex >>> 16);
+        nonce[9] = (byte) (segmentIndex >>> 8);
+        nonce[10] = (byte) segmentIndex;
+        nonce[11] = (byte) (segmentIndex == segments - 1 ? 1 : 0);
+
+        try {
+            cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_LENGTH * 8, nonce));
+            outputLength = cipher.doFinal(plainSegment, 0, segmentLength, output, 0);
+        } catch (GeneralSecurityException exc) {
+            throw new IOException("Error while encrypting segment " + segmentIndex, exc);
+        }
+
+        outputPosition = 0;
+        plainBytesLeft -= segmentLength;
+        segmentIndex++;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            plainStream.close();
+        } finally {
+            if (pool != null && !closed) {
+                pool.release(plainSegment);
+                pool.release(output);
+            }
+            closed = true;
+        }
+    }
+}
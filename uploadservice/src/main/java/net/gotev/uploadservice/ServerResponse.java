@@ -58,13 +58,18 @@ public class ServerResponse implements Parcelable {
             this.headers = new LinkedHashMap<>(1);
     }
 
-    @SuppressWarnings("unchecked")
     protected ServerResponse(Parcel in) {
         url = in.readString();
         httpCode = in.readInt();
         body = new byte[in.readInt()];
         in.readByteArray(body);
-        headers = (LinkedHashMap<String, String>) in.readSerializable();
+
+        String[] headerNames = in.createStringArray();
+        String[] headerValues = in.createStringArray();
+        headers = new LinkedHashMap<>(Math.max(headerNames.length, 1));
+        for (int i = 0; i < headerNames.length; i++) {
+            headers.put(headerNames[i], headerValues[i]);
+        }
     }
 
     @Override
@@ -73,7 +78,18 @@ public class ServerResponse implements Parcelable {
         parcel.writeInt(httpCode);
         parcel.writeInt(body.length);
         parcel.writeByteArray(body);
-        parcel.writeSerializable(headers);
+
+        // headers are written as two string arrays, to avoid the cost of java serialization
+        parcel.writeStringArray(headers.keySet().toArray(new String[0]));
+        parcel.writeStringArray(headers.values().toArray(new String[0]));
+    }
+
+    /**
+     * Creates a copy of this response without the body.
+     * @return copy of the server response
+     */
+    ServerResponse withoutBody() {
+        return new ServerResponse(url, httpCode, null, headers);
     }
 
     @Override
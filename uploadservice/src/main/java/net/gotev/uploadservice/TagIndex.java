@@ -0,0 +1,96 @@
+package net.gotev.uploadservice;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Index of the active uploads by tag, with the statistics of the finished ones.
+ * Lookups never block, while adding and removing uploads is serialized.
+ *
+ * @author Aleksandar Gotev
+ */
+final class TagIndex {
+
+    static final class Entry {
+        final String tag;
+        final long startTime = System.currentTimeMillis();
+        final Set<String> uploadIds =
+                Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+        // statistics of the finished uploads, guarded by the index
+        volatile int completedUploads;
+        volatile int failedUploads;
+        volatile long finishedUploadedBytes;
+        volatile long finishedTotalBytes;
+
+        // time of the last progress event, to throttle them
+        final AtomicLong lastEventTime = new AtomicLong(0);
+
+        Entry(String tag) {
+            this.tag = tag;
+        }
+    }
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    synchronized void add(UploadTaskParameters params) {
+        for (String tag : params.tags) {
+            Entry entry = entries.get(tag);
+
+            if (entry == null) {
+                entry = new Entry(tag);
+                entries.put(tag, entry);
+            }
+
+            entry.uploadIds.add(params.id);
+        }
+    }
+
+    /**
+     * Removes a finished upload from the index. When the last upload with a tag is finished,
+     * the tag is removed together with its statistics.
+     *
+     * @return entries of the tags of the upload
+     */
+    synchronized List<Entry> remove(UploadTaskParameters params, boolean successful,
+                                    long uploadedBytes, long totalBytes) {
+        List<Entry> updated = new ArrayList<>(params.tags.size());
+
+        for (String tag : params.tags) {
+            Entry entry = entries.get(tag);
+
+            if (entry == null || !entry.uploadIds.remove(params.id))
+                continue;
+
+            if (successful) {
+                entry.completedUploads++;
+            } else {
+                entry.failedUploads++;
+            }
+
+            entry.finishedUploadedBytes += uploadedBytes;
+            // uploads whose length was not known in advance count for what they've sent
+            entry.finishedTotalBytes += totalBytes >= 0 ? totalBytes : uploadedBytes;
+
+            if (entry.uploadIds.isEmpty()) {
+                entries.remove(tag);
+            }
+
+            updated.add(entry);
+        }
+
+        return updated;
+    }
+
+    Entry get(String tag) {
+        return entries.get(tag);
+    }
+
+    void clear() {
+        entries.clear();
+    }
+}
@@ -0,0 +1,178 @@
+package net.gotev.uploadservice;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+
+/**
+ * Aggregate progress of all the uploads with the same tag.
+ * Bytes are counted only for the uploads which have been started, as the size of the queued
+ * ones is not computed until they start.
+ *
+ * @author Aleksandar Gotev
+ */
+public class TagProgress implements Parcelable {
+
+    private String tag;
+    private int activeUploads;
+    private int completedUploads;
+    private int failedUploads;
+    private long uploadedBytes;
+    private long totalBytes;
+    private long startTime;
+    private long currentTime;
+
+    public TagProgress(String tag, int activeUploads, int completedUploads, int failedUploads,
+                       long uploadedBytes, long totalBytes, long startTime) {
+        this.tag = tag;
+        this.activeUploads = activeUploads;
+        this.completedUploads = completedUploads;
+        this.failedUploads = failedUploads;
+        this.uploadedBytes = uploadedBytes;
+        this.totalBytes = totalBytes;
+        this.startTime = startTime;
+        this.currentTime = System.currentTimeMillis();
+    }
+
+    // This is used to regenerate the object.
+    // All Parcelables must have a CREATOR that implements these two methods
+    public static final Parcelable.Creator<TagProgress> CREATOR =
+            new Parcelable.Creator<TagProgress>() {
+                @Override
+                public TagProgress createFromParcel(final Parcel in) {
+                    return new TagProgress(in);
+                }
+
+                @Override
+                public TagProgress[] newArray(final int size) {
+                    return new TagProgress[size];
+                }
+            };
+
+    @Override
+    public void writeToParcel(Parcel parcel, int flags) {
+        parcel.writeString(tag);
+        parcel.writeInt(activeUploads);
+        parcel.writeInt(completedUploads);
+        parcel.writeInt(failedUploads);
+        parcel.writeLong(uploadedBytes);
+        parcel.writeLong(totalBytes);
+        parcel.writeLong(startTime);
+        parcel.writeLong(currentTime);
+    }
+
+    private TagProgress(Parcel in) {
+        tag = in.readString();
+        activeUploads = in.readInt();
+        completedUploads = in.readInt();
+        failedUploads = in.readInt();
+        uploadedBytes = in.readLong();
+        totalBytes = in.readLong();
+        startTime = in.readLong();
+        currentTime = in.readLong();
+    }
+
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
+    /**
+     * Gets the tag.
+     *
+     * @return string
+     */
+    public String getTag() {
+        return tag;
+    }
+
+    /**
+     * Gets the number of the uploads with this tag which are queued, running or paused.
+     *
+     * @return int value
+     */
+    public int getActiveUploads() {
+        return activeUploads;
+    }
+
+    /**
+     * Gets the number of the uploads with this tag which have been completed successfully.
+     *
+     * @return int value
+     */
+    public int getCompletedUploads() {
+        return completedUploads;
+    }
+
+    /**
+     * Gets the number of the uploads with this tag which have failed or have been cancelled.
+     *
+     * @return int value
+     */
+    public int getFailedUploads() {
+        return failedUploads;
+    }
+
+    /**
+     * Gets the total number of uploads with this tag.
+     *
+     * @return int value
+     */
+    public int getTotalUploads() {
+        return activeUploads + completedUploads + failedUploads;
+    }
+
+    /**
+     * Gets the bytes uploaded so far.
+     *
+     * @return long value
+     */
+    public long getUploadedBytes() {
+        return uploadedBytes;
+    }
+
+    /**
+     * Gets the total bytes of the uploads which have been started.
+     *
+     * @return long value
+     */
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    /**
+     * Gets the elapsed time in milliseconds since the first upload with this tag
+     * has been enqueued.
+     *
+     * @return long value
+     */
+    public long getElapsedTime() {
+        return currentTime - startTime;
+    }
+
+    /**
+     * Gets the estimated time left to upload the bytes of the started uploads, in milliseconds,
+     * based on the average upload rate so far.
+     *
+     * @return long value, or -1 if it can't be estimated yet
+     */
+    public long getEstimatedTimeLeft() {
+        long elapsedTime = getElapsedTime();
+
+        if (uploadedBytes <= 0 || elapsedTime <= 0 || totalBytes < uploadedBytes)
+            return -1;
+
+        return (long) ((double) (totalBytes - uploadedBytes) * elapsedTime / uploadedBytes);
+    }
+
+    /**
+     * Gets the progress in percent (from 0 to 100) of the started uploads.
+     *
+     * @return integer value
+     */
+    public int getProgressPercent() {
+        if (totalBytes <= 0)
+            return 0;
+
+        return (int) (uploadedBytes * 100 / totalBytes);
+    }
+}
@@ -0,0 +1,107 @@
+package net.gotev.uploadservice;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket which limits the rate at which bytes are uploaded. Bytes are consumed after
+ * they have been written, so the bucket can go in debt, and the writer waits until the debt
+ * is repaid. The rate can be changed at any time, also while writers are waiting.
+ *
+ * @author Aleksandar Gotev
+ */
+final class TokenBucket {
+
+    /**
+     * Source of the time used to refill the bucket.
+     */
+    interface Clock {
+        /**
+         * @return current time in nanoseconds, like {@link System#nanoTime()}
+         */
+        long nanoTime();
+    }
+
+    static final Clock SYSTEM_CLOCK = System::nanoTime;
+
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    // maximum bytes which can be accumulated while idle, as a fraction of the rate
+    private static final int MAX_BURST_DIVIDER = 5;
+
+    // bytes per second, 0 means unlimited
+    private long rate;
+    private double tokens = 0;
+    private long lastRefillTime;
+
+    private final Clock clock;
+
+    TokenBucket(long rate) {
+        this(rate, SYSTEM_CLOCK);
+    }
+
+    TokenBucket(long rate, Clock clock) {
+        this.clock = clock;
+        lastRefillTime = clock.nanoTime();
+        setRate(rate);
+    }
+
+    synchronized long getRate() {
+        return rate;
+    }
+
+    synchronized void setRate(long rate) {
+        refill();
+        this.rate = rate > 0 ? rate : 0;
+
+        if (this.rate == 0) {
+            tokens = 0;
+        } else {
+            tokens = Math.min(tokens, getMaxBurst());
+        }
+    }
+
+    /**
+     * Consumes the given bytes.
+     *
+     * @param bytes number of written bytes
+     */
+    synchronized void consume(int bytes) {
+        if (rate == 0)
+            return;
+
+        refill();
+        tokens -= bytes;
+    }
+
+    /**
+     * Gets how long to wait before writing more bytes.
+     *
+     * @return time to wait in nanoseconds, or 0 if bytes can be written immediately
+     */
+    synchronized long getWaitNanos() {
+        if (rate == 0)
+            return 0;
+
+        refill();
+
+        if (tokens >= 0)
+            return 0;
+
+        return (long) (-tokens * NANOS_PER_SECOND / rate);
+    }
+
+    private void refill() {
+        long now = clock.nanoTime();
+
+        if (rate > 0) {
+            double refilled = (double) (now - lastRefillTime) * rate / NANOS_PER_SECOND;
+            tokens = Math.min(getMaxBurst(), tokens + refilled);
+        }
+
+        lastRefillTime = now;
+    }
+
+    private double getMaxBurst() {
+        return (double) rate / MAX_BURST_DIVIDER;
+    }
+}
@@ -0,0 +1,420 @@
+package net.gotev.uploadservice;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.annotation.Nullable;
+
+import java.net.MalformedURLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Collects many small binary uploads directed to the same endpoint and sends them in a single
+ * multipart request, to not pay the cost of a separate task, service start, connection and
+ * notification for each one of them. Each file is sent in its own body part, which has a
+ * {@code Content-ID} header containing the ID of the original upload request.
+ * <p>
+ * Uploads are grouped by URL, method and headers, and a group is sent when one of these
+ * happens first: the maximum delay from the first upload added to the group elapses, the
+ * group reaches the maximum number of uploads or the maximum number of bytes, or
+ * {@link #flush()} is called. Uploads whose file is bigger than the maximum part size,
+ * or which use body interceptors or content digests, are started immediately on their own.
+ * <p>
+ * The server responds once for the whole batch, so the same response is delivered to the
+ * delegate of each original upload request, or in broadcast with the original upload ID if
+ * the request has no delegate. Keep a reference to the batcher for as long as its uploads
+ * are running.
+ *
+ * @author Aleksandar Gotev
+ */
+public class UploadBatcher {
+
+    private static final String LOG_TAG = UploadBatcher.class.getSimpleName();
+
+    public static final String DEFAULT_MULTIPART_SUBTYPE = "mixed";
+    public static final long DEFAULT_MAX_DELAY_MILLIS = 2000;
+    public static final int DEFAULT_MAX_UPLOADS = 50;
+    public static final long DEFAULT_MAX_BATCH_BYTES = 1024 * 1024;
+    public static final long DEFAULT_MAX_PART_BYTES = 64 * 1024;
+
+    private final Context context;
+    private final ServiceParameters serviceParameters;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Map<String, Batch> pendingBatches = new LinkedHashMap<>();
+
+    /**
+     * Delegates of the batches being uploaded. They are held here because the upload service
+     * keeps only weak references to the delegates.
+     */
+    private final Map<String, BatchDelegate> runningBatches = new ConcurrentHashMap<>();
+
+    private String multipartSubtype = DEFAULT_MULTIPART_SUBTYPE;
+    private long maxDelayMillis = DEFAULT_MAX_DELAY_MILLIS;
+    private int maxUploads = DEFAULT_MAX_UPLOADS;
+    private long maxBatchBytes = DEFAULT_MAX_BATCH_BYTES;
+    private long maxPartBytes = DEFAULT_MAX_PART_BYTES;
+
+    /**
+     * Creates a new upload batcher.
+     *
+     * @param context application context
+     * @param serviceParameters parameters used to start the upload service
+     */
+    public UploadBatcher(final Context context, @Nullable final ServiceParameters serviceParameters) {
+        if (context == null)
+            throw new IllegalArgumentException("Context MUST not be null!");
+
+        this.context = context.getApplicationContext();
+        this.serviceParameters = serviceParameters;
+    }
+
+    /**
+     * Sets the subtype of the multipart batch requests. By default it's {@code mixed}.
+     * @param subtype multipart subtype, e.g. mixed or related
+     * @return {@link UploadBatcher}
+     */
+    public synchronized UploadBatcher setMultipartSubtype(String subtype) {
+        if (subtype == null || subtype.isEmpty())
+            throw new IllegalArgumentException("Multipart subtype must not be empty!");
+
+        this.multipartSubtype = subtype;
+        return this;
+    }
+
+    /**
+     * Sets the maximum time to wait for other uploads, after the first one has been added
+     * to a batch. By default it's {@link #DEFAULT_MAX_DELAY_MILLIS}.
+     * @param maxDelayMillis time in milliseconds
+     * @return {@link UploadBatcher}
+     */
+    public synchronized UploadBatcher setMaxDelay(long maxDelayMillis) {
+        this.maxDelayMillis = Math.max(0, maxDelayMillis);
+        return this;
+    }
+
+    /**
+     * Sets the maximum number of uploads in a batch. By default it's {@link #DEFAULT_MAX_UPLOADS}.
+     * @param maxUploads number of uploads
+     * @return {@link UploadBatcher}
+     */
+    public synchronized UploadBatcher setMaxUploads(int maxUploads) {
+        this.maxUploads = Math.max(1, maxUploads);
+        return this;
+    }
+
+    /**
+     * Sets the maximum number of file bytes in a batch.
+     * By default it's {@link #DEFAULT_MAX_BATCH_BYTES}.
+     * @param maxBatchBytes number of bytes
+     * @return {@link UploadBatcher}
+     */
+    public synchronized UploadBatcher setMaxBatchBytes(long maxBatchBytes) {
+        this.maxBatchBytes = maxBatchBytes;
+        return this;
+    }
+
+    /**
+     * Sets the maximum size of a file to be batched. Bigger files are uploaded on their own.
+     * By default it's {@link #DEFAULT_MAX_PART_BYTES}.
+     * @param maxPartBytes number of bytes
+     * @return {@link UploadBatcher}
+     */
+    public synchronized UploadBatcher setMaxPartBytes(long maxPartBytes) {
+        this.maxPartBytes = maxPartBytes;
+        return this;
+    }
+
+    /**
+     * Adds an upload to be sent in the next batch to the same endpoint.
+     * Use this instead of {@link BinaryUploadRequest#startUpload(ServiceParameters)}.
+     *
+     * @param request binary upload request
+     * @return the upload ID of the request
+     */
+    public synchronized String add(BinaryUploadRequest request) {
+        if (request.params.files.isEmpty())
+            throw new IllegalArgumentException("Set the file to be used in the request body first!");
+
+        UploadFile file = request.params.files.get(0);
+        long length = file.length(context);
+
+        if (length < 0 || length > maxPartBytes
+                || !request.httpParams.getBodyInterceptors().isEmpty()
+                || request.httpParams.isContentDigestEnabled()) {
+            Logger.debug(LOG_TAG, "Upload with ID " + request.params.id
+                    + " can't be batched. Starting it on its own");
+            return request.startUpload(serviceParameters);
+        }
+
+        String key = getBatchKey(request);
+        Batch batch = pendingBatches.get(key);
+
+        if (batch == null) {
+            batch = new Batch(key);
+            pendingBatches.put(key, batch);
+            handler.postDelayed(batch, maxDelayMillis);
+        }
+
+        batch.entries.add(new Entry(request, file, length));
+        batch.bytes += length;
+
+        if (batch.entries.size() >= maxUploads || batch.bytes >= maxBatchBytes) {
+            send(batch);
+        }
+
+        return request.params.id;
+    }
+
+    /**
+     * Sends all the pending batches immediately.
+     */
+    public synchronized void flush() {
+        for (Batch batch : new ArrayList<>(pendingBatches.values())) {
+            send(batch);
+        }
+    }
+
+    /**
+     * Cancels an upload added to this batcher. If it has not been sent yet, it's removed from
+     * its batch, otherwise the whole batch which contains it gets cancelled.
+     *
+     * @param uploadId upload ID of the request
+     */
+    public synchronized void cancel(String uploadId) {
+        for (Batch batch : pendingBatches.values()) {
+            for (Entry entry : batch.entries) {
+                if (entry.request.params.id.equals(uploadId)) {
+                    batch.entries.remove(entry);
+                    batch.bytes -= entry.length;
+                    notifyCancelled(context, entry, new UploadInfo(uploadId));
+
+                    if (batch.entries.isEmpty()) {
+                        handler.removeCallbacks(batch);
+                        pendingBatches.remove(batch.key);
+                    }
+                    return;
+                }
+            }
+        }
+
+        for (Map.Entry<String, BatchDelegate> running : runningBatches.entrySet()) {
+            if (running.getValue().contains(uploadId)) {
+                UploadService.stopUpload(running.getKey());
+                return;
+            }
+        }
+    }
+
+    private static String getBatchKey(BinaryUploadRequest request) {
+        StringBuilder key = new StringBuilder()
+                .append(request.httpParams.method).append(' ')
+                .append(request.params.serverUrl);
+
+        for (NameValue header : request.httpParams.getRequestHeaders()) {
+            key.append('\n').append(header.getName()).append(':').append(header.getValue());
+        }
+
+        return key.toString();
+    }
+
+    private void send(Batch batch) {
+        handler.removeCallbacks(batch);
+        pendingBatches.remove(batch.key);
+
+        if (batch.entries.isEmpty())
+            return;
+
+        if (batch.entries.size() == 1) {
+            batch.entries.get(0).request.startUpload(serviceParameters);
+            return;
+        }
+
+        BinaryUploadRequest first = batch.entries.get(0).request;
+        BatchUploadRequest batchRequest;
+
+        try {
+            batchRequest = new BatchUploadRequest(context, first.params.serverUrl, multipartSubtype);
+        } catch (MalformedURLException exc) {
+            // the URL has already been validated by the original requests
+            throw new IllegalStateException(exc);
+        }
+
+        batchRequest.setMethod(first.httpParams.method)
+                .setNotificationConfig(first.params.notificationConfig);
+
+        for (NameValue header : first.httpParams.getRequestHeaders()) {
+            batchRequest.addHeader(header.getName(), header.getValue());
+        }
+
+        if (first.httpParams.isCustomUserAgentDefined()) {
+            batchRequest.setCustomUserAgent(first.httpParams.customUserAgent);
+        }
+
+        int maxRetries = 0;
+        for (Entry entry : batch.entries) {
+            String contentType = entry.file.getContentType();
+            if (contentType == null || contentType.isEmpty()) {
+                contentType = entry.file.getResolvedContentType(context);
+            }
+
+            batchRequest.addPart(entry.file, entry.request.params.id, contentType);
+            maxRetries = Math.max(maxRetries, entry.request.params.getMaxRetries());
+        }
+
+        BatchDelegate delegate = new BatchDelegate(batch.entries);
+        batchRequest.setMaxRetries(maxRetries).setDelegate(delegate);
+        runningBatches.put(batchRequest.params.id, delegate);
+
+        Logger.debug(LOG_TAG, "Sending " + batch.entries.size() + " uploads ("
+                + batch.bytes + " bytes) in batch with ID " + batchRequest.params.id);
+
+        batchRequest.startUpload(serviceParameters);
+    }
+
+    private static void notifyCancelled(Context context, Entry entry, UploadInfo info) {
+        if (entry.request.delegate != null) {
+            entry.request.delegate.onCancelled(context, info);
+        } else {
+            context.sendBroadcast(new BroadcastData()
+                    .setStatus(BroadcastData.Status.CANCELLED)
+                    .setUploadInfo(info)
+                    .getIntent());
+        }
+    }
+
+    private static final class Entry {
+        final BinaryUploadRequest request;
+        final UploadFile file;
+        final long length;
+
+        Entry(BinaryUploadRequest request, UploadFile file, long length) {
+            this.request = request;
+            this.file = file;
+            this.length = length;
+        }
+    }
+
+    private final class Batch implements Runnable {
+        final String key;
+        final List<Entry> entries = new ArrayList<>();
+        long bytes;
+
+        Batch(String key) {
+            this.key = key;
+        }
+
+        @Override
+        public void run() {
+            synchronized (UploadBatcher.this) {
+                if (pendingBatches.get(key) == this) {
+                    send(this);
+                }
+            }
+        }
+    }
+
+    /**
+     * Receives the events of a batch and delivers them to each one of the original requests.
+     */
+    private final class BatchDelegate implements UploadStatusDelegate {
+        private final List<Entry> entries;
+
+        BatchDelegate(List<Entry> entries) {
+            this.entries = Collections.unmodifiableList(new ArrayList<>(entries));
+        }
+
+        boolean contains(String uploadId) {
+            for (Entry entry : entries) {
+                if (entry.request.params.id.equals(uploadId))
+                    return true;
+            }
+            return false;
+        }
+
+        @Override
+        public void onProgress(Context context, UploadInfo uploadInfo) {
+            for (Entry entry : entries) {
+                UploadInfo info = getUploadInfo(entry, uploadInfo, false);
+
+                if (entry.request.delegate != null) {
+                    entry.request.delegate.onProgress(context, info);
+                } else {
+                    context.sendBroadcast(new BroadcastData()
+                            .setStatus(BroadcastData.Status.IN_PROGRESS)
+                            .setUploadInfo(info)
+                            .getIntent());
+                }
+            }
+        }
+
+        @Override
+        public void onError(Context context, UploadInfo uploadInfo,
+                            ServerResponse serverResponse, Exception exception) {
+            runningBatches.remove(uploadInfo.getUploadId());
+
+            for (Entry entry : entries) {
+                UploadInfo info = getUploadInfo(entry, uploadInfo, false);
+
+                if (entry.request.delegate != null) {
+                    entry.request.delegate.onError(context, info, serverResponse, exception);
+                } else {
+                    context.sendBroadcast(new BroadcastData()
+                            .setStatus(BroadcastData.Status.ERROR)
+                            .setUploadInfo(info)
+                            .setServerResponse(serverResponse)
+                            .setException(exception)
+                            .getIntent());
+                }
+            }
+        }
+
+        @Override
+        public void onCompleted(Context context, UploadInfo uploadInfo, ServerResponse serverResponse) {
+            runningBatches.remove(uploadInfo.getUploadId());
+
+            for (Entry entry : entries) {
+                UploadInfo info = getUploadInfo(entry, uploadInfo, true);
+
+                if (entry.request.delegate != null) {
+                    entry.request.delegate.onCompleted(context, info, serverResponse);
+                } else {
+                    context.sendBroadcast(new BroadcastData()
+                            .setStatus(BroadcastData.Status.COMPLETED)
+                            .setUploadInfo(info)
+                            .setServerResponse(serverResponse)
+                            .getIntent());
+                }
+            }
+        }
+
+        @Override
+        public void onCancelled(Context context, UploadInfo uploadInfo) {
+            runningBatches.remove(uploadInfo.getUploadId());
+
+            for (Entry entry : entries) {
+                notifyCancelled(context, entry, getUploadInfo(entry, uploadInfo, false));
+            }
+        }
+
+        /**
+         * Gets the upload info of an original request, with its share of the batch progress.
+         */
+        private UploadInfo getUploadInfo(Entry entry, UploadInfo batchInfo, boolean completed) {
+            long uploadedBytes = batchInfo.getTotalBytes() > 0 ?
+                    entry.length * batchInfo.getUploadedBytes() / batchInfo.getTotalBytes() : 0;
+
+            List<String> file = Collections.singletonList(entry.file.getPath());
+
+            return new UploadInfo(entry.request.params.id, batchInfo.getStartTime(),
+                    completed ? entry.length : Math.min(uploadedBytes, entry.length),
+                    entry.length, batchInfo.getNumberOfRetries(),
+                    completed ? file : null, completed ? null : file);
+        }
+    }
+}
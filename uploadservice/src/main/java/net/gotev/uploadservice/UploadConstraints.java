@@ -0,0 +1,210 @@
+package net.gotev.uploadservice;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+
+import net.gotev.uploadservice.network.NetworkState;
+
+import java.util.Calendar;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Conditions which have to be met to start an upload. Uploads whose constraints are not met
+ * stay in the queue, without taking a worker thread, and start as soon as the conditions
+ * change. Network constraints are checked also while the upload is running: if they are not
+ * met anymore, the upload is put back in the queue and it continues when they're met again.
+ * The off-peak window is checked only when the upload starts.
+ * <p>
+ * Set them with {@link UploadRequest#setConstraints(UploadConstraints)}.
+ *
+ * @author Aleksandar Gotev
+ */
+public final class UploadConstraints implements Parcelable {
+
+    private static final int MINUTES_IN_A_DAY = 24 * 60;
+
+    private boolean unmeteredOnly = false;
+    private boolean notRoaming = false;
+    private int minBandwidthKbps = 0;
+    private int offPeakStartMinute = -1;
+    private int offPeakEndMinute = -1;
+
+    public UploadConstraints() {
+
+    }
+
+    /**
+     * Starts the upload only on networks for which the user is not charged, like Wi-Fi.
+     *
+     * @param unmeteredOnly true to upload only on unmetered networks
+     * @return {@link UploadConstraints}
+     */
+    public UploadConstraints setUnmeteredOnly(boolean unmeteredOnly) {
+        this.unmeteredOnly = unmeteredOnly;
+        return this;
+    }
+
+    /**
+     * Starts the upload only if the device is not roaming.
+     *
+     * @param notRoaming true to not upload while roaming
+     * @return {@link UploadConstraints}
+     */
+    public UploadConstraints setNotRoaming(boolean notRoaming) {
+        this.notRoaming = notRoaming;
+        return this;
+    }
+
+    /**
+     * Starts the upload only if the upload bandwidth estimated by the system is at least the
+     * given one. The constraint is considered met if the system doesn't provide an estimate,
+     * like on devices older than Android 7.0.
+     *
+     * @param minBandwidthKbps minimum bandwidth in Kbps. 0 means no minimum
+     * @return {@link UploadConstraints}
+     */
+    public UploadConstraints setMinBandwidthKbps(int minBandwidthKbps) {
+        if (minBandwidthKbps < 0)
+            throw new IllegalArgumentException("minBandwidthKbps must be 0 or greater");
+
+        this.minBandwidthKbps = minBandwidthKbps;
+        return this;
+    }
+
+    /**
+     * Starts the upload only in the given time window, in the local time of the device.
+     * The window can span midnight, for example from 23:00 to 6:00.
+     *
+     * @param startHour hour in which the window starts (0-23)
+     * @param startMinute minute in which the window starts (0-59)
+     * @param endHour hour in which the window ends (0-23)
+     * @param endMinute minute in which the window ends (0-59)
+     * @return {@link UploadConstraints}
+     */
+    public UploadConstraints setOffPeakWindow(int startHour, int startMinute,
+                                              int endHour, int endMinute) {
+        if (startHour < 0 || startHour > 23 || endHour < 0 || endHour > 23
+                || startMinute < 0 || startMinute > 59 || endMinute < 0 || endMinute > 59)
+            throw new IllegalArgumentException("Invalid off-peak window");
+
+        offPeakStartMinute = startHour * 60 + startMinute;
+        offPeakEndMinute = endHour * 60 + endMinute;
+
+        if (offPeakStartMinute == offPeakEndMinute)
+            throw new IllegalArgumentException("The off-peak window must not be empty");
+
+        return this;
+    }
+
+    public boolean isUnmeteredOnly() {
+        return unmeteredOnly;
+    }
+
+    public boolean isNotRoaming() {
+        return notRoaming;
+    }
+
+    public int getMinBandwidthKbps() {
+        return minBandwidthKbps;
+    }
+
+    /**
+     * Checks if the upload can start.
+     *
+     * @param state current network state
+     * @param now current timestamp in milliseconds
+     * @return true if all the constraints are met
+     */
+    boolean isSatisfiedBy(NetworkState state, long now) {
+        return isSatisfiedBy(state) && getTimeUntilOffPeak(now) == 0;
+    }
+
+    /**
+     * Checks if the network constraints are met.
+     *
+     * @param state current network state
+     * @return true if the upload can run on the given network
+     */
+    boolean isSatisfiedBy(NetworkState state) {
+        if (!unmeteredOnly && !notRoaming && minBandwidthKbps == 0)
+            return true;
+
+        if (!state.isConnected())
+            return false;
+
+        if (unmeteredOnly && !state.isUnmetered())
+            return false;
+
+        if (notRoaming && state.isRoaming())
+            return false;
+
+        int bandwidth = state.getUpstreamBandwidthKbps();
+        return minBandwidthKbps == 0 || bandwidth == 0 || bandwidth >= minBandwidthKbps;
+    }
+
+    /**
+     * Gets how long to wait for the off-peak window to start.
+     *
+     * @param now current timestamp in milliseconds
+     * @return milliseconds to wait, or 0 if there's no window or the window is open
+     */
+    long getTimeUntilOffPeak(long now) {
+        if (offPeakStartMinute < 0)
+            return 0;
+
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(now);
+        int minute = calendar.get(Calendar.HOUR_OF_DAY) * 60 + calendar.get(Calendar.MINUTE);
+
+        boolean open = offPeakStartMinute < offPeakEndMinute
+                ? minute >= offPeakStartMinute && minute < offPeakEndMinute
+                : minute >= offPeakStartMinute || minute < offPeakEndMinute;
+
+        if (open)
+            return 0;
+
+        int minutesToWait = (offPeakStartMinute - minute + MINUTES_IN_A_DAY) % MINUTES_IN_A_DAY;
+
+        // the window opens at the start of its first minute
+        return TimeUnit.MINUTES.toMillis(minutesToWait)
+                - TimeUnit.SECONDS.toMillis(calendar.get(Calendar.SECOND))
+                - calendar.get(Calendar.MILLISECOND);
+    }
+
+    // This is used to regenerate the object.
+    // All Parcelables must have a CREATOR that implements these two methods
+    public static final Parcelable.Creator<UploadConstraints> CREATOR =
+            new Parcelable.Creator<UploadConstraints>() {
+                @Override
+                public UploadConstraints createFromParcel(final Parcel in) {
+                    return new UploadConstraints(in);
+                }
+
+                @Override
+                public UploadConstraints[] newArray(final int size) {
+                    return new UploadConstraints[size];
+                }
+            };
+
+    @Override
+    public void writeToParcel(Parcel parcel, int arg1) {
+        parcel.writeByte((byte) (unmeteredOnly ? 1 : 0));
+        parcel.writeByte((byte) (notRoaming ? 1 : 0));
+        parcel.writeInt(minBandwidthKbps);
+        parcel.writeInt(offPeakStartMinute);
+        parcel.writeInt(offPeakEndMinute);
+    }
+
+    private UploadConstraints(Parcel in) {
+        unmeteredOnly = in.readByte() == 1;
+        notRoaming = in.readByte() == 1;
+        minBandwidthKbps = in.readInt();
+        offPeakStartMinute = in.readInt();
+        offPeakEndMinute = in.readInt();
+    }
+
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+}
@@ -7,9 +7,14 @@ import android.os.Parcelable;
 import net.gotev.uploadservice.schemehandlers.SchemeHandler;
 import net.gotev.uploadservice.schemehandlers.SchemeHandlerFactory;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.Charset;
 import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * Represents a file to upload.
@@ -66,6 +71,20 @@ public class UploadFile implements Parcelable {
     }
 
 
+    /**
+     * Property keys used by the built-in tasks, which are written in parcels as their index.
+     * Only append new keys at the end, as pending upload intents may contain the indexes.
+     */
+    private static final String[] KNOWN_PROPERTY_KEYS = {
+            MultipartUploadTask.PROPERTY_PARAM_NAME,
+            MultipartUploadTask.PROPERTY_REMOTE_FILE_NAME,
+            MultipartUploadTask.PROPERTY_CONTENT_TYPE,
+            BatchUploadTask.PROPERTY_CONTENT_ID,
+            BatchUploadTask.PROPERTY_CONTENT_TYPE
+    };
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
     protected final String path;
     private final String parameterName;
     private String fileName;
@@ -95,11 +114,7 @@ public class UploadFile implements Parcelable {
         this.fileName = builder.fileName;
         this.contentType = builder.contentType;
 
-        try {
-            this.handler = SchemeHandlerFactory.getInstance().get(path);
-        } catch (Exception exc) {
-            throw new RuntimeException(exc);
-        }
+        this.handler = SchemeHandlerFactory.getInstance().get(path);
     }
 
     /**
@@ -195,24 +210,119 @@ public class UploadFile implements Parcelable {
         parcel.writeString(parameterName != null ? parameterName : "");
         parcel.writeString(fileName != null ? fileName : "");
         parcel.writeString(contentType != null ? contentType : "");
-        parcel.writeSerializable(properties);
+
+        // properties are written as key index or key string followed by the value,
+        // which is much more compact than a serialized map
+        parcel.writeInt(properties.size());
+        for (Map.Entry<String, String> property : properties.entrySet()) {
+            int keyIndex = getKnownPropertyKeyIndex(property.getKey());
+            parcel.writeInt(keyIndex);
+            if (keyIndex < 0) {
+                parcel.writeString(property.getKey());
+            }
+            parcel.writeString(property.getValue());
+        }
     }
 
-    @SuppressWarnings("unchecked")
     private UploadFile(Parcel in) {
         this.path = in.readString();
         this.parameterName = in.readString();
         this.fileName = in.readString();
         this.contentType = in.readString();
-        this.properties = (LinkedHashMap<String, String>) in.readSerializable();
 
-        try {
-            this.handler = SchemeHandlerFactory.getInstance().get(path);
-        } catch (Exception exc) {
-            throw new RuntimeException(exc);
+        int propertiesCount = in.readInt();
+        for (int i = 0; i < propertiesCount; i++) {
+            int keyIndex = in.readInt();
+            String key = keyIndex < 0 ? in.readString() : KNOWN_PROPERTY_KEYS[keyIndex];
+            properties.put(key, in.readString());
+        }
+
+        this.handler = SchemeHandlerFactory.getInstance().get(path);
+    }
+
+    /**
+     * Writes the file in the same format used for parcels, for the file lists kept out of the
+     * intents by {@link FileListStore}.
+     *
+     * @param out stream to write to
+     * @throws IOException if an I/O error occurs
+     */
+    void writeTo(DataOutputStream out) throws IOException {
+        writeString(out, path);
+        writeString(out, parameterName != null ? parameterName : "");
+        writeString(out, fileName != null ? fileName : "");
+        writeString(out, contentType != null ? contentType : "");
+
+        out.writeInt(properties.size());
+        for (Map.Entry<String, String> property : properties.entrySet()) {
+            int keyIndex = getKnownPropertyKeyIndex(property.getKey());
+            out.writeInt(keyIndex);
+            if (keyIndex < 0) {
+                writeString(out, property.getKey());
+            }
+            writeString(out, property.getValue());
         }
     }
 
+    /**
+     * Reads a file written with {@link #writeTo(DataOutputStream)}.
+     *
+     * @param in stream to read from
+     * @return file
+     * @throws IOException if an I/O error occurs
+     */
+    static UploadFile readFrom(DataInputStream in) throws IOException {
+        return new UploadFile(in);
+    }
+
+    private UploadFile(DataInputStream in) throws IOException {
+        this.path = readString(in);
+        this.parameterName = readString(in);
+        this.fileName = readString(in);
+        this.contentType = readString(in);
+
+        int propertiesCount = in.readInt();
+        for (int i = 0; i < propertiesCount; i++) {
+            int keyIndex = in.readInt();
+            String key = keyIndex < 0 ? readString(in) : KNOWN_PROPERTY_KEYS[keyIndex];
+            properties.put(key, readString(in));
+        }
+
+        this.handler = SchemeHandlerFactory.getInstance().get(path);
+    }
+
+    // strings are written as their UTF-8 length, or -1 if null, followed by the bytes, as
+    // writeUTF is limited to 64KB and property values may be longer
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+
+        byte[] bytes = value.getBytes(UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0)
+            return null;
+
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    private static int getKnownPropertyKeyIndex(String key) {
+        for (int i = 0; i < KNOWN_PROPERTY_KEYS.length; i++) {
+            if (KNOWN_PROPERTY_KEYS[i].equals(key))
+                return i;
+        }
+
+        return -1;
+    }
+
     /**
      * Sets a property for this file.
      * If you want to store objects, serialize them in JSON strings.
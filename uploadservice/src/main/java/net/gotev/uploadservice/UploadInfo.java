@@ -6,7 +6,9 @@ import androidx.annotation.Nullable;
 
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Contains upload information and statistics.
@@ -24,6 +26,7 @@ public class UploadInfo implements Parcelable {
     private Integer notificationID;
     private ArrayList<String> filesLeft = new ArrayList<>();
     private ArrayList<String> successfullyUploadedFiles = new ArrayList<>();
+    private LinkedHashMap<String, String> contentDigests = new LinkedHashMap<>();
 
     public UploadInfo(String uploadId) {
         this.uploadId = uploadId;
@@ -78,6 +81,8 @@ public class UploadInfo implements Parcelable {
         parcel.writeInt(notificationID == null ? -1 : notificationID);
         parcel.writeStringList(filesLeft);
         parcel.writeStringList(successfullyUploadedFiles);
+        parcel.writeStringList(new ArrayList<>(contentDigests.keySet()));
+        parcel.writeStringList(new ArrayList<>(contentDigests.values()));
     }
 
     private UploadInfo(Parcel in) {
@@ -95,6 +100,14 @@ public class UploadInfo implements Parcelable {
 
         in.readStringList(filesLeft);
         in.readStringList(successfullyUploadedFiles);
+
+        ArrayList<String> digestPaths = new ArrayList<>();
+        ArrayList<String> digestValues = new ArrayList<>();
+        in.readStringList(digestPaths);
+        in.readStringList(digestValues);
+        for (int i = 0; i < digestPaths.size(); i++) {
+            contentDigests.put(digestPaths.get(i), digestValues.get(i));
+        }
     }
 
     @Override
@@ -216,7 +229,7 @@ public class UploadInfo implements Parcelable {
     /**
      * Gets upload task's total bytes.
      *
-     * @return long value
+     * @return long value, or -1 if the body length is not known in advance
      */
     public long getTotalBytes() {
         return totalBytes;
@@ -228,7 +241,7 @@ public class UploadInfo implements Parcelable {
      * @return integer value
      */
     public int getProgressPercent() {
-        if (totalBytes == 0)
+        if (totalBytes <= 0)
             return 0;
 
         return (int) (uploadedBytes * 100 / totalBytes);
@@ -267,6 +280,52 @@ public class UploadInfo implements Parcelable {
         notificationID = id;
     }
 
+    /**
+     * Gets the Base64 encoded content digest of an uploaded file.
+     * Digests are computed only if enabled in the upload request.
+     *
+     * @param filePath path of the file
+     * @return digest or null if it has not been computed for the given file
+     */
+    @Nullable
+    public String getContentDigest(String filePath) {
+        return contentDigests.get(filePath);
+    }
+
+    /**
+     * Gets the Base64 encoded content digests of all the files uploaded so far.
+     *
+     * @return map containing the digests (key = file path, value = digest)
+     */
+    public LinkedHashMap<String, String> getContentDigests() {
+        return contentDigests;
+    }
+
+    protected UploadInfo setContentDigests(Map<String, String> digests) {
+        if (digests != null && !digests.isEmpty()) {
+            contentDigests.putAll(digests);
+        }
+        return this;
+    }
+
+    /**
+     * Creates a copy of this object without the lists of the uploaded files and of the files
+     * left, which can be long and are not always needed by the broadcast receivers.
+     *
+     * @return copy of the upload info
+     */
+    UploadInfo withoutFileLists() {
+        UploadInfo info = new UploadInfo(uploadId);
+        info.startTime = startTime;
+        info.currentTime = currentTime;
+        info.uploadedBytes = uploadedBytes;
+        info.totalBytes = totalBytes;
+        info.numberOfRetries = numberOfRetries;
+        info.notificationID = notificationID;
+        info.contentDigests = contentDigests;
+        return info;
+    }
+
     @Nullable
     public String getCurrentFilePath() {
         if (!filesLeft.isEmpty()) {
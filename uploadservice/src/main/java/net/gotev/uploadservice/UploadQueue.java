@@ -0,0 +1,617 @@
+package net.gotev.uploadservice;
+
+import net.gotev.uploadservice.network.NetworkState;
+import net.gotev.uploadservice.scheduling.FifoPolicy;
+import net.gotev.uploadservice.scheduling.SchedulingPolicy;
+
+import java.util.AbstractList;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Uploads waiting for a free worker thread. Uploads with higher priority come first, and
+ * uploads with the same priority are started in the order decided by the
+ * {@link SchedulingPolicy}. Uploads with the same serial key are started one at a time, in
+ * arrival order, and uploads with dependencies start when the uploads they depend on are done.
+ * Dependencies are resolved when an upload is added, so they can only refer to uploads added
+ * before it, and they can never form a cycle.
+ * Uploads whose {@link UploadConstraints} are not met are parked until they are.
+ * <p>
+ * Only the uploads which can start are kept in the ready lists, one for each priority, so
+ * polling never scans the uploads which are waiting for their serial key, their dependencies
+ * or their constraints. The policies see the ready lists as they are, without copies, and with
+ * the {@link FifoPolicy} the first upload is taken in constant time.
+ * Reading the queued uploads never blocks the worker threads.
+ * Cancelled uploads are left where they are and skipped when they are reached.
+ *
+ * @author Aleksandar Gotev
+ */
+final class UploadQueue {
+
+    // guards everything but the uploads map
+    private final Object lock = new Object();
+    private long sequence = 0;
+
+    // uploads which can start, by descending priority, each list sorted by arrival order
+    private final TreeMap<Integer, ReadyList> ready =
+            new TreeMap<>(Collections.<Integer>reverseOrder());
+
+    // uploads whose constraints were not met when they were reached, in arrival order
+    private final List<QueuedUpload> parked = new ArrayList<>();
+
+    // network state for which the parked uploads have been checked, and when at the latest
+    // they have to be checked again, because an off-peak window opens
+    private NetworkState parkedNetworkState;
+    private long parkedUntil = Long.MAX_VALUE;
+
+    // upload which holds each serial key: the running or paused one, or the next one to start
+    private final Map<String, String> serialKeyOwners = new HashMap<>();
+
+    // uploads waiting for the serial key held by another upload, in arrival order
+    private final Map<String, ArrayDeque<QueuedUpload>> serialKeyWaiting = new HashMap<>();
+
+    // uploads which have been added and whose outcome has not been recorded yet, including
+    // the running and paused ones
+    private final Set<String> unfinished = new HashSet<>();
+
+    // waiting uploads by the ID of the unfinished upload on which they depend
+    private final Map<String, List<QueuedUpload>> dependents = new HashMap<>();
+
+    // uploads which can't start because a dependency failed and their policy doesn't ignore it
+    private final List<QueuedUpload> withFailedDependencies = new ArrayList<>();
+
+    // how many outcomes of finished uploads are remembered, to resolve the dependencies of
+    // the uploads added after them
+    private static final int MAX_REMEMBERED_OUTCOMES = 1000;
+
+    // true if the upload has been successful, for the most recently finished uploads
+    private final Map<String, Boolean> outcomes =
+            new LinkedHashMap<String, Boolean>() {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                    return size() > MAX_REMEMBERED_OUTCOMES;
+                }
+            };
+
+    // queued uploads and uploads whose task is being created, by upload ID
+    private final ConcurrentHashMap<String, QueuedUpload> uploads = new ConcurrentHashMap<>();
+
+    boolean add(QueuedUpload upload) {
+        if (uploads.putIfAbsent(upload.id, upload) != null)
+            return false;
+
+        synchronized (lock) {
+            upload.sequence = ++sequence;
+            unfinished.add(upload.id);
+
+            // a paused or preempted task already satisfied its dependencies when it started
+            if (upload.task == null) {
+                resolveDependencies(upload);
+            }
+
+            if (acquireSerialKey(upload)) {
+                makeReadyIfUnblocked(upload);
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Resolves the dependencies of a new upload against the uploads which are not done yet
+     * and the outcomes of the finished ones. A dependency which is neither of them has never
+     * been added or has been forgotten, so it's handled as a failed one instead of waiting
+     * for it forever. Must be called while holding the lock.
+     */
+    private void resolveDependencies(QueuedUpload upload) {
+        for (String dependency : upload.params.dependencies) {
+            if (unfinished.contains(dependency)) {
+                upload.pendingDependencies.add(dependency);
+
+                List<QueuedUpload> waiting = dependents.get(dependency);
+                if (waiting == null) {
+                    waiting = new ArrayList<>();
+                    dependents.put(dependency, waiting);
+                }
+                waiting.add(upload);
+                continue;
+            }
+
+            Boolean successful = outcomes.get(dependency);
+
+            if (successful == null) {
+                Logger.error(UploadQueue.class.getSimpleName(), "Upload " + upload.id
+                        + " depends on unknown upload " + dependency);
+            }
+
+            if (!Boolean.TRUE.equals(successful)) {
+                dependencyFailed(upload, dependency);
+            }
+        }
+    }
+
+    private void dependencyFailed(QueuedUpload upload, String dependency) {
+        if (upload.failedDependency != null)
+            return;
+
+        upload.failedDependency = dependency;
+
+        if (upload.params.dependencyFailurePolicy != UploadRequest.DEPENDENCY_FAILURE_IGNORE) {
+            withFailedDependencies.add(upload);
+        }
+    }
+
+    /**
+     * Gives the serial key of an upload to it, if no other upload holds it, otherwise makes
+     * the upload wait for it. Must be called while holding the lock.
+     * @return true if the upload holds its serial key or it has none
+     */
+    private boolean acquireSerialKey(QueuedUpload upload) {
+        String key = upload.params.serialKey;
+
+        if (key == null)
+            return true;
+
+        String owner = serialKeyOwners.get(key);
+
+        if (owner == null) {
+            serialKeyOwners.put(key, upload.id);
+            return true;
+        }
+
+        if (owner.equals(upload.id))
+            return true;
+
+        ArrayDeque<QueuedUpload> waiting = serialKeyWaiting.get(key);
+        if (waiting == null) {
+            waiting = new ArrayDeque<>();
+            serialKeyWaiting.put(key, waiting);
+        }
+
+        // a paused or preempted upload has been started already, so it comes first
+        if (upload.task != null) {
+            waiting.addFirst(upload);
+        } else {
+            waiting.addLast(upload);
+        }
+
+        return false;
+    }
+
+    /**
+     * Moves an upload in the ready list of its priority, if it holds its serial key and all
+     * its dependencies are done. Must be called while holding the lock.
+     */
+    private void makeReadyIfUnblocked(QueuedUpload upload) {
+        if (isUnblocked(upload)) {
+            addReady(upload);
+        }
+    }
+
+    /**
+     * Checks if a queued upload holds its serial key and all its dependencies are done.
+     * Must be called while holding the lock.
+     */
+    private boolean isUnblocked(QueuedUpload upload) {
+        if (!upload.isQueued() || !upload.pendingDependencies.isEmpty())
+            return false;
+
+        if (upload.failedDependency != null && upload.params.dependencyFailurePolicy
+                != UploadRequest.DEPENDENCY_FAILURE_IGNORE)
+            return false;
+
+        String key = upload.params.serialKey;
+        return key == null || upload.id.equals(serialKeyOwners.get(key));
+    }
+
+    /**
+     * Adds an upload to the ready list of its priority, keeping the arrival order.
+     * Must be called while holding the lock.
+     */
+    private void addReady(QueuedUpload upload) {
+        ReadyList list = ready.get(upload.params.priority);
+
+        if (list == null) {
+            list = new ReadyList();
+            ready.put(upload.params.priority, list);
+        }
+
+        list.addInOrder(upload);
+    }
+
+    /**
+     * Checks if an upload could start right now if a worker thread was free: it's still
+     * queued, all its dependencies are done, it holds its serial key and its constraints are
+     * met. An upload which can't start must never preempt a running one, which may be the
+     * upload it's waiting for.
+     * @param upload queued upload
+     * @param networkState current network state, to check the upload constraints
+     * @param now current timestamp in milliseconds
+     * @return true if the upload can start
+     */
+    boolean canStartNow(QueuedUpload upload, NetworkState networkState, long now) {
+        synchronized (lock) {
+            if (!isUnblocked(upload))
+                return false;
+        }
+
+        UploadConstraints constraints = upload.params.constraints;
+        return constraints == null || constraints.isSatisfiedBy(networkState, now);
+    }
+
+    /**
+     * Takes the next upload to run and marks it as being materialized. The upload stays in
+     * the queue until it gets removed with {@link #remove(QueuedUpload)}.
+     * @param policy policy which chooses among the uploads with the highest priority
+     * @param networkState current network state, to check the upload constraints
+     * @return queued upload or null if there isn't any upload which can start
+     */
+    QueuedUpload poll(SchedulingPolicy policy, NetworkState networkState) {
+        long now = System.currentTimeMillis();
+
+        synchronized (lock) {
+            if (!networkState.equals(parkedNetworkState) || now >= parkedUntil) {
+                unparkAll();
+                parkedNetworkState = networkState;
+            }
+
+            Iterator<ReadyList> lists = ready.values().iterator();
+
+            while (lists.hasNext()) {
+                ReadyList list = lists.next();
+                QueuedUpload next = pollReady(policy, list, networkState, now);
+
+                if (next != null)
+                    return next;
+
+                lists.remove();
+            }
+
+            return null;
+        }
+    }
+
+    /**
+     * Takes the next upload to run among the ones with the same priority, parking the ones
+     * whose constraints are not met. Must be called while holding the lock.
+     * @return upload or null if the list doesn't contain any upload which can start
+     */
+    private QueuedUpload pollReady(SchedulingPolicy policy, ReadyList list,
+                                   NetworkState networkState, long now) {
+        // the first upload which can start is the one FIFO would select, so the uploads
+        // after it are not checked
+        if (policy.getClass() == FifoPolicy.class) {
+            while (!list.isEmpty()) {
+                QueuedUpload next = list.take(0);
+
+                if (canStart(next, networkState, now) && next.startMaterializing())
+                    return next;
+            }
+
+            return null;
+        }
+
+        while (true) {
+            list.retainStartable(networkState, now);
+
+            if (list.isEmpty())
+                return null;
+
+            int selected = 0;
+
+            if (list.size() > 1) {
+                selected = policy.selectNext(Collections.unmodifiableList(list));
+
+                if (selected < 0 || selected >= list.size()) {
+                    Logger.error(UploadQueue.class.getSimpleName(), "Scheduling policy "
+                            + policy.getClass().getName() + " returned an invalid index: "
+                            + selected + ". Starting the first upload");
+                    selected = 0;
+                }
+            }
+
+            QueuedUpload next = list.take(selected);
+
+            // it may have been cancelled while the policy was deciding
+            if (next.startMaterializing())
+                return next;
+        }
+    }
+
+    /**
+     * Checks if an upload taken from a ready list can start, parking it if its constraints
+     * are not met. Must be called while holding the lock.
+     * @return true if the upload is still queued and its constraints are met
+     */
+    private boolean canStart(QueuedUpload upload, NetworkState networkState, long now) {
+        if (!upload.isQueued())
+            return false;
+
+        UploadConstraints constraints = upload.params.constraints;
+
+        if (constraints != null && !constraints.isSatisfiedBy(networkState, now)) {
+            park(upload, now);
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Parks an upload whose constraints are not met. Must be called while holding the lock.
+     */
+    private void park(QueuedUpload upload, long now) {
+        parked.add(upload);
+
+        long wait = upload.params.constraints.getTimeUntilOffPeak(now);
+        if (wait > 0 && now + wait < parkedUntil) {
+            parkedUntil = now + wait;
+        }
+    }
+
+    /**
+     * Puts the parked uploads back in the ready lists, to check their constraints again.
+     * Must be called while holding the lock.
+     */
+    private void unparkAll() {
+        for (QueuedUpload upload : parked) {
+            if (upload.isQueued()) {
+                addReady(upload);
+            }
+        }
+
+        parked.clear();
+        parkedUntil = Long.MAX_VALUE;
+    }
+
+    /**
+     * Gets how long to wait until the off-peak window of a parked upload opens.
+     * @param now current timestamp in milliseconds
+     * @return milliseconds to wait, or -1 if no upload is waiting for its off-peak window
+     */
+    long getTimeUntilNextOffPeakWindow(long now) {
+        long minimum = -1;
+
+        synchronized (lock) {
+            for (QueuedUpload upload : parked) {
+                if (!upload.isQueued())
+                    continue;
+
+                long wait = upload.params.constraints.getTimeUntilOffPeak(now);
+
+                if (wait > 0 && (minimum < 0 || wait < minimum)) {
+                    minimum = wait;
+                }
+            }
+        }
+
+        return minimum;
+    }
+
+    /**
+     * Releases the serial key of an upload which has been completed, failed or cancelled,
+     * and gives it to the next upload with the same key which is still queued.
+     * @param params parameters of the upload
+     * @return true if the key has been released
+     */
+    boolean releaseSerialKey(UploadTaskParameters params) {
+        String key = params.serialKey;
+
+        if (key == null)
+            return false;
+
+        synchronized (lock) {
+            if (!params.id.equals(serialKeyOwners.get(key)))
+                return false;
+
+            serialKeyOwners.remove(key);
+
+            ArrayDeque<QueuedUpload> waiting = serialKeyWaiting.get(key);
+
+            while (waiting != null && !waiting.isEmpty()) {
+                QueuedUpload next = waiting.pollFirst();
+
+                if (next.isQueued()) {
+                    serialKeyOwners.put(key, next.id);
+                    makeReadyIfUnblocked(next);
+                    break;
+                }
+            }
+
+            if (waiting != null && waiting.isEmpty()) {
+                serialKeyWaiting.remove(key);
+            }
+
+            return true;
+        }
+    }
+
+    /**
+     * Records the outcome of a finished upload, so the uploads which depend on it can start.
+     * @param uploadId ID of the finished upload
+     * @param successful true if the upload has been completed successfully
+     */
+    void recordOutcome(String uploadId, boolean successful) {
+        synchronized (lock) {
+            unfinished.remove(uploadId);
+            outcomes.put(uploadId, successful);
+
+            List<QueuedUpload> waiting = dependents.remove(uploadId);
+            if (waiting == null)
+                return;
+
+            for (QueuedUpload upload : waiting) {
+                upload.pendingDependencies.remove(uploadId);
+
+                if (!successful) {
+                    dependencyFailed(upload, uploadId);
+                }
+
+                makeReadyIfUnblocked(upload);
+            }
+        }
+    }
+
+    /**
+     * Removes from the queue the uploads which can't start anymore, because an upload on which
+     * they depend has failed, and their dependency failure policy doesn't ignore it.
+     * @return removed uploads, already marked as cancelled
+     */
+    List<QueuedUpload> takeUploadsWithFailedDependencies() {
+        List<QueuedUpload> failed = new ArrayList<>();
+
+        synchronized (lock) {
+            for (QueuedUpload upload : withFailedDependencies) {
+                if (upload.cancel() == QueuedUpload.STATE_QUEUED) {
+                    uploads.remove(upload.id, upload);
+                    failed.add(upload);
+                }
+            }
+
+            withFailedDependencies.clear();
+        }
+
+        return failed;
+    }
+
+    /**
+     * Gets the first dependency of an upload which has not been successful or is unknown.
+     * @return ID of the failed dependency, or null if none of them failed
+     */
+    String getFailedDependencyOf(QueuedUpload upload) {
+        synchronized (lock) {
+            return upload.failedDependency;
+        }
+    }
+
+    void remove(QueuedUpload upload) {
+        uploads.remove(upload.id, upload);
+    }
+
+    QueuedUpload get(String uploadId) {
+        return uploads.get(uploadId);
+    }
+
+    boolean contains(String uploadId) {
+        return uploads.containsKey(uploadId);
+    }
+
+    int size() {
+        return uploads.size();
+    }
+
+    boolean isEmpty() {
+        return uploads.isEmpty();
+    }
+
+    /**
+     * Gets a weakly consistent view of the queued uploads, which can be iterated while
+     * uploads get added or removed.
+     * @return queued uploads
+     */
+    Collection<QueuedUpload> getAll() {
+        return uploads.values();
+    }
+
+    Collection<String> getIds() {
+        return uploads.keySet();
+    }
+
+    /**
+     * Uploads of the same priority which can start, sorted by arrival order. The first upload
+     * is taken in constant time, and the scheduling policies see the list without copying it.
+     * Guarded by the lock of the queue.
+     */
+    private final class ReadyList extends AbstractList<QueuedUpload> implements RandomAccess {
+
+        private final ArrayList<QueuedUpload> items = new ArrayList<>();
+
+        // index of the first upload in the items. The ones before it have been taken
+        private int head = 0;
+
+        @Override
+        public QueuedUpload get(int index) {
+            return items.get(head + index);
+        }
+
+        @Override
+        public int size() {
+            return items.size() - head;
+        }
+
+        void addInOrder(QueuedUpload upload) {
+            // uploads usually become ready in arrival order, so the position is found right away
+            int index = items.size();
+            while (index > head && items.get(index - 1).sequence > upload.sequence) {
+                index--;
+            }
+            items.add(index, upload);
+        }
+
+        QueuedUpload take(int index) {
+            if (index > 0)
+                return items.remove(head + index);
+
+            QueuedUpload first = items.get(head);
+            items.set(head++, null);
+
+            // the taken slots are dropped once they are more than the uploads left, so each
+            // upload is moved a constant number of times on average
+            if (head == items.size()) {
+                items.clear();
+                head = 0;
+            } else if (head > items.size() - head) {
+                items.subList(0, head).clear();
+                head = 0;
+            }
+
+            return first;
+        }
+
+        /**
+         * Removes the uploads which have been cancelled and parks the ones whose constraints
+         * are not met, keeping the order of the others.
+         */
+        void retainStartable(NetworkState networkState, long now) {
+            int kept = head;
+
+            for (int i = head; i < items.size(); i++) {
+                QueuedUpload upload = items.get(i);
+
+                if (canStart(upload, networkState, now)) {
+                    items.set(kept++, upload);
+                }
+            }
+
+            items.subList(kept, items.size()).clear();
+        }
+    }
+
+    void clear() {
+        synchronized (lock) {
+            ready.clear();
+            parked.clear();
+            parkedNetworkState = null;
+            parkedUntil = Long.MAX_VALUE;
+            serialKeyOwners.clear();
+            serialKeyWaiting.clear();
+            unfinished.clear();
+            dependents.clear();
+            withFailedDependencies.clear();
+            outcomes.clear();
+        }
+        uploads.clear();
+    }
+}
@@ -5,6 +5,7 @@ import android.content.Intent;
 import android.os.Build;
 import androidx.annotation.Nullable;
 
+import java.io.IOException;
 import java.util.UUID;
 
 /**
@@ -16,6 +17,28 @@ import java.util.UUID;
 public abstract class UploadRequest<B extends UploadRequest<B>> {
     private static final String LOG_TAG = UploadRequest.class.getSimpleName();
 
+    /**
+     * Priority assigned to the upload requests by default.
+     */
+    public static final int PRIORITY_DEFAULT = 0;
+
+    /**
+     * If an upload on which this one depends fails or gets cancelled, this one is cancelled.
+     */
+    public static final int DEPENDENCY_FAILURE_CANCEL = 0;
+
+    /**
+     * If an upload on which this one depends fails or gets cancelled, this one fails with
+     * an error, without being started.
+     */
+    public static final int DEPENDENCY_FAILURE_ERROR = 1;
+
+    /**
+     * This upload starts when the uploads on which it depends are done, no matter if they
+     * have been successful or not.
+     */
+    public static final int DEPENDENCY_FAILURE_IGNORE = 2;
+
     protected final Context context;
     protected final UploadTaskParameters params = new UploadTaskParameters();
     protected UploadStatusDelegate delegate;
@@ -65,17 +88,9 @@ public abstract class UploadRequest<B extends UploadRequest<B>> {
      * generated uploadId
      */
     public String startUpload(@Nullable ServiceParameters serviceParameters) {
-        UploadService.setUploadStatusDelegate(params.id, delegate);
-
-        final Intent intent = new Intent(context, UploadService.class);
-        this.initializeIntent(intent);
-        intent.putExtra(UploadService.PARAM_SERVICE_PARAMETERS, serviceParameters);
-        intent.setAction(UploadService.getActionUpload());
+        final Intent intent = createStartIntent(serviceParameters);
 
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-            if (params.notificationConfig == null) {
-                throw new IllegalArgumentException("Android Oreo requires a notification configuration for the service to run. https://developer.android.com/reference/android/content/Context.html#startForegroundService(android.content.Intent)");
-            }
             context.startForegroundService(intent);
         } else {
             context.startService(intent);
@@ -84,6 +99,48 @@ public abstract class UploadRequest<B extends UploadRequest<B>> {
         return params.id;
     }
 
+    /**
+     * Registers the delegate of this request and creates the intent which starts its upload.
+     *
+     * @param serviceParameters Parameters to configure the UploadService
+     * @return intent to send to the upload service
+     */
+    Intent createStartIntent(@Nullable ServiceParameters serviceParameters) {
+        validate();
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O && params.notificationConfig == null) {
+            throw new IllegalArgumentException("Android Oreo requires a notification configuration for the service to run. https://developer.android.com/reference/android/content/Context.html#startForegroundService(android.content.Intent)");
+        }
+
+        UploadService.setUploadStatusDelegate(params.id, delegate);
+
+        // each intent gets its own list, which the service deletes once read
+        if (params.files.size() > UploadService.MAX_PARCELLED_FILES) {
+            try {
+                params.storedFilesPath = FileListStore.write(context, params.files);
+            } catch (IOException exc) {
+                params.storedFilesPath = null;
+                Logger.error(getClass().getSimpleName(), "Can't keep the files of upload "
+                        + params.id + " out of the intent. Writing them in it", exc);
+            }
+        }
+
+        final Intent intent = new Intent(context, UploadService.class);
+        this.initializeIntent(intent);
+        intent.putExtra(UploadService.PARAM_SERVICE_PARAMETERS, serviceParameters);
+        intent.setAction(UploadService.getActionUpload());
+        return intent;
+    }
+
+    /**
+     * Checks that this request is complete before starting the upload.<br>
+     * Override this method in subclasses to validate your own custom parameters.
+     *
+     * @throws IllegalArgumentException if the request is not valid
+     */
+    protected void validate() throws IllegalArgumentException {
+    }
+
     /**
      * Write any upload request data to the intent used to start the upload service.<br>
      * Override this method in subclasses to add your own custom parameters to the upload task.
@@ -93,10 +150,15 @@ public abstract class UploadRequest<B extends UploadRequest<B>> {
     protected void initializeIntent(Intent intent) {
         intent.putExtra(UploadService.PARAM_TASK_PARAMETERS, params);
 
-        Class taskClass = getTaskClass();
+        Class<? extends UploadTask> taskClass = getTaskClass();
         if (taskClass == null)
             throw new RuntimeException("The request must specify a task class!");
 
+        String taskType = UploadTaskRegistry.getTypeId(taskClass);
+        if (taskType != null) {
+            intent.putExtra(UploadService.PARAM_TASK_TYPE, taskType);
+        }
+
         intent.putExtra(UploadService.PARAM_TASK_CLASS, taskClass.getName());
     }
 
@@ -144,6 +206,135 @@ public abstract class UploadRequest<B extends UploadRequest<B>> {
         return self();
     }
 
+    /**
+     * Sets the priority of this upload. Queued uploads with a higher priority are started
+     * before the ones with a lower priority, no matter in which order they have been enqueued.
+     * If {@link UploadService#PREEMPTION_ENABLED} is true, a running upload with a lower
+     * priority is also suspended to make room for this one.
+     *
+     * @param priority upload priority. By default it's {@link #PRIORITY_DEFAULT}
+     * @return self instance
+     */
+    public B setPriority(int priority) {
+        params.priority = priority;
+        return self();
+    }
+
+    /**
+     * Sets the time by which this upload should be completed. It's used by
+     * {@link net.gotev.uploadservice.scheduling.EarliestDeadlineFirstPolicy} to decide which
+     * upload to start first.
+     *
+     * @param deadline timestamp in milliseconds, as returned by
+     *                 {@link System#currentTimeMillis()}. 0 means no deadline
+     * @return self instance
+     */
+    public B setDeadline(long deadline) {
+        params.deadline = deadline;
+        return self();
+    }
+
+    /**
+     * Adds an app-defined tag to this upload. The first tag identifies the group of the upload
+     * in {@link net.gotev.uploadservice.scheduling.WeightedFairSharePolicy}.
+     *
+     * @param tag tag to add
+     * @return self instance
+     */
+    public B addTag(String tag) {
+        if (tag == null || tag.isEmpty())
+            throw new IllegalArgumentException("tag must not be null or empty");
+
+        if (!params.tags.contains(tag)) {
+            params.tags.add(tag);
+        }
+        return self();
+    }
+
+    /**
+     * Sets the serial key of this upload. Uploads with the same serial key are executed
+     * strictly one after another, in the order in which they have been enqueued, while uploads
+     * with different keys run concurrently. The next upload with the same key starts as soon as
+     * the previous one completes, fails or gets cancelled. A paused upload holds its key until
+     * it's resumed and completed.
+     *
+     * @param serialKey app-defined key, for example the ID of the document whose revisions
+     *                  are being uploaded. Null to execute the upload independently of the others
+     * @return self instance
+     */
+    public B setSerialKey(String serialKey) {
+        params.serialKey = serialKey;
+        return self();
+    }
+
+    /**
+     * Makes this upload start only after another upload has been completed successfully.
+     * The other upload must be enqueued before this one, or come before it in the same
+     * {@link UploadService#enqueueAll} call. If the service doesn't know it, because it has
+     * never been enqueued or it finished long ago, it's handled as a failed upload.
+     * What happens if the other upload fails is decided by
+     * {@link #setDependencyFailurePolicy(int)}.
+     *
+     * @param uploadId ID of the upload which has to complete first
+     * @return self instance
+     */
+    public B addDependency(String uploadId) {
+        if (uploadId == null || uploadId.isEmpty())
+            throw new IllegalArgumentException("uploadId must not be null or empty");
+
+        if (uploadId.equals(params.id))
+            throw new IllegalArgumentException("An upload can't depend on itself");
+
+        if (!params.dependencies.contains(uploadId)) {
+            params.dependencies.add(uploadId);
+        }
+        return self();
+    }
+
+    /**
+     * Sets what happens to this upload when one of the uploads on which it depends fails or
+     * gets cancelled.
+     *
+     * @param policy one of {@link #DEPENDENCY_FAILURE_CANCEL} (the default),
+     *               {@link #DEPENDENCY_FAILURE_ERROR} or {@link #DEPENDENCY_FAILURE_IGNORE}
+     * @return self instance
+     */
+    public B setDependencyFailurePolicy(int policy) {
+        if (policy < DEPENDENCY_FAILURE_CANCEL || policy > DEPENDENCY_FAILURE_IGNORE)
+            throw new IllegalArgumentException("Invalid dependency failure policy: " + policy);
+
+        params.dependencyFailurePolicy = policy;
+        return self();
+    }
+
+    /**
+     * Sets the conditions which have to be met to start this upload, for example to upload
+     * large files only on Wi-Fi. Until they are met, the upload waits in the queue.
+     *
+     * @param constraints upload constraints, or null to start the upload on any network
+     * @return self instance
+     */
+    public B setConstraints(UploadConstraints constraints) {
+        params.constraints = constraints;
+        return self();
+    }
+
+    /**
+     * Limits the rate at which this upload sends data. The limit set with
+     * {@link UploadService#setMaxUploadRate(long)} applies as well. It can be changed while the
+     * upload is running with {@link UploadService#setMaxUploadRate(String, long)}.
+     *
+     * @param bytesPerSecond maximum upload rate in bytes per second. 0 means unlimited
+     * @return self instance
+     */
+    public B setMaxUploadRate(long bytesPerSecond) {
+        if (bytesPerSecond < 0)
+            throw new IllegalArgumentException("bytesPerSecond must be 0 or greater");
+
+        params.maxUploadRate = bytesPerSecond;
+        return self();
+    }
+
     /**
      * Sets the delegate which will receive the events for this upload request.
      * The events will be sent only to the delegate and not in broadcast. Delegate methods will
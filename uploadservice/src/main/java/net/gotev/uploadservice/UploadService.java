@@ -1,23 +1,34 @@
 package net.gotev.uploadservice;
 
 import android.app.Notification;
+import android.app.NotificationManager;
 import android.app.Service;
 import android.content.Context;
 import android.content.Intent;
 import android.os.Build;
+import android.os.Bundle;
 import android.os.IBinder;
+import android.os.Parcel;
 import android.os.PowerManager;
 import androidx.annotation.Nullable;
+import androidx.core.app.NotificationCompat;
 
 import net.gotev.uploadservice.http.HttpStack;
 import net.gotev.uploadservice.http.impl.HurlStack;
+import net.gotev.uploadservice.network.ConnectivityNetworkMonitor;
+import net.gotev.uploadservice.network.NetworkMonitor;
+import net.gotev.uploadservice.network.NetworkState;
+import net.gotev.uploadservice.scheduling.FifoPolicy;
+import net.gotev.uploadservice.scheduling.SchedulingPolicy;
 
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
 import java.util.concurrent.BlockingQueue;
@@ -25,6 +36,8 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Service to upload files in background using HTTP POST with notification center progress
@@ -46,8 +59,8 @@ public final class UploadService extends Service {
     public static int UPLOAD_POOL_SIZE = Runtime.getRuntime().availableProcessors();
 
     /**
-     * When the number of threads is greater than UPLOAD_POOL_SIZE, this is the maximum time that
-     * excess idle threads will wait for new tasks before terminating.
+     * Maximum time that idle upload threads will wait for new tasks before terminating,
+     * so no threads are kept alive between bursts of uploads.
      */
     public static int KEEP_ALIVE_TIME_IN_SECONDS = 5;
 
@@ -110,6 +123,45 @@ public final class UploadService extends Service {
      * indefinitely.
      */
     public static int MAX_RETRY_WAIT_TIME = 10 * 10 * 1000;
+
+    /**
+     * When a validated network becomes available, the uploads waiting to retry after an error
+     * are retried immediately instead of waiting for their backoff time. To avoid a burst of
+     * connections, each upload retries this amount of milliseconds after the previous one.
+     */
+    public static int NETWORK_RETRY_STAGGER = 500;
+
+    /**
+     * Maximum number of files written in the intent which starts an upload. Requests with
+     * more files keep them in a file of the app and write only its path in the intent, to
+     * keep the intent small and far from the Binder transaction limit.
+     */
+    public static int MAX_PARCELLED_FILES = 100;
+
+    /**
+     * If set to false, the server response body is not included in the broadcasted status
+     * updates, so {@link ServerResponse#getBody()} will be empty in the broadcast receivers.
+     * Set this to false if your receivers don't need the response body, to make the
+     * broadcasts lighter.
+     */
+    public static boolean BROADCAST_RESPONSE_BODY = true;
+
+    /**
+     * If set to false, the lists of uploaded files and of files left are not included in the
+     * broadcasted status updates, so they will be empty in the broadcast receivers.
+     * Set this to false if your receivers don't need them, to make the broadcasts of uploads
+     * with many files lighter.
+     */
+    public static boolean BROADCAST_FILE_LISTS = true;
+
+    /**
+     * If set to true, when an upload is enqueued and all the worker threads are busy, the
+     * running upload with the lowest priority, if lower than the one of the new upload, is
+     * stopped at a safe point and put back in the queue, so the new upload can start
+     * immediately. The preempted upload keeps its progress: files which have been completely
+     * uploaded are not sent again when it restarts. See {@link UploadRequest#setPriority(int)}.
+     */
+    public static boolean PREEMPTION_ENABLED = false;
     // end configurable values
 
     protected static final int UPLOAD_NOTIFICATION_BASE_ID = 1234; // Something unique
@@ -125,7 +177,16 @@ public final class UploadService extends Service {
     private static final String ACTION_UPLOAD_SUFFIX = ".uploadservice.action.upload";
     protected static final String PARAM_TASK_PARAMETERS = "taskParameters";
     protected static final String PARAM_TASK_CLASS = "taskClass";
+    protected static final String PARAM_TASK_TYPE = "taskType";
     protected static final String PARAM_SERVICE_PARAMETERS = "serviceParameters";
+    private static final String PARAM_BATCH = "batch";
+
+    /**
+     * Maximum size in bytes of the upload intents sent with a single command by
+     * {@link #enqueueAll(Context, List, ServiceParameters)}, to stay well below the
+     * Binder transaction limit.
+     */
+    private static final int MAX_BATCH_BYTES = 256 * 1024;
 
     // constants used in broadcast intents
     private static final String BROADCAST_ACTION_SUFFIX = ".uploadservice.broadcast.status";
@@ -135,12 +196,23 @@ public final class UploadService extends Service {
     private PowerManager.WakeLock wakeLock;
     private int notificationIncrementalId = 0;
     private static final Map<String, UploadTask> uploadTasksMap = new ConcurrentHashMap<>();
-    private static final Map<String, UploadTask> completedTasksMap = new ConcurrentHashMap<>();
+    private static final UploadQueue uploadQueue = new UploadQueue();
+    private static final AtomicInteger completedTasks = new AtomicInteger(0);
     private static final Map<String, WeakReference<UploadStatusDelegate>> uploadDelegates = new ConcurrentHashMap<>();
+    private static final Map<String, UploadTask> pausedUploads = new ConcurrentHashMap<>();
+    private static final TagIndex tagIndex = new TagIndex();
     private final BlockingQueue<Runnable> uploadTasksQueue = new LinkedBlockingQueue<>();
-    private static volatile String foregroundUploadId = null;
-    private ThreadPoolExecutor uploadThreadPool;
-    private Timer idleTimer = null;
+    private static final ForegroundState foregroundState = new ForegroundState();
+    private static volatile ThreadPoolExecutor uploadThreadPool;
+    private static volatile int maxConcurrentUploads = 0;
+    private static volatile int defaultUploadPoolSize = UPLOAD_POOL_SIZE;
+    private static volatile SchedulingPolicy schedulingPolicy = new FifoPolicy();
+    @Nullable private static volatile NetworkMonitor customNetworkMonitor;
+    private NetworkMonitor networkMonitor;
+    private volatile boolean networkAvailable = false;
+    private final AtomicReference<Timer> idleTimer = new AtomicReference<>();
+    private Timer offPeakTimer;
+    private long nextOffPeakCheck = 0;
     @Nullable private ServiceParameters serviceParameters = null;
 
     protected static String getActionUpload() {
@@ -151,12 +223,90 @@ public final class UploadService extends Service {
         return NAMESPACE + BROADCAST_ACTION_SUFFIX;
     }
 
+    /**
+     * Starts many upload requests with as few commands to the service as possible, instead of
+     * sending a command for each one of them. The requests are grouped in commands of at most
+     * {@link #MAX_BATCH_BYTES} bytes, and every request gets its own copy of the parameters,
+     * like when it's started on its own.
+     *
+     * @param context application context
+     * @param requests upload requests to start
+     * @param serviceParameters Parameters to configure the UploadService
+     * @return list with the uploadId of each request, in the same order
+     */
+    public static List<String> enqueueAll(final Context context,
+                                          final List<? extends UploadRequest<?>> requests,
+                                          @Nullable final ServiceParameters serviceParameters) {
+        List<String> uploadIds = new ArrayList<>(requests.size());
+
+        if (requests.isEmpty())
+            return uploadIds;
+
+        ArrayList<Intent> batch = new ArrayList<>();
+        int batchBytes = 0;
+
+        for (UploadRequest<?> request : requests) {
+            Intent uploadIntent = request.createStartIntent(serviceParameters);
+            int intentBytes = getParcelledSize(uploadIntent);
+
+            if (!batch.isEmpty() && batchBytes + intentBytes > MAX_BATCH_BYTES) {
+                startBatch(context, batch, serviceParameters);
+                batch = new ArrayList<>();
+                batchBytes = 0;
+            }
+
+            batch.add(uploadIntent);
+            batchBytes += intentBytes;
+            uploadIds.add(request.params.id);
+        }
+
+        startBatch(context, batch, serviceParameters);
+
+        return uploadIds;
+    }
+
+    private static int getParcelledSize(Intent intent) {
+        Parcel parcel = Parcel.obtain();
+
+        try {
+            intent.writeToParcel(parcel, 0);
+            return parcel.dataSize();
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    private static void startBatch(final Context context, final ArrayList<Intent> batch,
+                                   @Nullable final ServiceParameters serviceParameters) {
+        final Intent intent = new Intent(context, UploadService.class);
+        intent.putParcelableArrayListExtra(PARAM_BATCH, batch);
+        intent.putExtra(PARAM_SERVICE_PARAMETERS, serviceParameters);
+        intent.setAction(getActionUpload());
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            context.startForegroundService(intent);
+        } else {
+            context.startService(intent);
+        }
+    }
+
     /**
      * Stops the upload task with the given uploadId.
      *
      * @param uploadId The unique upload id
      */
-    public static synchronized void stopUpload(final String uploadId) {
+    public static void stopUpload(final String uploadId) {
+        QueuedUpload queued = uploadQueue.get(uploadId);
+
+        if (queued != null && cancelQueuedUpload(queued))
+            return;
+
+        UploadTask pausedTask = pausedUploads.remove(uploadId);
+        if (pausedTask != null) {
+            cancelPausedUpload(pausedTask);
+            return;
+        }
+
         UploadTask removedTask = uploadTasksMap.get(uploadId);
         if (removedTask != null) {
             removedTask.cancel();
@@ -164,37 +314,365 @@ public final class UploadService extends Service {
     }
 
     /**
-     * Gets the list of the currently active upload tasks.
+     * Sets the policy which decides the order in which the queued uploads are started, among
+     * the ones with the same priority. The new policy is used from the next upload which starts.
+     * The library provides policies for first-in first-out order (the default), shortest job
+     * first, earliest deadline first and weighted fair share among groups of uploads, in the
+     * {@link net.gotev.uploadservice.scheduling} package.
      *
-     * @return list of uploadIDs or an empty list if no tasks are currently running
+     * @param policy scheduling policy. If null, uploads are started in the order in which
+     *               they have been enqueued
      */
-    public static synchronized List<String> getTaskList() {
-        List<String> tasks;
+    public static void setSchedulingPolicy(@Nullable SchedulingPolicy policy) {
+        schedulingPolicy = policy != null ? policy : new FifoPolicy();
+    }
 
-        if (uploadTasksMap.isEmpty()) {
-            tasks = new ArrayList<>(1);
-        } else {
-            tasks = new ArrayList<>(uploadTasksMap.size());
-            tasks.addAll(uploadTasksMap.keySet());
+    /**
+     * Sets the monitor used to observe the network, to start the uploads whose
+     * {@link UploadConstraints} are met. It's used from the next time the service is created.
+     *
+     * @param monitor network monitor. If null, {@link ConnectivityNetworkMonitor} is used
+     */
+    public static void setNetworkMonitor(@Nullable NetworkMonitor monitor) {
+        customNetworkMonitor = monitor;
+    }
+
+    /**
+     * Limits the total upload rate of all the uploads. It can be changed at any time, and
+     * running uploads adapt to the new limit without being restarted.
+     *
+     * @param bytesPerSecond maximum upload rate in bytes per second. 0 means unlimited
+     */
+    public static void setMaxUploadRate(long bytesPerSecond) {
+        if (bytesPerSecond < 0)
+            throw new IllegalArgumentException("bytesPerSecond must be 0 or greater");
+
+        BandwidthLimiter.getInstance().setMaxRate(bytesPerSecond);
+    }
+
+    /**
+     * Sets the total upload rate limit to use while the app is active, to leave bandwidth to
+     * the app itself, for example to play a video or to make a call. It's applied when the
+     * app calls {@link #setForegroundAppActive(boolean)}, and it can only lower the limit set
+     * with {@link #setMaxUploadRate(long)}.
+     *
+     * @param bytesPerSecond maximum upload rate in bytes per second. 0 means unlimited
+     */
+    public static void setForegroundMaxUploadRate(long bytesPerSecond) {
+        if (bytesPerSecond < 0)
+            throw new IllegalArgumentException("bytesPerSecond must be 0 or greater");
+
+        BandwidthLimiter.getInstance().setForegroundMaxRate(bytesPerSecond);
+    }
+
+    /**
+     * Tells if the app is active, to apply the limit set with
+     * {@link #setForegroundMaxUploadRate(long)}. Call it for example when your player starts
+     * and stops, or from your activities' {@code onStart} and {@code onStop}.
+     *
+     * @param active true if the app is active
+     */
+    public static void setForegroundAppActive(boolean active) {
+        BandwidthLimiter.getInstance().setForegroundAppActive(active);
+    }
+
+    /**
+     * Changes the upload rate limit of an upload, set with
+     * {@link UploadRequest#setMaxUploadRate(long)}. Running uploads adapt to the new limit
+     * without being restarted.
+     *
+     * @param uploadId The unique upload id
+     * @param bytesPerSecond maximum upload rate in bytes per second. 0 means unlimited
+     * @return true if the limit has been changed, false if the upload is not active
+     */
+    public static boolean setMaxUploadRate(final String uploadId, long bytesPerSecond) {
+        if (bytesPerSecond < 0)
+            throw new IllegalArgumentException("bytesPerSecond must be 0 or greater");
+
+        UploadTask task = uploadTasksMap.get(uploadId);
+        if (task == null) {
+            task = pausedUploads.get(uploadId);
+        }
+
+        if (task != null) {
+            task.setMaxUploadRate(bytesPerSecond);
+            return true;
         }
 
-        return tasks;
+        // applied by the dispatcher when the task gets created
+        QueuedUpload queued = uploadQueue.get(uploadId);
+        if (queued != null) {
+            queued.params.maxUploadRate = bytesPerSecond;
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Pauses a running upload, freeing its worker thread. Its progress is kept, so when it's
+     * resumed with {@link #resumeUpload(String)}, the files which have been completely uploaded
+     * are not sent again and, where the protocol allows it, the partially uploaded file
+     * continues from where it was interrupted.
+     * <p>
+     * When the upload has been paused, a {@link BroadcastData.Status#PAUSED} event is sent.
+     * Paused uploads are kept until they are resumed or cancelled, or the service is stopped.
+     *
+     * @param uploadId The unique upload id
+     * @return true if the upload is getting paused, false if it's not running
+     */
+    public static boolean pauseUpload(final String uploadId) {
+        UploadTask task = uploadTasksMap.get(uploadId);
+
+        if (task == null)
+            return false;
+
+        task.pause();
+        return true;
+    }
+
+    /**
+     * Resumes an upload paused with {@link #pauseUpload(String)}. The upload is put back in the
+     * queue and it restarts as soon as a worker thread is free.
+     *
+     * @param uploadId The unique upload id
+     * @return true if the upload is getting resumed, false if it's not paused
+     */
+    public static boolean resumeUpload(final String uploadId) {
+        ThreadPoolExecutor pool = uploadThreadPool;
+        UploadTask task = pool != null ? pausedUploads.remove(uploadId) : null;
+
+        if (task == null)
+            return false;
+
+        Logger.debug(TAG, "Resuming upload with ID: " + uploadId);
+
+        task.resume();
+        uploadQueue.add(new QueuedUpload(task));
+        pool.execute(task.service.queueDispatcher);
+        return true;
+    }
+
+    /**
+     * Gets the current state of an upload, read directly from its task, without waiting for
+     * the next status broadcast. Use this to show the state of the uploads as soon as a screen
+     * is opened.
+     *
+     * @param uploadId The unique upload id
+     * @return snapshot, or null if the upload is not active
+     */
+    @Nullable
+    public static UploadSnapshot getUploadSnapshot(final String uploadId) {
+        UploadTask task = uploadTasksMap.get(uploadId);
+        if (task != null)
+            return task.getSnapshot(UploadSnapshot.State.RUNNING);
+
+        task = pausedUploads.get(uploadId);
+        if (task != null)
+            return task.getSnapshot(UploadSnapshot.State.PAUSED);
+
+        QueuedUpload queued = uploadQueue.get(uploadId);
+        if (queued != null) {
+            // a resumed, preempted or parked upload keeps its progress
+            return queued.task != null ? queued.task.getSnapshot(UploadSnapshot.State.QUEUED)
+                    : new UploadSnapshot(uploadId, UploadSnapshot.State.QUEUED, 0, 0, 0, 0, 0,
+                    queued.params.files.size());
+        }
+
+        return null;
+    }
+
+    /**
+     * Gets the current state of all the active uploads. See {@link #getUploadSnapshot(String)}.
+     *
+     * @return list of snapshots, or an empty list if there aren't active uploads
+     */
+    public static List<UploadSnapshot> getAllSnapshots() {
+        List<String> uploadIds = getTaskList();
+        List<UploadSnapshot> snapshots = new ArrayList<>(uploadIds.size());
+
+        for (String uploadId : uploadIds) {
+            UploadSnapshot snapshot = getUploadSnapshot(uploadId);
+
+            // the upload may have been completed meanwhile
+            if (snapshot != null) {
+                snapshots.add(snapshot);
+            }
+        }
+
+        return snapshots;
+    }
+
+    /**
+     * Gets the active uploads with the given tag, including the queued and paused ones.
+     *
+     * @param tag tag set with {@link UploadRequest#addTag(String)}
+     * @return list of uploadIDs or an empty list if there aren't active uploads with the tag
+     */
+    public static List<String> getUploadsByTag(final String tag) {
+        TagIndex.Entry entry = tagIndex.get(tag);
+
+        if (entry == null)
+            return new ArrayList<>();
+
+        return new ArrayList<>(entry.uploadIds);
+    }
+
+    /**
+     * Stops all the active uploads with the given tag.
+     *
+     * @param tag tag set with {@link UploadRequest#addTag(String)}
+     */
+    public static void stopUploadsByTag(final String tag) {
+        for (String uploadId : getUploadsByTag(tag)) {
+            stopUpload(uploadId);
+        }
+    }
+
+    /**
+     * Pauses all the running uploads with the given tag. See {@link #pauseUpload(String)}.
+     *
+     * @param tag tag set with {@link UploadRequest#addTag(String)}
+     */
+    public static void pauseUploadsByTag(final String tag) {
+        for (String uploadId : getUploadsByTag(tag)) {
+            pauseUpload(uploadId);
+        }
+    }
+
+    /**
+     * Resumes all the paused uploads with the given tag. See {@link #resumeUpload(String)}.
+     *
+     * @param tag tag set with {@link UploadRequest#addTag(String)}
+     */
+    public static void resumeUploadsByTag(final String tag) {
+        for (String uploadId : getUploadsByTag(tag)) {
+            resumeUpload(uploadId);
+        }
+    }
+
+    /**
+     * Gets the aggregate progress of the uploads with the given tag. The same information is
+     * broadcasted with {@link UploadServiceBroadcastReceiver#onTagProgress}.
+     *
+     * @param tag tag set with {@link UploadRequest#addTag(String)}
+     * @return aggregate progress, or null if there aren't active uploads with the tag
+     */
+    @Nullable
+    public static TagProgress getTagProgress(final String tag) {
+        TagIndex.Entry entry = tagIndex.get(tag);
+        return entry == null ? null : getTagProgress(entry);
+    }
+
+    private static TagProgress getTagProgress(TagIndex.Entry entry) {
+        long uploadedBytes = entry.finishedUploadedBytes;
+        long totalBytes = entry.finishedTotalBytes;
+
+        for (String uploadId : entry.uploadIds) {
+            UploadTask task = uploadTasksMap.get(uploadId);
+            if (task == null) {
+                task = pausedUploads.get(uploadId);
+            }
+
+            if (task != null) {
+                long taskUploadedBytes = task.uploadedBytes;
+                long taskTotalBytes = task.totalBytes;
+
+                // uploads whose length is not known in advance count for what they've sent
+                uploadedBytes += taskUploadedBytes;
+                totalBytes += taskTotalBytes >= 0 ? taskTotalBytes : taskUploadedBytes;
+                continue;
+            }
+
+            // queued uploads have not sent anything yet, but their size is part of the total
+            QueuedUpload queued = uploadQueue.get(uploadId);
+            if (queued != null) {
+                long queuedTotalBytes = queued.getTotalBytes();
+
+                if (queuedTotalBytes > 0) {
+                    totalBytes += queuedTotalBytes;
+                }
+            }
+        }
+
+        return new TagProgress(entry.tag, entry.uploadIds.size(), entry.completedUploads,
+                entry.failedUploads, uploadedBytes, totalBytes, entry.startTime);
+    }
+
+    /**
+     * Called by the tasks when their progress changes, to broadcast the aggregate progress
+     * of their tags. Events are throttled for each tag, so a single event is sent for all
+     * the uploads with the same tag.
+     *
+     * @param params parameters of the task
+     */
+    protected void tagProgressChanged(UploadTaskParameters params) {
+        long now = System.currentTimeMillis();
+
+        for (String tag : params.tags) {
+            TagIndex.Entry entry = tagIndex.get(tag);
+
+            if (entry == null)
+                continue;
+
+            long lastEventTime = entry.lastEventTime.get();
+
+            if (now < lastEventTime + PROGRESS_REPORT_INTERVAL
+                    || !entry.lastEventTime.compareAndSet(lastEventTime, now))
+                continue;
+
+            broadcastTagProgress(getTagProgress(entry));
+        }
+    }
+
+    private void broadcastTagProgress(TagProgress progress) {
+        sendBroadcast(new BroadcastData()
+                .setStatus(BroadcastData.Status.TAG_PROGRESS)
+                .setTagProgress(progress)
+                .getIntent());
+    }
+
+    /**
+     * Gets the list of the currently active upload tasks, including the ones waiting to be
+     * executed and the paused ones.
+     *
+     * @return list of uploadIDs or an empty list if no tasks are currently running or queued
+     */
+    public static List<String> getTaskList() {
+        // snapshot of the registry, taken without blocking the worker threads. An upload
+        // which is just starting may be seen in both maps, so duplicates are removed
+        Set<String> tasks = new LinkedHashSet<>(uploadQueue.getIds());
+        tasks.addAll(uploadTasksMap.keySet());
+        tasks.addAll(pausedUploads.keySet());
+
+        return new ArrayList<>(tasks);
     }
 
     /**
      * Stop all the active uploads.
      */
-    public static synchronized void stopAllUploads() {
+    public static void stopAllUploads() {
+        for (QueuedUpload queued : uploadQueue.getAll()) {
+            cancelQueuedUpload(queued);
+        }
+
+        for (String uploadId : pausedUploads.keySet()) {
+            UploadTask pausedTask = pausedUploads.remove(uploadId);
+            if (pausedTask != null) {
+                cancelPausedUpload(pausedTask);
+            }
+        }
+
         if (uploadTasksMap.isEmpty()) {
             return;
         }
 
-        // using iterator instead for each loop, because it's faster on Android
-        Iterator<String> iterator = uploadTasksMap.keySet().iterator();
+        // using iterator instead for each loop, because it's faster on Android.
+        // Iterating the values, tasks completed meanwhile are never seen as null
+        Iterator<UploadTask> iterator = uploadTasksMap.values().iterator();
 
         while (iterator.hasNext()) {
-            UploadTask taskToCancel = uploadTasksMap.get(iterator.next());
-            taskToCancel.cancel();
+            iterator.next().cancel();
         }
     }
 
@@ -204,7 +682,7 @@ public final class UploadService extends Service {
      * @param context application context
      * @return true if the service is getting stopped, false otherwise
      */
-    public static synchronized boolean stop(final Context context) {
+    public static boolean stop(final Context context) {
         return stop(context, false);
     }
 
@@ -215,11 +693,55 @@ public final class UploadService extends Service {
      * @param forceStop stops the service no matter if some tasks are running
      * @return true if the service is getting stopped, false otherwise
      */
-    public static synchronized boolean stop(final Context context, boolean forceStop) {
+    public static boolean stop(final Context context, boolean forceStop) {
         if (forceStop) {
             return context.stopService(new Intent(context, UploadService.class));
         }
-        return uploadTasksMap.isEmpty() && context.stopService(new Intent(context, UploadService.class));
+        return !hasActiveUploads() && context.stopService(new Intent(context, UploadService.class));
+    }
+
+    private static boolean hasActiveUploads() {
+        return hasRunningUploads() || !pausedUploads.isEmpty();
+    }
+
+    private static boolean hasRunningUploads() {
+        return !uploadTasksMap.isEmpty() || !uploadQueue.isEmpty();
+    }
+
+    /**
+     * Cancels an upload which has been paused. Its task is registered again as running,
+     * so that it completes like any other cancelled task.
+     *
+     * @param task paused task
+     */
+    private static void cancelPausedUpload(UploadTask task) {
+        uploadTasksMap.put(task.params.id, task);
+
+        // the pause has been reported as the outcome of the last run, so it's reset to
+        // report the cancellation
+        task.resume();
+        task.cancel();
+        task.broadcastCancelled();
+    }
+
+    /**
+     * Cancels an upload whose task may not be running yet.
+     *
+     * @param queued upload to cancel
+     * @return true if the upload has been cancelled, false if its task is already running and
+     * has to be stopped
+     */
+    private static boolean cancelQueuedUpload(QueuedUpload queued) {
+        int previousState = queued.cancel();
+
+        if (previousState == QueuedUpload.STATE_QUEUED) {
+            // the upload never started, so it's reported as cancelled right away
+            uploadQueue.remove(queued);
+            queued.service.queuedUploadCancelled(queued);
+        }
+
+        // if the task was being created, the worker thread reports the cancellation
+        return previousState != QueuedUpload.STATE_STARTED;
     }
 
     private boolean isExecuteInForeground() {
@@ -237,6 +759,11 @@ public final class UploadService extends Service {
         if (!wakeLock.isHeld()) {
             wakeLock.acquire(TimeUnit.MINUTES.toSeconds(5));
         }
+
+        NetworkMonitor monitor = customNetworkMonitor;
+        networkMonitor = monitor != null ? monitor : new ConnectivityNetworkMonitor();
+        networkMonitor.start(this, networkListener);
+        networkAvailable = isAvailable(networkMonitor.getCurrentState());
     }
 
     @Override
@@ -260,19 +787,43 @@ public final class UploadService extends Service {
 
         Logger.info(TAG, String.format(Locale.getDefault(), "Starting service with namespace: %s, " +
                         "upload pool size: %d, %ds idle thread keep alive time. Foreground execution is %s",
-                NAMESPACE, UPLOAD_POOL_SIZE, KEEP_ALIVE_TIME_IN_SECONDS,
+                NAMESPACE, getUploadPoolSize(), KEEP_ALIVE_TIME_IN_SECONDS,
                 (isExecuteInForeground() ? "enabled" : "disabled")));
 
-        UploadTask currentTask = getTask(intent);
+        ArrayList<Intent> batch = intent.getParcelableArrayListExtra(PARAM_BATCH);
 
-        if (currentTask == null) {
-            return shutdownIfThereArentAnyActiveTasks();
+        if (batch != null) {
+            for (Intent uploadIntent : batch) {
+                // extras of nested intents are read with the framework class loader otherwise
+                uploadIntent.setExtrasClassLoader(UploadService.class.getClassLoader());
+                enqueue(uploadIntent);
+            }
+        } else {
+            enqueue(intent);
+        }
+
+        return shutdownIfThereArentAnyActiveTasks();
+    }
+
+    /**
+     * Creates the upload task for the given intent and schedules its execution.
+     *
+     * @param intent intent which describes the upload
+     */
+    private void enqueue(Intent intent) {
+        UploadTaskParameters params = intent.getParcelableExtra(PARAM_TASK_PARAMETERS);
+
+        if (params == null || (intent.getStringExtra(PARAM_TASK_TYPE) == null
+                && intent.getStringExtra(PARAM_TASK_CLASS) == null)) {
+            Logger.error(TAG, "Ignoring upload intent without task parameters or task class");
+            return;
         }
 
-        if (uploadTasksMap.containsKey(currentTask.params.id)) {
-            Logger.error(TAG, "Preventing upload with id: " + currentTask.params.id
+        if (uploadTasksMap.containsKey(params.id) || uploadQueue.contains(params.id)
+                || pausedUploads.containsKey(params.id)) {
+            Logger.error(TAG, "Preventing upload with id: " + params.id
                     + " to be uploaded twice! Please check your code and fix it!");
-            return shutdownIfThereArentAnyActiveTasks();
+            return;
         }
 
         clearIdleTimer();
@@ -283,49 +834,500 @@ public final class UploadService extends Service {
             notificationIncrementalId += 2;
         }
 
-        currentTask.setLastProgressNotificationTime(0)
-                .setNotificationId(UPLOAD_NOTIFICATION_BASE_ID + notificationIncrementalId);
+        // the task is created only when a worker thread is free to run it, so queued uploads
+        // take only the memory needed by their parameters
+        QueuedUpload queued = new QueuedUpload(this, intent.getStringExtra(PARAM_TASK_TYPE),
+                intent.getStringExtra(PARAM_TASK_CLASS), getTaskExtras(intent), params,
+                UPLOAD_NOTIFICATION_BASE_ID + notificationIncrementalId);
+        uploadQueue.add(queued);
+        enterForeground(params);
 
-        uploadTasksMap.put(currentTask.params.id, currentTask);
-        uploadThreadPool.execute(currentTask);
+        if (!params.tags.isEmpty()) {
+            tagIndex.add(params);
+        }
 
-        return START_STICKY;
+        // an upload on which this one depends may have already failed or be unknown
+        if (!params.dependencies.isEmpty() && uploadQueue.getFailedDependencyOf(queued) != null) {
+            abortUploadsWithFailedDependencies();
+        }
+
+        uploadThreadPool.execute(queueDispatcher);
+
+        // an upload waiting for its dependencies, its serial key or its constraints would
+        // stop a running upload without taking its place
+        if (PREEMPTION_ENABLED && uploadQueue.canStartNow(queued, getNetworkState(),
+                System.currentTimeMillis())) {
+            preemptLowerPriorityUpload(params.priority);
+        }
     }
 
-    private void initializeUploadThreadPool() {
-        if (uploadThreadPool == null) {
-            if (UPLOAD_POOL_SIZE <= 0) {
-                UPLOAD_POOL_SIZE = Runtime.getRuntime().availableProcessors();
+    /**
+     * Puts the service in the foreground as soon as it accepts an upload, even if the upload
+     * can't start yet because it's queued or parked, as required when the service is started
+     * with {@code startForegroundService}. The notification shows that the upload is waiting,
+     * until a running task replaces it with its own.
+     *
+     * @param params parameters of the accepted upload
+     */
+    private void enterForeground(UploadTaskParameters params) {
+        if (!isExecuteInForeground() || params.notificationConfig == null)
+            return;
+
+        synchronized (foregroundState) {
+            if (foregroundState.enter()) {
+                Logger.debug(TAG, "Starting foreground execution");
+                startForeground(UPLOAD_NOTIFICATION_BASE_ID, createWaitingNotification(params));
+            }
+        }
+    }
+
+    /**
+     * Shows in the foreground notification that the uploads are waiting, when the task which
+     * was holding it is not running anymore and no other task is running.
+     * Must be called while holding the monitor of the foreground state.
+     */
+    private void showWaitingUploads() {
+        if (!foregroundState.isInForeground() || foregroundState.getHolder() != null
+                || !uploadTasksMap.isEmpty())
+            return;
+
+        for (QueuedUpload queued : uploadQueue.getAll()) {
+            if (queued.params.notificationConfig != null) {
+                startForeground(UPLOAD_NOTIFICATION_BASE_ID, createWaitingNotification(queued.params));
+                return;
+            }
+        }
+    }
+
+    private Notification createWaitingNotification(UploadTaskParameters params) {
+        UploadNotificationConfig config = params.notificationConfig;
+        UploadNotificationStatusConfig statusConfig = config.getProgress();
+        UploadInfo uploadInfo = new UploadInfo(params.id);
+
+        UploadTask.createNotificationChannels((NotificationManager) getSystemService(NOTIFICATION_SERVICE), config);
+
+        return new NotificationCompat.Builder(this, config.getLowImportanceNotificationChannelId())
+                .setContentTitle(Placeholders.replace(statusConfig.title, uploadInfo, getIndexOfCurrentUploadTask(), getTotalTasks()))
+                .setContentText(Placeholders.replace(statusConfig.message, uploadInfo, getIndexOfCurrentUploadTask(), getTotalTasks()))
+                .setContentIntent(statusConfig.getClickIntent(this))
+                .setSmallIcon(statusConfig.iconResourceID)
+                .setColor(statusConfig.iconColorInt)
+                .setGroup(NAMESPACE)
+                .setProgress(100, 0, true)
+                .setOngoing(true)
+                .build();
+    }
+
+    /**
+     * If all the worker threads are busy, stops the running upload with the lowest priority,
+     * if lower than the given one.
+     *
+     * @param priority priority of the upload waiting to run
+     */
+    private static void preemptLowerPriorityUpload(int priority) {
+        int running = 0;
+        UploadTask lowest = null;
+
+        for (UploadTask task : uploadTasksMap.values()) {
+            // tasks which are already stopping are going to free their thread
+            if (task.isStopping())
+                continue;
+
+            running++;
+
+            if (task.params.priority < priority
+                    && (lowest == null || task.params.priority < lowest.params.priority)) {
+                lowest = task;
+            }
+        }
+
+        if (lowest == null || running < getUploadPoolSize())
+            return;
+
+        Logger.info(TAG, "Preempting upload with ID: " + lowest.params.id
+                + " (priority " + lowest.params.priority + ") to run an upload with priority "
+                + priority);
+        lowest.preempt();
+    }
+
+    /**
+     * Runs on a worker thread the next upload waiting in the queue, if any.
+     */
+    final Runnable queueDispatcher = new Runnable() {
+        @Override
+        public void run() {
+            QueuedUpload next = uploadQueue.poll(schedulingPolicy, getNetworkState());
+
+            if (next == null) {
+                scheduleOffPeakCheck();
+                return;
+            }
+
+            UploadTask task = next.task != null ? next.task : getTask(next);
+
+            if (task != null) {
+                task.setLastProgressNotificationTime(0)
+                        .setNotificationId(next.notificationId);
+                task.setMaxUploadRate(next.params.maxUploadRate);
+
+                // the task is registered before leaving the queue, so that the upload
+                // is always seen as active
+                uploadTasksMap.put(next.id, task);
+
+                if (next.start()) {
+                    uploadQueue.remove(next);
+                    task.run();
+                    return;
+                }
+
+                uploadTasksMap.remove(next.id);
+            }
+
+            uploadQueue.remove(next);
+
+            if (task != null || next.cancel() == QueuedUpload.STATE_CANCELLED) {
+                // cancelled while the task was being created
+                queuedUploadCancelled(next);
+            } else {
+                uploadDelegates.remove(next.id);
+                uploadFinished(next.params, false, 0, 0);
+                stopIfIdle();
+            }
+        }
+    };
+
+    private NetworkState getNetworkState() {
+        NetworkMonitor monitor = networkMonitor;
+        return monitor != null ? monitor.getCurrentState() : NetworkState.DISCONNECTED;
+    }
+
+    private final NetworkMonitor.Listener networkListener = new NetworkMonitor.Listener() {
+        @Override
+        public void onNetworkStateChanged(NetworkState state) {
+            boolean wasAvailable = networkAvailable;
+            networkAvailable = isAvailable(state);
+
+            parkUploadsWithUnmetConstraints(state);
+
+            if (networkAvailable && !wasAvailable) {
+                retryFailedUploads();
+            }
+
+            dispatchQueuedUploads();
+        }
+    };
+
+    private static boolean isAvailable(NetworkState state) {
+        return state.isConnected() && state.isValidated();
+    }
+
+    /**
+     * Makes the uploads which are waiting to retry after an error try again immediately,
+     * one every {@link #NETWORK_RETRY_STAGGER} milliseconds.
+     */
+    private static void retryFailedUploads() {
+        int waiting = 0;
+
+        for (UploadTask task : uploadTasksMap.values()) {
+            if (task.retryWithin((long) waiting * NETWORK_RETRY_STAGGER)) {
+                waiting++;
+            }
+        }
+
+        if (waiting > 0) {
+            Logger.info(TAG, "Network available, retrying " + waiting + " uploads");
+        }
+    }
+
+    /**
+     * Puts back in the queue the running uploads which can't run on the given network,
+     * so they continue when their constraints are met again.
+     *
+     * @param state current network state
+     */
+    private static void parkUploadsWithUnmetConstraints(NetworkState state) {
+        for (UploadTask task : uploadTasksMap.values()) {
+            UploadConstraints constraints = task.params.constraints;
+
+            if (constraints == null || task.isStopping() || constraints.isSatisfiedBy(state))
+                continue;
+
+            Logger.info(TAG, "Parking upload with ID: " + task.params.id
+                    + " until its constraints are met. Network: " + state);
+            task.preempt();
+        }
+    }
+
+    /**
+     * Makes the worker threads check again the queued uploads, to start the ones which were
+     * waiting for their constraints to be met or for the uploads on which they depend.
+     */
+    private void dispatchQueuedUploads() {
+        dispatchQueuedUploads(uploadThreadPool, uploadQueue, queueDispatcher);
+    }
+
+    /**
+     * Runs a dispatcher for each queued upload, up to the size of the pool, so that all the
+     * uploads which become ready at the same time start together, like the ones which depend
+     * on the same upload.
+     *
+     * @param pool worker threads, or null if the service is not running
+     * @param queue queued uploads
+     * @param dispatcher runnable which starts the next queued upload
+     */
+    static void dispatchQueuedUploads(@Nullable ThreadPoolExecutor pool, UploadQueue queue,
+                                      Runnable dispatcher) {
+        if (pool == null)
+            return;
+
+        int dispatchers = Math.min(queue.size(), pool.getCorePoolSize());
+        for (int i = 0; i < dispatchers; i++) {
+            pool.execute(dispatcher);
+        }
+    }
+
+    /**
+     * Schedules a check of the queued uploads for when the first off-peak window opens, if
+     * there are uploads waiting for it.
+     */
+    private synchronized void scheduleOffPeakCheck() {
+        long now = System.currentTimeMillis();
+        long delay = uploadQueue.getTimeUntilNextOffPeakWindow(now);
+
+        // a check is already scheduled in time
+        if (delay < 0 || (nextOffPeakCheck > now && nextOffPeakCheck <= now + delay))
+            return;
+
+        if (offPeakTimer == null) {
+            offPeakTimer = new Timer(TAG + "OffPeakTimer", true);
+        }
+
+        Logger.debug(TAG, "Next off-peak window opens in " + delay + "ms");
+        nextOffPeakCheck = now + delay;
+        offPeakTimer.schedule(new TimerTask() {
+            @Override
+            public void run() {
+                dispatchQueuedUploads();
+            }
+        }, delay);
+    }
+
+    private synchronized void cancelOffPeakCheck() {
+        if (offPeakTimer != null) {
+            offPeakTimer.cancel();
+            offPeakTimer = null;
+        }
+        nextOffPeakCheck = 0;
+    }
+
+    /**
+     * Reports the cancellation of an upload which has been removed from the queue
+     * before its task started.
+     *
+     * @param upload cancelled upload
+     */
+    private void queuedUploadCancelled(QueuedUpload upload) {
+        Logger.debug(TAG, "Broadcasting cancellation for queued upload with ID: " + upload.id);
+
+        final UploadInfo uploadInfo = new UploadInfo(upload.id);
+        final UploadStatusDelegate delegate = getUploadStatusDelegate(upload.id);
+
+        if (delegate != null) {
+            delegate.onCancelled(this, uploadInfo);
+        } else {
+            sendBroadcast(new BroadcastData()
+                    .setStatus(BroadcastData.Status.CANCELLED)
+                    .setUploadInfo(uploadInfo)
+                    .getIntent());
+        }
+
+        uploadDelegates.remove(upload.id);
+        completedTasks.incrementAndGet();
+        uploadFinished(upload.params, false, 0, 0);
+        stopIfIdle();
+    }
+
+    /**
+     * Reports the failure of an upload which has been removed from the queue
+     * before its task started.
+     *
+     * @param upload failed upload
+     * @param exception cause of the failure
+     */
+    private void queuedUploadFailed(QueuedUpload upload, Exception exception) {
+        Logger.debug(TAG, "Broadcasting error for queued upload with ID: " + upload.id
+                + ". " + exception.getMessage());
+
+        final UploadInfo uploadInfo = new UploadInfo(upload.id);
+        final UploadStatusDelegate delegate = getUploadStatusDelegate(upload.id);
+
+        if (delegate != null) {
+            delegate.onError(this, uploadInfo, null, exception);
+        } else {
+            sendBroadcast(new BroadcastData()
+                    .setStatus(BroadcastData.Status.ERROR)
+                    .setUploadInfo(uploadInfo)
+                    .setException(exception)
+                    .getIntent());
+        }
+
+        uploadDelegates.remove(upload.id);
+        completedTasks.incrementAndGet();
+        uploadFinished(upload.params, false, 0, 0);
+        stopIfIdle();
+    }
+
+    /**
+     * Called when an upload is done, either successfully, with an error or due to a
+     * cancellation. Releases its serial key, records its outcome for the uploads which depend
+     * on it, updates the progress of its tags and starts the next uploads without waiting for
+     * other events.
+     *
+     * @param params parameters of the upload which is done
+     * @param successful true if the upload has been completed successfully
+     * @param uploadedBytes bytes uploaded by the upload
+     * @param totalBytes total bytes of the upload
+     */
+    private void uploadFinished(UploadTaskParameters params, boolean successful,
+                                long uploadedBytes, long totalBytes) {
+        uploadQueue.recordOutcome(params.id, successful);
+        uploadQueue.releaseSerialKey(params);
+
+        if (!params.tags.isEmpty()) {
+            for (TagIndex.Entry entry : tagIndex.remove(params, successful, uploadedBytes, totalBytes)) {
+                broadcastTagProgress(getTagProgress(entry));
             }
+        }
 
-            int uploadPoolSize = serviceParameters != null ? serviceParameters.getMaxConcurrentUploads() : UPLOAD_POOL_SIZE;
+        if (!successful) {
+            abortUploadsWithFailedDependencies();
+        }
 
-            uploadThreadPool = new ThreadPoolExecutor(
+        // many uploads may depend on this one
+        dispatchQueuedUploads();
+    }
+
+    /**
+     * Cancels or fails, according to their dependency failure policy, the queued uploads which
+     * depend on an upload which has not been successful.
+     */
+    private void abortUploadsWithFailedDependencies() {
+        for (QueuedUpload upload : uploadQueue.takeUploadsWithFailedDependencies()) {
+            if (upload.params.dependencyFailurePolicy == UploadRequest.DEPENDENCY_FAILURE_ERROR) {
+                queuedUploadFailed(upload, new IllegalStateException("Upload " + upload.id
+                        + " not started because upload " + upload.failedDependency
+                        + ", on which it depends, has not been completed successfully "
+                        + "or is unknown"));
+            } else {
+                queuedUploadCancelled(upload);
+            }
+        }
+    }
+
+    /**
+     * Changes how many uploads can run concurrently, while the service is running and also
+     * before it starts. For example, you can lower it on metered networks and raise it again
+     * on Wi-Fi or when the device is charging.
+     * <p>
+     * When lowering the limit, running uploads are not interrupted. The threads in excess
+     * terminate as soon as their upload is done, so queued uploads start only when the running
+     * ones fall below the new limit. When raising it, queued uploads start immediately.
+     *
+     * @param maxConcurrentUploads maximum number of concurrent uploads. Set this to 0 to use
+     *                             the value in {@link ServiceParameters} or
+     *                             {@link #UPLOAD_POOL_SIZE}
+     */
+    public static void setMaxConcurrentUploads(int maxConcurrentUploads) {
+        if (maxConcurrentUploads < 0)
+            throw new IllegalArgumentException("maxConcurrentUploads must be 0 or greater");
+
+        UploadService.maxConcurrentUploads = maxConcurrentUploads;
+
+        ThreadPoolExecutor pool = uploadThreadPool;
+        if (pool != null) {
+            resizeUploadThreadPool(pool, getUploadPoolSize());
+        }
+    }
+
+    private static int getUploadPoolSize() {
+        int max = maxConcurrentUploads;
+        return max > 0 ? max : defaultUploadPoolSize;
+    }
+
+    private static void resizeUploadThreadPool(ThreadPoolExecutor pool, int size) {
+        // core and max size are changed in the order which keeps core <= max at any time
+        synchronized (pool) {
+            if (size == pool.getCorePoolSize())
+                return;
+
+            if (size > pool.getMaximumPoolSize()) {
+                pool.setMaximumPoolSize(size);
+                pool.setCorePoolSize(size);
+            } else {
+                pool.setCorePoolSize(size);
+                pool.setMaximumPoolSize(size);
+            }
+
+            Logger.info(TAG, "Upload pool size changed to " + size);
+        }
+    }
+
+    private void initializeUploadThreadPool() {
+        if (UPLOAD_POOL_SIZE <= 0) {
+            UPLOAD_POOL_SIZE = Runtime.getRuntime().availableProcessors();
+        }
+
+        // parameters coming with every new request are applied to the running pool
+        defaultUploadPoolSize = serviceParameters != null && serviceParameters.getMaxConcurrentUploads() > 0
+                ? serviceParameters.getMaxConcurrentUploads() : UPLOAD_POOL_SIZE;
+
+        int uploadPoolSize = getUploadPoolSize();
+
+        if (uploadThreadPool == null) {
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(
                     uploadPoolSize,       // Initial pool size
                     uploadPoolSize,       // Max pool size
                     KEEP_ALIVE_TIME_IN_SECONDS,
                     TimeUnit.SECONDS,
                     uploadTasksQueue);
+
+            // release idle threads between bursts of uploads
+            if (KEEP_ALIVE_TIME_IN_SECONDS > 0) {
+                pool.allowCoreThreadTimeOut(true);
+            }
+            uploadThreadPool = pool;
+        } else {
+            resizeUploadThreadPool(uploadThreadPool, uploadPoolSize);
         }
     }
 
     private void clearIdleTimer() {
-        if (idleTimer != null) {
+        Timer timer = idleTimer.getAndSet(null);
+
+        if (timer != null) {
             Logger.info(TAG, "Clearing idle timer");
-            idleTimer.cancel();
-            idleTimer = null;
+            timer.cancel();
         }
     }
 
     private int shutdownIfThereArentAnyActiveTasks() {
-        if (uploadTasksMap.isEmpty()) {
+        if (!hasActiveUploads()) {
             clearIdleTimer();
 
             Logger.info(TAG, "Service will be shut down in " + IDLE_TIMEOUT + "ms if no new tasks are received");
-            idleTimer = new Timer(TAG + "IdleTimer");
-            idleTimer.schedule(new TimerTask() {
+            Timer timer = new Timer(TAG + "IdleTimer");
+            Timer previousTimer = idleTimer.getAndSet(timer);
+            if (previousTimer != null) {
+                previousTimer.cancel();
+            }
+
+            timer.schedule(new TimerTask() {
                 @Override
                 public void run() {
+                    // an upload may have been paused while the timer was running
+                    if (hasActiveUploads())
+                        return;
+
                     Logger.info(TAG, "Service is about to be stopped because idle timeout of "
                             + IDLE_TIMEOUT + "ms has been reached");
                     stopSelf();
@@ -346,53 +1348,121 @@ public final class UploadService extends Service {
 
         if (uploadThreadPool != null) {
             uploadThreadPool.shutdown();
+            uploadThreadPool = null;
         }
 
         if (isExecuteInForeground()) {
             Logger.debug(TAG, "Stopping foreground execution");
-            stopForeground(true);
+
+            synchronized (foregroundState) {
+                foregroundState.leave();
+                stopForeground(true);
+            }
         }
 
         if (wakeLock.isHeld()) {
             wakeLock.release();
         }
 
+        networkMonitor.stop();
+        networkMonitor = null;
+        cancelOffPeakCheck();
+
         uploadTasksMap.clear();
+        uploadQueue.clear();
+        pausedUploads.clear();
+        tagIndex.clear();
         uploadDelegates.clear();
-        completedTasksMap.clear();
+        completedTasks.set(0);
 
         Logger.debug(TAG, "UploadService destroyed");
     }
 
     /**
-     * Creates a new task instance based on the requested task class in the intent.
+     * Gets the extras of an upload intent which are read only by the task.
+     *
+     * @param intent intent which describes the upload
+     * @return extras, or null if there are none
+     */
+    @Nullable
+    private static Bundle getTaskExtras(Intent intent) {
+        Bundle extras = intent.getExtras();
+        if (extras == null)
+            return null;
+
+        extras.remove(PARAM_TASK_PARAMETERS);
+        extras.remove(PARAM_TASK_TYPE);
+        extras.remove(PARAM_TASK_CLASS);
+
+        return extras.isEmpty() ? null : extras;
+    }
+
+    /**
+     * Creates the task of a queued upload, with an intent rebuilt from what the queued
+     * upload keeps of the one which started it.
+     *
+     * @param upload queued upload
+     * @return task instance or null if the task class is not supported or invalid
+     */
+    private UploadTask getTask(QueuedUpload upload) {
+        Intent intent = new Intent(this, UploadService.class);
+
+        if (upload.taskExtras != null) {
+            intent.putExtras(upload.taskExtras);
+        }
+
+        intent.putExtra(PARAM_TASK_PARAMETERS, upload.params);
+        intent.putExtra(PARAM_TASK_TYPE, upload.taskType);
+        intent.putExtra(PARAM_TASK_CLASS, upload.taskClass);
+
+        return getTask(intent);
+    }
+
+    /**
+     * Creates a new task instance based on the requested task type in the intent.
+     * If the task type has not been registered in {@link UploadTaskRegistry}, the task is
+     * created by reflection from its class name.
      *
      * @param intent intent passed to the service
      * @return task instance or null if the task class is not supported or invalid
      */
     UploadTask getTask(Intent intent) {
+        String taskType = intent.getStringExtra(PARAM_TASK_TYPE);
         String taskClass = intent.getStringExtra(PARAM_TASK_CLASS);
 
-        if (taskClass == null) {
+        UploadTaskFactory factory = taskType != null ? UploadTaskRegistry.getFactory(taskType) : null;
+
+        if (factory == null && taskClass == null) {
             return null;
         }
 
         UploadTask uploadTask = null;
 
         try {
-            Class<?> task = Class.forName(taskClass);
-
-            if (UploadTask.class.isAssignableFrom(task)) {
-                uploadTask = UploadTask.class.cast(task.newInstance());
-                uploadTask.init(this, intent);
+            if (factory != null) {
+                uploadTask = factory.create();
             } else {
-                Logger.error(TAG, taskClass + " does not extend UploadTask!");
+                Logger.info(TAG, "Task " + taskClass + " is not registered in UploadTaskRegistry. "
+                        + "Creating it by reflection");
+
+                Class<?> task = Class.forName(taskClass);
+
+                if (UploadTask.class.isAssignableFrom(task)) {
+                    uploadTask = UploadTask.class.cast(task.newInstance());
+                } else {
+                    Logger.error(TAG, taskClass + " does not extend UploadTask!");
+                    return null;
+                }
             }
 
-            Logger.debug(TAG, "Successfully created new task with class: " + taskClass);
+            uploadTask.init(this, intent);
+
+            Logger.debug(TAG, "Successfully created new task of type: "
+                    + (taskType != null ? taskType : taskClass));
 
         } catch (Exception exc) {
             Logger.error(TAG, "Error while instantiating new task", exc);
+            uploadTask = null;
         }
 
         return uploadTask;
@@ -404,20 +1474,16 @@ public final class UploadService extends Service {
      * @param uploadId ID of the upload
      * @return true if the current upload task holds the foreground notification, otherwise false
      */
-    protected synchronized boolean holdForegroundNotification(String uploadId, Notification notification) {
+    protected boolean holdForegroundNotification(String uploadId, Notification notification) {
         if (!isExecuteInForeground()) return false;
 
-        if (foregroundUploadId == null) {
-            foregroundUploadId = uploadId;
-            Logger.debug(TAG, uploadId + " now holds the foreground notification");
-        }
+        synchronized (foregroundState) {
+            if (!foregroundState.hold(uploadId))
+                return false;
 
-        if (uploadId.equals(foregroundUploadId)) {
             startForeground(UPLOAD_NOTIFICATION_BASE_ID, notification);
             return true;
         }
-
-        return false;
     }
 
     /**
@@ -425,26 +1491,89 @@ public final class UploadService extends Service {
      * user cancellation).
      *
      * @param uploadId the uploadID of the finished task
+     * @param successful true if the task has been completed successfully
      */
-    protected synchronized void taskCompleted(String uploadId) {
+    protected void taskCompleted(String uploadId, boolean successful) {
         UploadTask task = uploadTasksMap.remove(uploadId);
         uploadDelegates.remove(uploadId);
 
         if (task != null) {
-            completedTasksMap.put(uploadId, task);
+            completedTasks.incrementAndGet();
+            uploadFinished(task.params, successful, task.uploadedBytes, task.totalBytes);
         }
 
         // un-hold foreground upload ID if it's been hold
-        if (isExecuteInForeground() && task != null && task.params.id.equals(foregroundUploadId)) {
-            Logger.debug(TAG, uploadId + " now un-holded the foreground notification");
-            foregroundUploadId = null;
+        if (isExecuteInForeground() && task != null) {
+            foregroundState.release(task.params.id);
         }
 
-        if (isExecuteInForeground() && uploadTasksMap.isEmpty()) {
-            Logger.debug(TAG, "All tasks completed, stopping foreground execution");
-            stopForeground(true);
-            shutdownIfThereArentAnyActiveTasks();
+        stopIfIdle();
+    }
+
+    /**
+     * Called by each task when it gets paused. The task is kept until the upload is resumed
+     * or cancelled.
+     *
+     * @param task the paused task
+     */
+    protected void taskPaused(UploadTask task) {
+        String uploadId = task.params.id;
+
+        uploadTasksMap.remove(uploadId);
+        pausedUploads.put(uploadId, task);
+
+        if (isExecuteInForeground()) {
+            foregroundState.release(uploadId);
+        }
+
+        stopIfIdle();
+    }
+
+    /**
+     * Called by each task when it has been preempted by an upload with a higher priority.
+     * The task is put back in the queue with its progress.
+     *
+     * @param task the preempted task
+     */
+    protected void taskPreempted(UploadTask task) {
+        String uploadId = task.params.id;
+
+        uploadTasksMap.remove(uploadId);
+
+        if (isExecuteInForeground()) {
+            foregroundState.release(uploadId);
+        }
+
+        ThreadPoolExecutor pool = uploadThreadPool;
+        if (pool == null)
+            return;
+
+        task.resume();
+        uploadQueue.add(new QueuedUpload(task));
+        pool.execute(queueDispatcher);
+
+        // a parked upload doesn't run again until its constraints are met
+        stopIfIdle();
+    }
+
+    private void stopIfIdle() {
+        if (!isExecuteInForeground())
+            return;
+
+        synchronized (foregroundState) {
+            if (hasRunningUploads()) {
+                showWaitingUploads();
+                return;
+            }
+
+            // paused uploads don't keep the service in the foreground, but prevent its shutdown
+            if (foregroundState.leave()) {
+                Logger.debug(TAG, "All tasks completed, stopping foreground execution");
+                stopForeground(true);
+            }
         }
+
+        shutdownIfThereArentAnyActiveTasks();
     }
 
     /**
@@ -496,7 +1625,7 @@ public final class UploadService extends Service {
      * @return
      */
     public int getIndexOfCurrentUploadTask() {
-        return completedTasksMap.size() + 1;
+        return completedTasks.get() + 1;
     }
 
     /**
@@ -505,6 +1634,7 @@ public final class UploadService extends Service {
      * @return
      */
     public int getTotalTasks() {
-        return uploadTasksMap.size() + completedTasksMap.size();
+        return uploadTasksMap.size() + uploadQueue.size() + pausedUploads.size()
+                + completedTasks.get();
     }
 }
@@ -32,6 +32,12 @@ public class UploadServiceBroadcastReceiver extends BroadcastReceiver
             return;
         }
 
+        // aggregate events are not related to a single upload
+        if (data.getStatus() == BroadcastData.Status.TAG_PROGRESS) {
+            onTagProgress(context, data.getTagProgress());
+            return;
+        }
+
         UploadInfo uploadInfo = data.getUploadInfo();
 
         if (!shouldAcceptEventFrom(uploadInfo)) {
@@ -55,6 +61,10 @@ public class UploadServiceBroadcastReceiver extends BroadcastReceiver
                 onCancelled(context, uploadInfo);
                 break;
 
+            case PAUSED:
+                onPaused(context, uploadInfo);
+                break;
+
             default:
                 break;
         }
@@ -115,4 +125,19 @@ public class UploadServiceBroadcastReceiver extends BroadcastReceiver
     @Override
     public void onCancelled(final Context context, final UploadInfo uploadInfo) {
     }
+
+    @Override
+    public void onPaused(final Context context, final UploadInfo uploadInfo) {
+    }
+
+    /**
+     * Called when the aggregate progress of the uploads with a tag changes, at most once every
+     * {@link UploadService#PROGRESS_REPORT_INTERVAL} for each tag, and every time one of those
+     * uploads is done. Override this method to add your own logic.
+     *
+     * @param context context
+     * @param tagProgress aggregate progress
+     */
+    public void onTagProgress(final Context context, final TagProgress tagProgress) {
+    }
 }
@@ -54,4 +54,11 @@ public class UploadServiceSingleBroadcastReceiver extends UploadServiceBroadcast
             mDelegate.get().onCancelled(context, uploadInfo);
         }
     }
+
+    @Override
+    public final void onPaused(Context context, UploadInfo uploadInfo) {
+        if (mDelegate != null && mDelegate.get() != null) {
+            mDelegate.get().onPaused(context, uploadInfo);
+        }
+    }
 }
@@ -0,0 +1,140 @@
+package net.gotev.uploadservice;
+
+/**
+ * Immutable view of the state of an upload at a given time, returned by
+ * {@link UploadService#getUploadSnapshot(String)}. It's read directly from the upload task,
+ * without waiting for the next status broadcast.
+ *
+ * @author Aleksandar Gotev
+ */
+public final class UploadSnapshot {
+
+    public enum State {
+        /**
+         * Waiting for a free worker thread, for the uploads it depends on or for its
+         * constraints to be met.
+         */
+        QUEUED,
+
+        /**
+         * Transferring data.
+         */
+        RUNNING,
+
+        /**
+         * Waiting before retrying, after an error.
+         */
+        WAITING_RETRY,
+
+        /**
+         * Paused with {@link UploadService#pauseUpload(String)}.
+         */
+        PAUSED
+    }
+
+    private final String uploadId;
+    private final State state;
+    private final long startTime;
+    private final long currentTime;
+    private final long uploadedBytes;
+    private final long totalBytes;
+    private final int attempts;
+    private final int completedFiles;
+    private final int filesLeft;
+
+    UploadSnapshot(String uploadId, State state, long startTime, long uploadedBytes,
+                   long totalBytes, int attempts, int completedFiles, int filesLeft) {
+        this.uploadId = uploadId;
+        this.state = state;
+        this.startTime = startTime;
+        this.currentTime = System.currentTimeMillis();
+        this.uploadedBytes = uploadedBytes;
+        this.totalBytes = totalBytes;
+        this.attempts = attempts;
+        this.completedFiles = completedFiles;
+        this.filesLeft = filesLeft;
+    }
+
+    public String getUploadId() {
+        return uploadId;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * Gets upload task's start timestamp in milliseconds, or 0 if the upload is still queued.
+     *
+     * @return long value
+     */
+    public long getStartTime() {
+        return startTime;
+    }
+
+    /**
+     * Gets upload task's elapsed time in milliseconds.
+     *
+     * @return long value
+     */
+    public long getElapsedTime() {
+        return startTime > 0 ? currentTime - startTime : 0;
+    }
+
+    public long getUploadedBytes() {
+        return uploadedBytes;
+    }
+
+    /**
+     * Gets the total bytes to upload. It's 0 until the task has computed it.
+     *
+     * @return long value, or -1 if the body length is not known in advance
+     */
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    /**
+     * Gets the upload progress in percent (from 0 to 100).
+     *
+     * @return integer value
+     */
+    public int getProgressPercent() {
+        if (totalBytes <= 0)
+            return 0;
+
+        return (int) (uploadedBytes * 100 / totalBytes);
+    }
+
+    /**
+     * Gets the average upload rate in Kbit/s.
+     *
+     * @return upload rate
+     */
+    public double getUploadRate() {
+        long elapsedTime = getElapsedTime();
+
+        // wait at least a second to stabilize the upload rate a little bit
+        if (elapsedTime < 1000)
+            return 0;
+
+        return (double) uploadedBytes / 1024 * 8 / ((double) elapsedTime / 1000);
+    }
+
+    /**
+     * Gets the number of upload attempts made so far.
+     *
+     * @return int value
+     */
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public int getCompletedFiles() {
+        return completedFiles;
+    }
+
+    public int getFilesLeft() {
+        return filesLeft;
+    }
+}
@@ -47,4 +47,14 @@ public interface UploadStatusDelegate {
      * @param uploadInfo upload status information
      */
     void onCancelled(final Context context, final UploadInfo uploadInfo);
+
+    /**
+     * Called when the upload is paused with {@link UploadService#pauseUpload(String)}.
+     * Override this method to add your own logic.
+     *
+     * @param context context
+     * @param uploadInfo upload status information
+     */
+    default void onPaused(final Context context, final UploadInfo uploadInfo) {
+    }
 }
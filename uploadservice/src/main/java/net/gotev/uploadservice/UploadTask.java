@@ -22,7 +22,9 @@ import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import androidx.annotation.CallSuper;
 import androidx.annotation.Nullable;
@@ -66,6 +68,11 @@ public abstract class UploadTask implements Runnable {
      */
     private final List<String> successfullyUploadedFiles = new ArrayList<>();
 
+    /**
+     * Contains the content digests of the uploaded files, if computed.
+     */
+    private final LinkedHashMap<String, String> contentDigests = new LinkedHashMap<>();
+
     /**
      * Flag indicating if the operation should continue or is cancelled. You should never
      * explicitly set this value in your subclasses, as it's written by the Upload Service
@@ -75,7 +82,24 @@ public abstract class UploadTask implements Runnable {
      * value at every step of the upload protocol you are implementing, and after that each chunk
      * of data that has been successfully transferred.
      */
-    protected boolean shouldContinue = true;
+    protected volatile boolean shouldContinue = true;
+
+    /**
+     * Flag indicating that the task has been stopped by
+     * {@link UploadService#pauseUpload(String)}, to be resumed later.
+     */
+    private volatile boolean paused = false;
+
+    /**
+     * Flag indicating that the task has been stopped to make room for an upload with
+     * a higher priority, and it has to be put back in the queue.
+     */
+    private volatile boolean preempted = false;
+
+    // true once the outcome of the current run has been reported, so that a late pause or
+    // preemption doesn't run again an upload which is already done. Guarded by the state lock
+    private final Object stateLock = new Object();
+    private boolean finished = false;
 
     private int notificationId;
     private long lastProgressNotificationTime;
@@ -87,13 +111,13 @@ public abstract class UploadTask implements Runnable {
      * {@link UploadTask#upload()} method of your subclasses, before starting the upload data
      * transfer.
      */
-    protected long totalBytes;
+    protected volatile long totalBytes;
 
     /**
      * Total transferred bytes. You should update this value in your subclasses when you upload
      * some data, and before calling {@link UploadTask#broadcastProgress(long, long)}
      */
-    protected long uploadedBytes;
+    protected volatile long uploadedBytes;
 
     /**
      * Start timestamp of this upload task.
@@ -103,7 +127,25 @@ public abstract class UploadTask implements Runnable {
     /**
      * Counter of the upload attempts that has been made;
      */
-    private int attempts;
+    private volatile int attempts;
+
+    /**
+     * True while the task is waiting before the next attempt.
+     */
+    private volatile boolean waitingRetry = false;
+
+    // maximum time to sleep at once while throttled, to react quickly to stops and
+    // rate changes
+    private static final long MAX_THROTTLE_SLEEP_MILLIS = 100;
+
+    /**
+     * Limits the upload rate of this task.
+     */
+    private final TokenBucket rateLimit = new TokenBucket(0);
+
+    // time at which the next attempt starts, guarded by the retry lock
+    private final Object retryLock = new Object();
+    private long retryTime;
 
     /**
      * A decoded and resized bitmap of the large icon
@@ -145,14 +187,26 @@ public abstract class UploadTask implements Runnable {
         this.notificationManager = (NotificationManager) service.getSystemService(Context.NOTIFICATION_SERVICE);
         this.params = intent.getParcelableExtra(UploadService.PARAM_TASK_PARAMETERS);
         this.service = service;
+        rateLimit.setRate(params.maxUploadRate);
 
         if (params.notificationConfig != null) {
-            createNotificationChannel(params.notificationConfig.getMaxImportanceNotificationChannelId(), params.notificationConfig.getMaxImportanceNotificationChannelName(), NotificationManagerCompat.IMPORTANCE_MAX);
-            createNotificationChannel(params.notificationConfig.getLowImportanceNotificationChannelId(), params.notificationConfig.getLowImportanceNotificationChannelName(), NotificationManagerCompat.IMPORTANCE_LOW);
+            createNotificationChannels(notificationManager, params.notificationConfig);
         }
     }
 
-    private void createNotificationChannel(String notificationChannelId, String channelName, int importance) {
+    /**
+     * Creates or updates the notification channels of a notification configuration.
+     *
+     * @param notificationManager notification manager
+     * @param config notification configuration
+     */
+    static void createNotificationChannels(NotificationManager notificationManager, UploadNotificationConfig config) {
+        createNotificationChannel(notificationManager, config, config.getMaxImportanceNotificationChannelId(), config.getMaxImportanceNotificationChannelName(), NotificationManagerCompat.IMPORTANCE_MAX);
+        createNotificationChannel(notificationManager, config, config.getLowImportanceNotificationChannelId(), config.getLowImportanceNotificationChannelName(), NotificationManagerCompat.IMPORTANCE_LOW);
+    }
+
+    private static void createNotificationChannel(NotificationManager notificationManager, UploadNotificationConfig config,
+                                                  String notificationChannelId, String channelName, int importance) {
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
             if (notificationChannelId == null) {
                 notificationChannelId = UploadService.NAMESPACE + channelName;
@@ -162,7 +216,7 @@ public abstract class UploadTask implements Runnable {
 
             if (notificationChannel == null) {
                 notificationChannel = new NotificationChannel(notificationChannelId, channelName, importance);
-                if (!params.notificationConfig.isRingToneEnabled()) {
+                if (!config.isRingToneEnabled()) {
                     notificationChannel.setSound(null, null);
                 }
             } else {
@@ -199,14 +253,7 @@ public abstract class UploadTask implements Runnable {
                             + " on attempt " + attempts
                             + ". Waiting " + errorDelay / 1000 + "s before next attempt. ", exc);
 
-                    long beforeSleepTs = System.currentTimeMillis();
-
-                    while (shouldContinue && System.currentTimeMillis() < (beforeSleepTs + errorDelay)) {
-                        try {
-                            Thread.sleep(2000);
-                        } catch (Throwable ignored) {
-                        }
-                    }
+                    waitBeforeRetry(errorDelay);
 
                     errorDelay *= UploadService.BACKOFF_MULTIPLIER;
                     if (errorDelay > UploadService.MAX_RETRY_WAIT_TIME) {
@@ -217,10 +264,131 @@ public abstract class UploadTask implements Runnable {
         }
 
         if (!shouldContinue) {
-            broadcastCancelled();
+            boolean wasPreempted;
+            boolean wasPaused;
+
+            synchronized (stateLock) {
+                // the upload has been completed or has failed before being stopped
+                if (finished)
+                    return;
+
+                wasPreempted = preempted;
+                wasPaused = paused;
+                finished = wasPreempted || wasPaused;
+            }
+
+            if (wasPreempted) {
+                service.taskPreempted(this);
+            } else if (wasPaused) {
+                broadcastPaused();
+            } else {
+                broadcastCancelled();
+            }
         }
     }
 
+    /**
+     * Marks the outcome of the current run as reported. After this, pausing or preempting
+     * the task has no effect.
+     *
+     * @return true if the outcome had not been reported yet
+     */
+    private boolean finish() {
+        synchronized (stateLock) {
+            if (finished)
+                return false;
+
+            finished = true;
+            return true;
+        }
+    }
+
+    /**
+     * Waits before the next attempt. The wait ends earlier if the task gets stopped or if
+     * {@link #retryWithin(long)} is called.
+     *
+     * @param delay time to wait in milliseconds
+     */
+    private void waitBeforeRetry(long delay) {
+        synchronized (retryLock) {
+            retryTime = System.currentTimeMillis() + delay;
+            waitingRetry = true;
+
+            long remaining;
+            while (shouldContinue && (remaining = retryTime - System.currentTimeMillis()) > 0) {
+                try {
+                    retryLock.wait(remaining);
+                } catch (InterruptedException ignored) {
+                }
+            }
+
+            waitingRetry = false;
+        }
+    }
+
+    /**
+     * Shortens the wait before the next attempt, if the task is waiting to retry.
+     * Used to retry immediately when the network comes back.
+     *
+     * @param delay maximum time to wait from now, in milliseconds
+     * @return true if the task was waiting to retry
+     */
+    final boolean retryWithin(long delay) {
+        synchronized (retryLock) {
+            if (!waitingRetry)
+                return false;
+
+            long time = System.currentTimeMillis() + delay;
+            if (time < retryTime) {
+                retryTime = time;
+                retryLock.notifyAll();
+            }
+            return true;
+        }
+    }
+
+    private void stopWaitingRetry() {
+        synchronized (retryLock) {
+            retryLock.notifyAll();
+        }
+    }
+
+    /**
+     * Limits the upload rate, by waiting as long as needed after some bytes have been
+     * written, according to the limit of this task and to the global one.
+     * Subclasses must call it from their write loop every time they have written a chunk of
+     * data. Returns earlier if the task gets stopped.
+     *
+     * @param bytes number of bytes which have been written
+     */
+    protected final void throttle(int bytes) {
+        TokenBucket globalRateLimit = BandwidthLimiter.getInstance().getBucket();
+        globalRateLimit.consume(bytes);
+        rateLimit.consume(bytes);
+
+        long waitNanos;
+        while (shouldContinue && (waitNanos = Math.max(globalRateLimit.getWaitNanos(),
+                rateLimit.getWaitNanos())) > 0) {
+            try {
+                Thread.sleep(Math.min(TimeUnit.NANOSECONDS.toMillis(waitNanos) + 1,
+                        MAX_THROTTLE_SLEEP_MILLIS));
+            } catch (InterruptedException exc) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Changes the upload rate limit of this task. It can be called from any thread.
+     *
+     * @param bytesPerSecond maximum upload rate in bytes per second. 0 means unlimited
+     */
+    final void setMaxUploadRate(long bytesPerSecond) {
+        params.maxUploadRate = bytesPerSecond;
+        rateLimit.setRate(bytesPerSecond);
+    }
+
     /**
      * Sets the last time the notification was updated.
      * This is handled automatically and you should never call this method.
@@ -250,12 +418,12 @@ public abstract class UploadTask implements Runnable {
      * Broadcasts a progress update.
      *
      * @param uploadedBytes number of bytes which has been uploaded to the server
-     * @param totalBytes    total bytes of the request
+     * @param totalBytes    total bytes of the request, or -1 if unknown
      */
     protected final void broadcastProgress(final long uploadedBytes, final long totalBytes) {
 
         long currentTime = System.currentTimeMillis();
-        if (uploadedBytes < totalBytes && currentTime < lastProgressNotificationTime + UploadService.PROGRESS_REPORT_INTERVAL) {
+        if ((totalBytes < 0 || uploadedBytes < totalBytes) && currentTime < lastProgressNotificationTime + UploadService.PROGRESS_REPORT_INTERVAL) {
             return;
         }
 
@@ -264,10 +432,7 @@ public abstract class UploadTask implements Runnable {
         Logger.debug(LOG_TAG, "Broadcasting upload progress for " + params.id
                 + ": " + uploadedBytes + " bytes of " + totalBytes);
 
-        final UploadInfo uploadInfo = new UploadInfo(params.id, startTime, uploadedBytes,
-                totalBytes, (attempts - 1),
-                successfullyUploadedFiles,
-                pathStringListFrom(params.files));
+        final UploadInfo uploadInfo = getUploadInfo();
 
         BroadcastData data = new BroadcastData()
                 .setStatus(BroadcastData.Status.IN_PROGRESS)
@@ -281,6 +446,10 @@ public abstract class UploadTask implements Runnable {
         }
 
         updateNotificationProgress(uploadInfo);
+
+        if (!params.tags.isEmpty()) {
+            service.tagProgressChanged(params);
+        }
     }
 
     /**
@@ -292,6 +461,10 @@ public abstract class UploadTask implements Runnable {
      * @param response response got from the server
      */
     protected final void broadcastCompleted(final ServerResponse response) {
+        if (!finish()) {
+            Logger.error(LOG_TAG, "Outcome of upload " + params.id + " already reported");
+            return;
+        }
 
         final boolean successfulUpload = response.getHttpCode() >= 200 && response.getHttpCode() < 400;
 
@@ -308,10 +481,7 @@ public abstract class UploadTask implements Runnable {
         Logger.debug(LOG_TAG, "Broadcasting upload " + (successfulUpload ? "completed" : "error")
                 + " for " + params.id);
 
-        final UploadInfo uploadInfo = new UploadInfo(params.id, startTime, uploadedBytes,
-                totalBytes, (attempts - 1),
-                successfullyUploadedFiles,
-                pathStringListFrom(params.files));
+        final UploadInfo uploadInfo = getUploadInfo();
 
         final UploadNotificationConfig notificationConfig = params.notificationConfig;
 
@@ -345,7 +515,7 @@ public abstract class UploadTask implements Runnable {
             cleanupResources();
         }
 
-        service.taskCompleted(params.id);
+        service.taskCompleted(params.id, successfulUpload);
     }
 
     /**
@@ -356,13 +526,12 @@ public abstract class UploadTask implements Runnable {
      * implementation.
      */
     protected final void broadcastCancelled() {
+        if (!finish())
+            return;
 
         Logger.debug(LOG_TAG, "Broadcasting cancellation for upload with ID: " + params.id);
 
-        final UploadInfo uploadInfo = new UploadInfo(params.id, startTime, uploadedBytes,
-                totalBytes, (attempts - 1),
-                successfullyUploadedFiles,
-                pathStringListFrom(params.files));
+        final UploadInfo uploadInfo = getUploadInfo();
 
         final UploadNotificationConfig notificationConfig = params.notificationConfig;
 
@@ -385,7 +554,35 @@ public abstract class UploadTask implements Runnable {
             cleanupResources();
         }
 
-        service.taskCompleted(params.id);
+        service.taskCompleted(params.id, false);
+    }
+
+    /**
+     * Broadcasts a paused status and hands over this task to the {@link UploadService}, which
+     * keeps it until the upload is resumed or cancelled.
+     * This is called automatically by {@link UploadTask} when the user pauses the upload.
+     */
+    private void broadcastPaused() {
+
+        Logger.debug(LOG_TAG, "Broadcasting pause for upload with ID: " + params.id);
+
+        final UploadInfo uploadInfo = getUploadInfo();
+
+        if (params.notificationConfig != null) {
+            notificationManager.cancel(notificationId);
+        }
+
+        final UploadStatusDelegate delegate = UploadService.getUploadStatusDelegate(params.id);
+        if (delegate != null) {
+            delegate.onPaused(service, uploadInfo);
+        } else {
+            service.sendBroadcast(new BroadcastData()
+                    .setStatus(BroadcastData.Status.PAUSED)
+                    .setUploadInfo(uploadInfo)
+                    .getIntent());
+        }
+
+        service.taskPaused(this);
     }
 
     /**
@@ -400,6 +597,16 @@ public abstract class UploadTask implements Runnable {
         }
     }
 
+    /**
+     * Sets the content digest computed for a file while uploading it.
+     *
+     * @param file file on the device
+     * @param digest Base64 encoded digest
+     */
+    protected final void setContentDigest(UploadFile file, String digest) {
+        contentDigests.put(file.path, digest);
+    }
+
     /**
      * Adds all the files to the list of successfully uploaded files.
      * This will automatically remove them from the params.getFiles() list.
@@ -437,14 +644,13 @@ public abstract class UploadTask implements Runnable {
      *                  of {@link UploadTask#upload()}
      */
     private void broadcastError(final Exception exception) {
+        if (!finish())
+            return;
 
         Logger.info(LOG_TAG, "Broadcasting error for upload with ID: "
                 + params.id + ". " + exception.getMessage());
 
-        final UploadInfo uploadInfo = new UploadInfo(params.id, startTime, uploadedBytes,
-                totalBytes, (attempts - 1),
-                successfullyUploadedFiles,
-                pathStringListFrom(params.files));
+        final UploadInfo uploadInfo = getUploadInfo();
 
         final UploadNotificationConfig notificationConfig = params.notificationConfig;
 
@@ -464,7 +670,7 @@ public abstract class UploadTask implements Runnable {
             service.sendBroadcast(data.getIntent());
         }
 
-        service.taskCompleted(params.id);
+        service.taskCompleted(params.id, false);
     }
 
     /**
@@ -692,6 +898,30 @@ public abstract class UploadTask implements Runnable {
         }
     }
 
+    private UploadInfo getUploadInfo() {
+        return new UploadInfo(params.id, startTime, uploadedBytes,
+                totalBytes, (attempts - 1),
+                successfullyUploadedFiles,
+                pathStringListFrom(params.files))
+                .setContentDigests(contentDigests);
+    }
+
+    /**
+     * Gets a snapshot of the state of this task. It can be called from any thread.
+     *
+     * @param state state of the task in the service. A running task which is waiting
+     *              before retrying is reported as {@link UploadSnapshot.State#WAITING_RETRY}
+     * @return snapshot
+     */
+    final UploadSnapshot getSnapshot(UploadSnapshot.State state) {
+        if (state == UploadSnapshot.State.RUNNING && waitingRetry) {
+            state = UploadSnapshot.State.WAITING_RETRY;
+        }
+
+        return new UploadSnapshot(params.id, state, startTime, uploadedBytes, totalBytes,
+                attempts, successfullyUploadedFiles.size(), params.files.size());
+    }
+
     private static List<String> pathStringListFrom(List<UploadFile> files) {
         final List<String> filesLeft = new ArrayList<>(files.size());
         for (UploadFile f : files) {
@@ -700,9 +930,83 @@ public abstract class UploadTask implements Runnable {
         return filesLeft;
     }
 
+    /**
+     * Checks if the task is being stopped to be resumed later, either because the upload has
+     * been paused or because it has been preempted by an upload with a higher priority.
+     * Tasks which can resume a partially transferred file can use this to save what's needed
+     * to do so.
+     *
+     * @return true if the upload is going to be resumed
+     */
+    protected final boolean isPaused() {
+        return paused || preempted;
+    }
+
+    /**
+     * Stops the task, so that it can be resumed later by running it again. Files which have
+     * been completely uploaded are not uploaded again.
+     */
+    @CallSuper
+    public void pause() {
+        synchronized (stateLock) {
+            // the upload is already done
+            if (finished)
+                return;
+
+            this.paused = true;
+            this.preempted = false;
+            this.shouldContinue = false;
+        }
+        stopWaitingRetry();
+    }
+
+    /**
+     * Stops the task at the next safe point, to put it back in the upload queue with its
+     * progress preserved.
+     */
+    final void preempt() {
+        synchronized (stateLock) {
+            // the upload is already done
+            if (finished)
+                return;
+
+            this.preempted = true;
+            this.shouldContinue = false;
+        }
+        stopWaitingRetry();
+    }
+
+    /**
+     * Checks if the task has been asked to stop, for any reason.
+     *
+     * @return true if the task is stopping
+     */
+    final boolean isStopping() {
+        return !shouldContinue;
+    }
+
+    /**
+     * Prepares a paused or preempted task to run again.
+     */
+    final void resume() {
+        synchronized (stateLock) {
+            this.paused = false;
+            this.preempted = false;
+            this.shouldContinue = true;
+            this.finished = false;
+        }
+    }
+
+    final int getNotificationId() {
+        return notificationId;
+    }
+
     @CallSuper
     public void cancel() {
+        this.paused = false;
+        this.preempted = false;
         this.shouldContinue = false;
+        stopWaitingRetry();
 
         if (largeIconBitmap != null && !largeIconBitmap.isRecycled()) {
             largeIconBitmap.recycle();
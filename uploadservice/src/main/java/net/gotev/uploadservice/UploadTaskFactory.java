@@ -0,0 +1,18 @@
+package net.gotev.uploadservice;
+
+/**
+ * Creates new instances of an {@link UploadTask}, without using reflection.
+ * Register it in {@link UploadTaskRegistry}, usually with a constructor reference,
+ * e.g. {@code MyUploadTask::new}.
+ *
+ * @author Aleksandar Gotev
+ */
+public interface UploadTaskFactory {
+
+    /**
+     * Creates a new upload task, which will be initialized by the upload service.
+     *
+     * @return new task instance
+     */
+    UploadTask create();
+}
@@ -3,6 +3,7 @@ package net.gotev.uploadservice;
 import android.os.Parcel;
 import android.os.Parcelable;
 
+import java.io.IOException;
 import java.util.ArrayList;
 
 /**
@@ -16,13 +17,40 @@ import java.util.ArrayList;
  */
 public final class UploadTaskParameters implements Parcelable {
 
+    /**
+     * Written first in the parcel, followed by the version of the format. Parcels written by
+     * the versions of the library which didn't have a versioned format start with the length
+     * of the upload ID instead, which is never lower than -1.
+     */
+    private static final int PARCEL_HEADER = -0x5550;
+
+    /**
+     * Version of the parcel format. Increment it when changing the order or type of the
+     * written fields.
+     */
+    private static final int PARCEL_VERSION = 1;
+
     public String id;
     public String serverUrl;
     private int maxRetries = 0;
+    public int priority = UploadRequest.PRIORITY_DEFAULT;
+    public long deadline = 0;
+    public ArrayList<String> tags = new ArrayList<>();
+    public String serialKey;
+    public ArrayList<String> dependencies = new ArrayList<>();
+    public int dependencyFailurePolicy = UploadRequest.DEPENDENCY_FAILURE_CANCEL;
+    public UploadConstraints constraints;
+    public long maxUploadRate = 0;
     public boolean autoDeleteSuccessfullyUploadedFiles = false;
     public UploadNotificationConfig notificationConfig;
     public ArrayList<UploadFile> files = new ArrayList<>();
 
+    /**
+     * Path of the list in which the files are kept by {@link FileListStore}, when they are
+     * too many to be written in the parcel.
+     */
+    String storedFilesPath;
+
     public UploadTaskParameters() {
 
     }
@@ -44,21 +72,70 @@ public final class UploadTaskParameters implements Parcelable {
 
     @Override
     public void writeToParcel(Parcel parcel, int arg1) {
+        parcel.writeInt(PARCEL_HEADER);
+        parcel.writeInt(PARCEL_VERSION);
         parcel.writeString(id);
         parcel.writeString(serverUrl);
         parcel.writeInt(maxRetries);
+        parcel.writeInt(priority);
+        parcel.writeLong(deadline);
+        parcel.writeStringList(tags);
+        parcel.writeString(serialKey);
+        parcel.writeStringList(dependencies);
+        parcel.writeInt(dependencyFailurePolicy);
+        parcel.writeParcelable(constraints, 0);
+        parcel.writeLong(maxUploadRate);
         parcel.writeByte((byte) (autoDeleteSuccessfullyUploadedFiles ? 1 : 0));
         parcel.writeParcelable(notificationConfig, 0);
-        parcel.writeList(files);
+        parcel.writeString(storedFilesPath);
+
+        if (storedFilesPath == null) {
+            parcel.writeTypedList(files);
+        }
     }
 
     private UploadTaskParameters(Parcel in) {
+        int start = in.dataPosition();
+
+        if (in.readInt() != PARCEL_HEADER) {
+            in.setDataPosition(start);
+            throw new IllegalStateException("Upload " + in.readString() + " has been started "
+                    + "by an older version of the library, whose parameters can't be read "
+                    + "anymore. Start it again");
+        }
+
+        int version = in.readInt();
+        if (version != PARCEL_VERSION) {
+            throw new IllegalStateException("Unsupported upload parameters version: " + version);
+        }
+
         id = in.readString();
         serverUrl = in.readString();
         maxRetries = in.readInt();
+        priority = in.readInt();
+        deadline = in.readLong();
+        in.readStringList(tags);
+        serialKey = in.readString();
+        in.readStringList(dependencies);
+        dependencyFailurePolicy = in.readInt();
+        constraints = in.readParcelable(UploadConstraints.class.getClassLoader());
+        maxUploadRate = in.readLong();
         autoDeleteSuccessfullyUploadedFiles = in.readByte() == 1;
         notificationConfig = in.readParcelable(UploadNotificationConfig.class.getClassLoader());
-        in.readList(files, UploadFile.class.getClassLoader());
+
+        String filesPath = in.readString();
+
+        if (filesPath == null) {
+            in.readTypedList(files, UploadFile.CREATOR);
+            return;
+        }
+
+        try {
+            files = FileListStore.read(filesPath);
+        } catch (IOException exc) {
+            Logger.error(UploadTaskParameters.class.getSimpleName(), "Files of upload " + id
+                    + " are not available anymore", exc);
+        }
     }
 
     @Override
@@ -0,0 +1,75 @@
+package net.gotev.uploadservice;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of the factories used by {@link UploadService} to create the upload tasks.
+ * Each task is registered with a stable type ID, which is sent to the service instead of the
+ * task class name, so tasks are created without reflection and keep working when the app
+ * is shrunk and obfuscated.
+ * <p>
+ * HTTP multipart, binary and batch tasks are registered by default. Register your custom
+ * tasks when your app starts (e.g. in {@code Application#onCreate}), so they are available
+ * also when the service gets restarted by the system. Tasks which are not registered are
+ * still created by reflection from their class name.
+ *
+ * @author Aleksandar Gotev
+ */
+public final class UploadTaskRegistry {
+
+    public static final String TYPE_MULTIPART = "net.gotev.uploadservice.multipart";
+    public static final String TYPE_BINARY = "net.gotev.uploadservice.binary";
+    public static final String TYPE_BATCH = "net.gotev.uploadservice.batch";
+
+    private static final Map<String, UploadTaskFactory> factories = new ConcurrentHashMap<>();
+    private static final Map<Class<? extends UploadTask>, String> types = new ConcurrentHashMap<>();
+
+    static {
+        register(TYPE_MULTIPART, MultipartUploadTask.class, MultipartUploadTask::new);
+        register(TYPE_BINARY, BinaryUploadTask.class, BinaryUploadTask::new);
+        register(TYPE_BATCH, BatchUploadTask.class, BatchUploadTask::new);
+    }
+
+    private UploadTaskRegistry() { }
+
+    /**
+     * Registers an upload task.
+     *
+     * @param typeId stable ID of the task type. It must not change between app versions,
+     *               as it may be stored by the system in the intents of pending uploads
+     * @param taskClass class of the task, as returned by {@link UploadRequest#getTaskClass()}
+     * @param factory factory which creates the task instances
+     */
+    public static void register(String typeId, Class<? extends UploadTask> taskClass,
+                                UploadTaskFactory factory) {
+        if (typeId == null || typeId.isEmpty())
+            throw new IllegalArgumentException("Type ID must not be null or empty!");
+
+        if (taskClass == null || factory == null)
+            throw new IllegalArgumentException("Task class and factory must not be null!");
+
+        factories.put(typeId, factory);
+        types.put(taskClass, typeId);
+    }
+
+    /**
+     * Gets the type ID of a registered task class.
+     *
+     * @param taskClass task class
+     * @return type ID or null if the task class has not been registered
+     */
+    static String getTypeId(Class<? extends UploadTask> taskClass) {
+        return types.get(taskClass);
+    }
+
+    /**
+     * Gets the factory of a registered task type.
+     *
+     * @param typeId type ID
+     * @return factory or null if no task has been registered with the given type ID
+     */
+    static UploadTaskFactory getFactory(String typeId) {
+        return factories.get(typeId);
+    }
+}
@@ -0,0 +1,52 @@
+package net.gotev.uploadservice.http;
+
+import android.content.Context;
+import android.os.Parcelable;
+
+import net.gotev.uploadservice.UploadFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Transforms the content of a file between {@link UploadFile#getStream(Context)} and the request
+ * body (e.g. compression, encryption, throttling). Interceptors are added to an upload request
+ * and applied in the same order in which they have been added, each one wrapping the stream
+ * returned by the previous one.
+ * <p>
+ * Interceptors are passed to the upload service together with the other request parameters,
+ * so they have to be {@link Parcelable}. Use the {@link BufferPool} for the buffers needed by
+ * the wrapping streams and release them when the stream gets closed, so chaining interceptors
+ * doesn't allocate new memory for every file and every upload attempt.
+ * @author Aleksandar Gotev
+ */
+public interface BodyInterceptor extends Parcelable {
+
+    /**
+     * Gets the number of bytes which the intercepted stream will produce.
+     * If this interceptor does not know it in advance, return -1. In that case the request
+     * is sent in chunked streaming mode, even if fixed length streaming mode has been
+     * requested, and the total bytes of the upload are reported as -1.
+     * @param context service context
+     * @param file file being uploaded
+     * @param length length of the stream produced by the previous interceptor, or the file
+     *               length if this is the first interceptor
+     * @return length of the intercepted stream, or -1 if unknown
+     */
+    long getLength(Context context, UploadFile file, long length);
+
+    /**
+     * Wraps the stream produced by the previous interceptor.
+     * @param context service context
+     * @param file file being uploaded
+     * @param stream stream produced by the previous interceptor, or the file stream if this is
+     *               the first interceptor. It has to be closed when the returned stream
+     *               gets closed
+     * @param length length of the stream produced by the previous interceptor, or -1 if unknown
+     * @param pool pool from which to get the needed buffers
+     * @return intercepted stream
+     * @throws IOException if an error occurs while creating the intercepted stream
+     */
+    InputStream intercept(Context context, UploadFile file, InputStream stream, long length,
+                          BufferPool pool) throws IOException;
+}
@@ -1,5 +1,6 @@
 package net.gotev.uploadservice.http;
 
+import net.gotev.uploadservice.ContentDigest;
 import net.gotev.uploadservice.UploadService;
 
 import java.io.IOException;
@@ -40,19 +41,41 @@ public abstract class BodyWriter {
      * @throws IOException if an I/O error occurs
      */
     public final void writeStream(InputStream stream, OnStreamWriteListener listener) throws IOException {
+        writeStream(stream, null, listener);
+    }
+
+    /**
+     * Writes an input stream to the request body, updating the given digest with the written
+     * bytes, so the content digest is computed without reading the stream twice.
+     * The stream will be automatically closed after successful write or if an exception is thrown.
+     * @param stream input stream from which to read
+     * @param digest digest to update with the written bytes, or null to not compute any digest
+     * @param listener listener which gets notified when bytes are written and which controls if
+     *                 the transfer should continue
+     * @throws IOException if an I/O error occurs
+     */
+    public final void writeStream(InputStream stream, ContentDigest digest,
+                                  OnStreamWriteListener listener) throws IOException {
         if (listener == null)
             throw new IllegalArgumentException("listener MUST not be null!");
 
-        byte[] buffer = new byte[UploadService.BUFFER_SIZE];
+        BufferPool pool = BufferPool.getInstance();
+        byte[] buffer = pool.acquire(UploadService.BUFFER_SIZE);
         int bytesRead;
 
         try {
             while (listener.shouldContinueWriting() && (bytesRead = stream.read(buffer, 0, buffer.length)) > 0) {
                 write(buffer, bytesRead);
                 flush();
+
+                if (digest != null) {
+                    digest.update(buffer, 0, bytesRead);
+                }
+
                 listener.onBytesWritten(bytesRead);
             }
         } finally {
+            pool.release(buffer);
             stream.close();
         }
     }
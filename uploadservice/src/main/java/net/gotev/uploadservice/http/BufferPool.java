@@ -0,0 +1,73 @@
+package net.gotev.uploadservice.http;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Pool of byte buffers reused across body writes and body interceptors, so that writing a
+ * stream through a chain of interceptors doesn't allocate new buffers for every file and
+ * every upload attempt. Only a few buffers of each size are retained, to not hold memory
+ * when uploads are not running.
+ * @author Aleksandar Gotev
+ */
+public final class BufferPool {
+
+    private static final int MAX_BUFFERS_PER_SIZE = 8;
+
+    private static class LazyHolder {
+        private static final BufferPool INSTANCE = new BufferPool();
+    }
+
+    public static BufferPool getInstance() {
+        return LazyHolder.INSTANCE;
+    }
+
+    private final Map<Integer, ArrayDeque<byte[]>> buffers = new HashMap<>();
+
+    private BufferPool() {
+    }
+
+    /**
+     * Gets a buffer from the pool, or allocates a new one if there aren't any available.
+     * Its content is undefined.
+     * @param size buffer size in bytes
+     * @return buffer
+     */
+    public synchronized byte[] acquire(int size) {
+        ArrayDeque<byte[]> available = buffers.get(size);
+
+        if (available == null || available.isEmpty()) {
+            return new byte[size];
+        }
+
+        return available.pop();
+    }
+
+    /**
+     * Gives a buffer back to the pool. The buffer must not be used after this call.
+     * @param buffer buffer to release
+     */
+    public synchronized void release(byte[] buffer) {
+        if (buffer == null)
+            return;
+
+        ArrayDeque<byte[]> available = buffers.get(buffer.length);
+
+        if (available == null) {
+            available = new ArrayDeque<>(MAX_BUFFERS_PER_SIZE);
+            buffers.put(buffer.length, available);
+        }
+
+        if (available.size() < MAX_BUFFERS_PER_SIZE) {
+            available.push(buffer);
+        }
+    }
+
+    /**
+     * Releases all the pooled buffers.
+     */
+    public synchronized void clear() {
+        buffers.clear();
+    }
+}
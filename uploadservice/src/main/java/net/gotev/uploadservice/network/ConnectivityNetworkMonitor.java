@@ -0,0 +1,151 @@
+package net.gotev.uploadservice.network;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.net.NetworkInfo;
+import android.os.Build;
+
+import net.gotev.uploadservice.Logger;
+
+/**
+ * Observes the default network with {@link ConnectivityManager}. On Android 7.0 and newer it
+ * uses a default network callback, while on older versions it listens for the connectivity
+ * change broadcasts, which don't provide validation and bandwidth information.
+ * Requires the {@code ACCESS_NETWORK_STATE} permission, which is declared by the library.
+ *
+ * @author Aleksandar Gotev
+ */
+public class ConnectivityNetworkMonitor implements NetworkMonitor {
+
+    private static final String LOG_TAG = ConnectivityNetworkMonitor.class.getSimpleName();
+
+    private Context context;
+    private ConnectivityManager connectivityManager;
+    private Listener listener;
+    private ConnectivityManager.NetworkCallback networkCallback;
+    private BroadcastReceiver connectivityReceiver;
+    private volatile NetworkState state = NetworkState.DISCONNECTED;
+
+    @Override
+    public void start(Context context, Listener listener) {
+        this.context = context;
+        this.listener = listener;
+        connectivityManager = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+
+        if (connectivityManager == null) {
+            Logger.error(LOG_TAG, "Connectivity manager not available, network changes will not be observed");
+            return;
+        }
+
+        state = readCurrentState();
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            networkCallback = new ConnectivityManager.NetworkCallback() {
+                @Override
+                public void onAvailable(Network network) {
+                    // capabilities are not always reported for a new network before Android 8.0
+                    update(fromCapabilities(connectivityManager.getNetworkCapabilities(network)));
+                }
+
+                @Override
+                public void onCapabilitiesChanged(Network network, NetworkCapabilities capabilities) {
+                    update(fromCapabilities(capabilities));
+                }
+
+                @Override
+                public void onLost(Network network) {
+                    update(NetworkState.DISCONNECTED);
+                }
+            };
+            connectivityManager.registerDefaultNetworkCallback(networkCallback);
+
+        } else {
+            connectivityReceiver = new BroadcastReceiver() {
+                @Override
+                public void onReceive(Context context, Intent intent) {
+                    update(readCurrentState());
+                }
+            };
+            context.registerReceiver(connectivityReceiver,
+                    new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION));
+        }
+    }
+
+    @Override
+    public void stop() {
+        try {
+            if (networkCallback != null) {
+                connectivityManager.unregisterNetworkCallback(networkCallback);
+            }
+
+            if (connectivityReceiver != null) {
+                context.unregisterReceiver(connectivityReceiver);
+            }
+        } catch (Throwable exc) {
+            Logger.error(LOG_TAG, "Error while unregistering the network observer", exc);
+        }
+
+        networkCallback = null;
+        connectivityReceiver = null;
+        listener = null;
+    }
+
+    @Override
+    public NetworkState getCurrentState() {
+        return state;
+    }
+
+    private void update(NetworkState newState) {
+        if (newState.equals(state))
+            return;
+
+        Logger.debug(LOG_TAG, "Network state changed: " + newState);
+        state = newState;
+
+        Listener currentListener = listener;
+        if (currentListener != null) {
+            currentListener.onNetworkStateChanged(newState);
+        }
+    }
+
+    private NetworkState readCurrentState() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            Network network = connectivityManager.getActiveNetwork();
+            return network == null ? NetworkState.DISCONNECTED
+                    : fromCapabilities(connectivityManager.getNetworkCapabilities(network));
+        }
+
+        NetworkInfo info = connectivityManager.getActiveNetworkInfo();
+
+        if (info == null || !info.isConnected())
+            return NetworkState.DISCONNECTED;
+
+        return new NetworkState(true, true, !connectivityManager.isActiveNetworkMetered(),
+                info.isRoaming(), 0);
+    }
+
+    private NetworkState fromCapabilities(NetworkCapabilities capabilities) {
+        if (capabilities == null
+                || !capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET))
+            return NetworkState.DISCONNECTED;
+
+        boolean roaming;
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
+            roaming = !capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_NOT_ROAMING);
+        } else {
+            NetworkInfo info = connectivityManager.getActiveNetworkInfo();
+            roaming = info != null && info.isRoaming();
+        }
+
+        return new NetworkState(true,
+                capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_VALIDATED),
+                capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_NOT_METERED),
+                roaming, capabilities.getLinkUpstreamBandwidthKbps());
+    }
+}
@@ -0,0 +1,50 @@
+package net.gotev.uploadservice.network;
+
+import android.content.Context;
+
+/**
+ * Observes the network used to upload data. The upload service uses it to start the uploads
+ * whose {@link net.gotev.uploadservice.UploadConstraints} are met, and to retry the failed
+ * uploads as soon as a validated network is available.
+ * The default implementation is {@link ConnectivityNetworkMonitor}. You can provide a different
+ * one, for example a fake in your tests, with
+ * {@link net.gotev.uploadservice.UploadService#setNetworkMonitor(NetworkMonitor)}.
+ *
+ * @author Aleksandar Gotev
+ */
+public interface NetworkMonitor {
+
+    /**
+     * Receives the changes of the network state.
+     */
+    interface Listener {
+
+        /**
+         * Called when the network state changes. It can be called on any thread.
+         *
+         * @param state new network state
+         */
+        void onNetworkStateChanged(NetworkState state);
+    }
+
+    /**
+     * Starts observing the network. Called when the upload service is created.
+     *
+     * @param context upload service context
+     * @param listener listener to notify when the network state changes
+     */
+    void start(Context context, Listener listener);
+
+    /**
+     * Stops observing the network. Called when the upload service is destroyed.
+     */
+    void stop();
+
+    /**
+     * Gets the current network state. It's called by the worker threads before starting each
+     * upload, so it must be fast and must not block.
+     *
+     * @return network state
+     */
+    NetworkState getCurrentState();
+}
@@ -0,0 +1,98 @@
+package net.gotev.uploadservice.network;
+
+/**
+ * Immutable description of the network which is used by default to upload data.
+ *
+ * @author Aleksandar Gotev
+ */
+public final class NetworkState {
+
+    /**
+     * State used when there isn't any network.
+     */
+    public static final NetworkState DISCONNECTED = new NetworkState(false, false, false, false, 0);
+
+    private final boolean connected;
+    private final boolean validated;
+    private final boolean unmetered;
+    private final boolean roaming;
+    private final int upstreamBandwidthKbps;
+
+    /**
+     * Creates a new network state.
+     *
+     * @param connected true if the network provides internet access
+     * @param validated true if the internet access has been verified by the system
+     * @param unmetered true if the user is not charged for the data sent on this network
+     * @param roaming true if the network is a roaming one
+     * @param upstreamBandwidthKbps estimated upload bandwidth in Kbps, or 0 if unknown
+     */
+    public NetworkState(boolean connected, boolean validated, boolean unmetered, boolean roaming,
+                        int upstreamBandwidthKbps) {
+        this.connected = connected;
+        this.validated = validated;
+        this.unmetered = unmetered;
+        this.roaming = roaming;
+        this.upstreamBandwidthKbps = upstreamBandwidthKbps;
+    }
+
+    public boolean isConnected() {
+        return connected;
+    }
+
+    public boolean isValidated() {
+        return validated;
+    }
+
+    public boolean isUnmetered() {
+        return unmetered;
+    }
+
+    public boolean isRoaming() {
+        return roaming;
+    }
+
+    /**
+     * Gets the upload bandwidth estimated by the system.
+     *
+     * @return bandwidth in Kbps, or 0 if unknown
+     */
+    public int getUpstreamBandwidthKbps() {
+        return upstreamBandwidthKbps;
+    }
+
+    @Override
+    public boolean equals(Object object) {
+        if (this == object)
+            return true;
+
+        if (!(object instanceof NetworkState))
+            return false;
+
+        NetworkState other = (NetworkState) object;
+        return connected == other.connected && validated == other.validated
+                && unmetered == other.unmetered && roaming == other.roaming
+                && upstreamBandwidthKbps == other.upstreamBandwidthKbps;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = (connected ? 1 : 0);
+        result = 31 * result + (validated ? 1 : 0);
+        result = 31 * result + (unmetered ? 1 : 0);
+        result = 31 * result + (roaming ? 1 : 0);
+        result = 31 * result + upstreamBandwidthKbps;
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        if (!connected)
+            return "disconnected";
+
+        return (validated ? "validated" : "not validated")
+                + (unmetered ? ", unmetered" : ", metered")
+                + (roaming ? ", roaming" : "")
+                + (upstreamBandwidthKbps > 0 ? ", " + upstreamBandwidthKbps + " Kbps" : "");
+    }
+}
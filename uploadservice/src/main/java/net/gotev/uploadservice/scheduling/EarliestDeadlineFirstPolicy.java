@@ -0,0 +1,31 @@
+package net.gotev.uploadservice.scheduling;
+
+import java.util.List;
+
+/**
+ * Starts first the upload with the earliest deadline, set with
+ * {@link net.gotev.uploadservice.UploadRequest#setDeadline(long)}. Uploads without a deadline
+ * are started after the ones which have it. Uploads with the same deadline are started in the
+ * order in which they have been enqueued.
+ *
+ * @author Aleksandar Gotev
+ */
+public class EarliestDeadlineFirstPolicy implements SchedulingPolicy {
+
+    @Override
+    public int selectNext(List<? extends WaitingUpload> waiting) {
+        int earliest = 0;
+        long earliestDeadline = Long.MAX_VALUE;
+
+        for (int i = 0; i < waiting.size(); i++) {
+            long deadline = waiting.get(i).getParams().deadline;
+
+            if (deadline > 0 && deadline < earliestDeadline) {
+                earliest = i;
+                earliestDeadline = deadline;
+            }
+        }
+
+        return earliest;
+    }
+}
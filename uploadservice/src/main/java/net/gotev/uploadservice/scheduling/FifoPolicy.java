@@ -0,0 +1,16 @@
+package net.gotev.uploadservice.scheduling;
+
+import java.util.List;
+
+/**
+ * Starts the uploads in the order in which they have been enqueued. This is the default policy.
+ *
+ * @author Aleksandar Gotev
+ */
+public class FifoPolicy implements SchedulingPolicy {
+
+    @Override
+    public int selectNext(List<? extends WaitingUpload> waiting) {
+        return 0;
+    }
+}
@@ -0,0 +1,27 @@
+package net.gotev.uploadservice.scheduling;
+
+import java.util.List;
+
+/**
+ * Decides in which order the queued uploads are started, when a worker thread becomes free.
+ * Uploads with a higher priority always start first, so the policy chooses only among the
+ * waiting uploads which have the highest priority.
+ * <p>
+ * The policy is called by the worker threads while holding the lock of the upload queue,
+ * so its implementation must be fast and must not block. For this reason it never gets a
+ * context to query the files, and it gets their length from {@link WaitingUpload} instead.
+ * Set it with {@link net.gotev.uploadservice.UploadService#setSchedulingPolicy(SchedulingPolicy)}.
+ *
+ * @author Aleksandar Gotev
+ */
+public interface SchedulingPolicy {
+
+    /**
+     * Chooses the next upload to start. The chosen upload starts right after this call.
+     *
+     * @param waiting waiting uploads, in the order in which they have been enqueued.
+     *                It's never empty and it must not be modified.
+     * @return index of the upload to start
+     */
+    int selectNext(List<? extends WaitingUpload> waiting);
+}
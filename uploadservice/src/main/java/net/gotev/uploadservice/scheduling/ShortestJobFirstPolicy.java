@@ -0,0 +1,34 @@
+package net.gotev.uploadservice.scheduling;
+
+import java.util.List;
+
+/**
+ * Starts first the upload with the smallest total length of its files, which minimizes the
+ * mean completion time when small and big uploads are mixed in the queue.
+ * Uploads with the same length are started in the order in which they have been enqueued,
+ * and uploads whose length is unknown are started after the others.
+ * <p>
+ * Big uploads can wait for a long time if small uploads keep arriving. Use upload priorities
+ * if some of them must not be delayed.
+ *
+ * @author Aleksandar Gotev
+ */
+public class ShortestJobFirstPolicy implements SchedulingPolicy {
+
+    @Override
+    public int selectNext(List<? extends WaitingUpload> waiting) {
+        int shortest = 0;
+        long shortestLength = Long.MAX_VALUE;
+
+        for (int i = 0; i < waiting.size(); i++) {
+            long length = waiting.get(i).getTotalBytes();
+
+            if (length >= 0 && length < shortestLength) {
+                shortest = i;
+                shortestLength = length;
+            }
+        }
+
+        return shortest;
+    }
+}
@@ -0,0 +1,25 @@
+package net.gotev.uploadservice.scheduling;
+
+import net.gotev.uploadservice.UploadTaskParameters;
+
+/**
+ * Upload waiting in the queue, as seen by a {@link SchedulingPolicy}.
+ *
+ * @author Aleksandar Gotev
+ */
+public interface WaitingUpload {
+
+    /**
+     * Gets the parameters of the upload. They must not be modified.
+     * @return upload parameters
+     */
+    UploadTaskParameters getParams();
+
+    /**
+     * Gets the total length of the files of the upload. It's computed the first time it's
+     * requested, which may query the files, and then it's cheap to get. Policies which don't
+     * need it should not call it.
+     * @return length in bytes, or -1 if the length of some file is unknown
+     */
+    long getTotalBytes();
+}
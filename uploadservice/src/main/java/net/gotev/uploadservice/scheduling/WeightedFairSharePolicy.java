@@ -0,0 +1,104 @@
+package net.gotev.uploadservice.scheduling;
+
+import net.gotev.uploadservice.UploadTaskParameters;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Shares the upload bandwidth among groups of uploads, identified by the first tag of each
+ * upload (see {@link net.gotev.uploadservice.UploadRequest#addTag(String)}), so that a big
+ * backlog of one group can't monopolise the device. Untagged uploads form a group on their own.
+ * <p>
+ * Every group gets a share proportional to its weight, which is 1 by default. The next upload
+ * to start is the first one of the group which received the least bytes relative to its
+ * weight. A group which becomes active again doesn't get credit for the time it has been idle.
+ *
+ * @author Aleksandar Gotev
+ */
+public class WeightedFairSharePolicy implements SchedulingPolicy {
+
+    private static final String UNTAGGED = "";
+
+    private final Map<String, Double> weights = new HashMap<>();
+
+    // bytes started by each group, divided by the group weight
+    private final Map<String, Double> served = new HashMap<>();
+
+    /**
+     * Sets the weight of a group of uploads.
+     *
+     * @param tag tag which identifies the group
+     * @param weight weight of the group. Must be greater than 0
+     * @return {@link WeightedFairSharePolicy}
+     */
+    public synchronized WeightedFairSharePolicy setWeight(String tag, double weight) {
+        if (weight <= 0)
+            throw new IllegalArgumentException("weight must be greater than 0");
+
+        weights.put(tag, weight);
+        return this;
+    }
+
+    @Override
+    public synchronized int selectNext(List<? extends WaitingUpload> waiting) {
+        // groups which have not been served yet, or which have been idle, start from the
+        // least served active group
+        double minServed = Double.MAX_VALUE;
+
+        for (WaitingUpload upload : waiting) {
+            Double groupServed = served.get(getGroup(upload.getParams()));
+            if (groupServed != null && groupServed < minServed) {
+                minServed = groupServed;
+            }
+        }
+
+        if (minServed == Double.MAX_VALUE) {
+            minServed = 0;
+        }
+
+        Map<String, Double> active = new HashMap<>();
+        int next = 0;
+        double nextServed = Double.MAX_VALUE;
+
+        for (int i = 0; i < waiting.size(); i++) {
+            String group = getGroup(waiting.get(i).getParams());
+
+            if (active.containsKey(group))
+                continue;
+
+            Double groupServed = served.get(group);
+            double value = groupServed == null ? minServed : Math.max(groupServed, minServed);
+            active.put(group, value);
+
+            if (value < nextServed) {
+                next = i;
+                nextServed = value;
+            }
+        }
+
+        WaitingUpload selected = waiting.get(next);
+        String group = getGroup(selected.getParams());
+
+        // every upload costs at least a byte, so that empty uploads and uploads whose length
+        // is unknown are shared too
+        long cost = Math.max(selected.getTotalBytes(), 1);
+        active.put(group, nextServed + cost / getWeight(group));
+
+        // forget the groups which are not waiting anymore
+        served.clear();
+        served.putAll(active);
+
+        return next;
+    }
+
+    private double getWeight(String group) {
+        Double weight = weights.get(group);
+        return weight == null ? 1 : weight;
+    }
+
+    private static String getGroup(UploadTaskParameters params) {
+        return params.tags.isEmpty() ? UNTAGGED : params.tags.get(0);
+    }
+}
@@ -1,15 +1,22 @@
 package net.gotev.uploadservice.schemehandlers;
 
-import java.lang.reflect.InvocationTargetException;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
 /**
  * Factory which instantiates the proper scheme handler based on the scheme passed.
+ * Handlers are created by the registered creators, without using reflection.
  * @author gotev
  */
 public class SchemeHandlerFactory {
 
+    /**
+     * Creates new instances of a scheme handler.
+     */
+    public interface Creator {
+        SchemeHandler create();
+    }
+
     private static class LazyHolder {
         private static final SchemeHandlerFactory INSTANCE = new SchemeHandlerFactory();
     }
@@ -18,20 +25,30 @@ public class SchemeHandlerFactory {
         return LazyHolder.INSTANCE;
     }
 
-    private LinkedHashMap<String, Class<? extends SchemeHandler>> handlers = new LinkedHashMap<>();
+    private final LinkedHashMap<String, Creator> handlers = new LinkedHashMap<>();
 
     private SchemeHandlerFactory() {
-        handlers.put("/", FileSchemeHandler.class);
-        handlers.put("content://", ContentSchemeHandler.class);
+        handlers.put("/", FileSchemeHandler::new);
+        handlers.put("content://", ContentSchemeHandler::new);
     }
 
-    public SchemeHandler get(String path)
-            throws NoSuchMethodException, IllegalAccessException,
-                   InvocationTargetException, InstantiationException {
+    /**
+     * Registers the handler to use for the paths which start with the given scheme.
+     * Register custom handlers when your app starts, before creating any upload request.
+     * @param scheme scheme prefix, e.g. content://
+     * @param creator creator of the handler instances
+     */
+    public synchronized void register(String scheme, Creator creator) {
+        if (scheme == null || scheme.isEmpty() || creator == null)
+            throw new IllegalArgumentException("Scheme and creator must not be null or empty!");
+
+        handlers.put(scheme, creator);
+    }
 
-        for (Map.Entry<String, Class<? extends SchemeHandler>> handler : handlers.entrySet()) {
+    public synchronized SchemeHandler get(String path) {
+        for (Map.Entry<String, Creator> handler : handlers.entrySet()) {
             if (path.startsWith(handler.getKey())) {
-                SchemeHandler schemeHandler = handler.getValue().newInstance();
+                SchemeHandler schemeHandler = handler.getValue().create();
                 schemeHandler.init(path);
                 return schemeHandler;
             }
@@ -40,7 +57,7 @@ public class SchemeHandlerFactory {
         throw new UnsupportedOperationException("No handlers for " + path);
     }
 
-    public boolean isSupported(String path) {
+    public synchronized boolean isSupported(String path) {
         for (String scheme : handlers.keySet()) {
             if (path.startsWith(scheme))
                 return true;
@@ -0,0 +1,111 @@
+package net.gotev.uploadservice;
+
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests of {@link FileListStore}, which keeps big file lists out of the upload intents.
+ *
+ * @author Aleksandar Gotev
+ */
+public class FileListStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @BeforeClass
+    public static void disableLogs() {
+        Logger.setLogLevel(Logger.LogLevel.OFF);
+    }
+
+    @Test
+    public void listIsReadBackAndDeleted() throws IOException {
+        List<UploadFile> files = new ArrayList<>();
+
+        for (int i = 0; i < 1000; i++) {
+            UploadFile file = UploadFile.Builder.newInstance("/sdcard/photo" + i + ".jpg")
+                    .setParameterName("photo")
+                    .setContentType(i % 2 == 0 ? "image/jpeg" : null)
+                    .build();
+            file.setProperty(MultipartUploadTask.PROPERTY_PARAM_NAME, "photo" + i);
+            file.setProperty("custom", "value" + i);
+            files.add(file);
+        }
+
+        // longer than what writeUTF supports, and with characters outside ASCII
+        char[] longValue = new char[100_000];
+        Arrays.fill(longValue, '\u00e8');
+        files.get(0).setProperty("long", new String(longValue));
+        files.get(1).setProperty("missing", null);
+
+        String path = FileListStore.write(folder.getRoot(), files);
+        ArrayList<UploadFile> read = FileListStore.read(path);
+
+        assertFalse("the list must be deleted once read", new File(path).exists());
+        assertEquals(files, read);
+
+        for (int i = 0; i < files.size(); i++) {
+            UploadFile expected = files.get(i);
+            UploadFile actual = read.get(i);
+
+            assertEquals(expected.getParameterName(), actual.getParameterName());
+            assertEquals(expected.getContentType() == null ? "" : expected.getContentType(),
+                    actual.getContentType());
+            assertEquals("photo" + i, actual.getProperty(MultipartUploadTask.PROPERTY_PARAM_NAME));
+            assertEquals("value" + i, actual.getProperty("custom"));
+        }
+
+        assertEquals(new String(longValue), read.get(0).getProperty("long"));
+        assertNull(read.get(1).getProperty("missing"));
+    }
+
+    @Test
+    public void listCanBeReadOnlyOnce() throws IOException {
+        String path = FileListStore.write(folder.getRoot(), files("/sdcard/a.jpg"));
+        FileListStore.read(path);
+
+        try {
+            FileListStore.read(path);
+            fail("a list which has been read must not be available anymore");
+        } catch (IOException expected) {
+        }
+    }
+
+    @Test
+    public void listsNeverReadAreDeletedByLaterWrites() throws IOException {
+        File directory = folder.getRoot();
+        File expired = new File(FileListStore.write(directory, files("/sdcard/a.jpg")));
+        File recent = new File(FileListStore.write(directory, files("/sdcard/b.jpg")));
+
+        assertTrue(expired.setLastModified(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(2)));
+        FileListStore.write(directory, files("/sdcard/c.jpg"));
+
+        assertFalse(expired.exists());
+        assertTrue(recent.exists());
+    }
+
+    private static List<UploadFile> files(String... paths) {
+        List<UploadFile> files = new ArrayList<>();
+
+        for (String path : paths) {
+            files.add(UploadFile.Builder.newInstance(path).build());
+        }
+
+        return files;
+    }
+}
@@ -0,0 +1,99 @@
+package net.gotev.uploadservice;
+
+import net.gotev.uploadservice.network.FakeNetworkMonitor;
+import net.gotev.uploadservice.scheduling.FifoPolicy;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static net.gotev.uploadservice.network.FakeNetworkMonitor.CELLULAR;
+import static net.gotev.uploadservice.network.FakeNetworkMonitor.WIFI;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of {@link ForegroundState}, driven like the upload service does when it accepts,
+ * runs and finishes uploads.
+ *
+ * @author Aleksandar Gotev
+ */
+public class ForegroundStateTest {
+
+    @BeforeClass
+    public static void disableLogs() {
+        Logger.setLogLevel(Logger.LogLevel.OFF);
+    }
+
+    @Test
+    public void parkedUploadPutsTheServiceInTheForeground() {
+        FakeNetworkMonitor monitor = new FakeNetworkMonitor(CELLULAR);
+        UploadQueue queue = new UploadQueue();
+        ForegroundState foreground = new ForegroundState();
+
+        QueuedUpload wifiOnly = newUpload("wifiOnly", new UploadConstraints().setUnmeteredOnly(true));
+        queue.add(wifiOnly);
+        assertTrue("the service must enter the foreground when it accepts an upload",
+                foreground.enter());
+
+        // the upload is parked, so no task ever posts its notification
+        assertNull(queue.poll(new FifoPolicy(), monitor.getCurrentState()));
+        assertTrue(foreground.isInForeground());
+        assertNull(foreground.getHolder());
+
+        // more accepted uploads don't post the notification again
+        queue.add(newUpload("another", new UploadConstraints().setUnmeteredOnly(true)));
+        assertFalse(foreground.enter());
+        assertTrue(foreground.isInForeground());
+
+        // once the network changes the task starts and replaces the notification
+        monitor.setState(WIFI);
+        assertSame(wifiOnly, queue.poll(new FifoPolicy(), monitor.getCurrentState()));
+        assertTrue(foreground.hold(wifiOnly.id));
+        assertEquals(wifiOnly.id, foreground.getHolder());
+    }
+
+    @Test
+    public void onlyOneTaskHoldsTheNotification() {
+        ForegroundState foreground = new ForegroundState();
+        assertTrue(foreground.enter());
+
+        assertTrue(foreground.hold("first"));
+        assertFalse(foreground.hold("second"));
+        assertTrue(foreground.hold("first"));
+
+        assertFalse(foreground.release("second"));
+        assertTrue(foreground.release("first"));
+        assertNull(foreground.getHolder());
+
+        // the service stays in the foreground while other uploads are waiting
+        assertTrue(foreground.isInForeground());
+        assertTrue(foreground.hold("second"));
+    }
+
+    @Test
+    public void leavesTheForegroundOnce() {
+        ForegroundState foreground = new ForegroundState();
+
+        assertFalse(foreground.leave());
+        assertTrue(foreground.enter());
+        assertTrue(foreground.hold("upload"));
+
+        assertTrue(foreground.leave());
+        assertFalse(foreground.isInForeground());
+        assertNull(foreground.getHolder());
+        assertFalse(foreground.leave());
+
+        // a new upload accepted after it left posts the notification again
+        assertTrue(foreground.enter());
+    }
+
+    private static QueuedUpload newUpload(String id, UploadConstraints constraints) {
+        UploadTaskParameters params = new UploadTaskParameters();
+        params.id = id;
+        params.constraints = constraints;
+        return new QueuedUpload(null, null, null, null, params, 0);
+    }
+}
@@ -0,0 +1,143 @@
+package net.gotev.uploadservice;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests of {@link TokenBucket}, driven by a fake clock, with a writer which waits like the
+ * upload tasks do.
+ *
+ * @author Aleksandar Gotev
+ */
+public class TokenBucketTest {
+
+    private static final int CHUNK = 4000;
+    private static final long RATE = 1_000_000;
+
+    // the bucket accumulates at most a fifth of a second of bytes while idle
+    private static final long MAX_BURST = RATE / 5;
+
+    private static final long ONE_SECOND = TimeUnit.SECONDS.toNanos(1);
+    private static final long NANOS_PER_BYTE = ONE_SECOND / RATE;
+
+    @Test
+    public void unlimitedBucketNeverWaits() {
+        FakeClock clock = new FakeClock();
+        TokenBucket bucket = new TokenBucket(0, clock);
+
+        for (int i = 0; i < 1000; i++) {
+            bucket.consume(CHUNK);
+        }
+
+        assertEquals(0, bucket.getWaitNanos());
+    }
+
+    @Test
+    public void debtIsRepaidAtTheRate() {
+        FakeClock clock = new FakeClock();
+        TokenBucket bucket = new TokenBucket(RATE, clock);
+
+        bucket.consume((int) RATE);
+        assertEquals(ONE_SECOND, bucket.getWaitNanos());
+
+        clock.advance(ONE_SECOND / 4);
+        assertEquals(ONE_SECOND * 3 / 4, bucket.getWaitNanos());
+
+        clock.advance(ONE_SECOND * 3 / 4);
+        assertEquals(0, bucket.getWaitNanos());
+    }
+
+    @Test
+    public void burstAfterIdleIsCapped() {
+        FakeClock clock = new FakeClock();
+        TokenBucket bucket = new TokenBucket(RATE, clock);
+
+        // idle for much longer than needed to fill the bucket
+        clock.advance(10 * ONE_SECOND);
+
+        bucket.consume((int) MAX_BURST);
+        assertEquals(0, bucket.getWaitNanos());
+
+        bucket.consume(1);
+        assertEquals(NANOS_PER_BYTE, bucket.getWaitNanos());
+    }
+
+    @Test
+    public void sustainedThroughputMatchesTheRate() {
+        FakeClock clock = new FakeClock();
+        TokenBucket bucket = new TokenBucket(RATE, clock);
+
+        write(bucket, clock, 10 * RATE);
+
+        // the last chunk is written in debt, so the writer doesn't wait for it
+        assertEquals((10 * RATE - CHUNK) * NANOS_PER_BYTE, clock.now);
+    }
+
+    @Test
+    public void throughputAfterIdleIsBoundedByTheBurst() {
+        FakeClock clock = new FakeClock();
+        TokenBucket bucket = new TokenBucket(RATE, clock);
+        clock.advance(10 * ONE_SECOND);
+
+        long start = clock.now;
+        write(bucket, clock, RATE + MAX_BURST);
+
+        // the burst is written right away, then the rate applies
+        assertEquals((RATE - CHUNK) * NANOS_PER_BYTE, clock.now - start);
+    }
+
+    @Test
+    public void rateChangeAppliesToWaitingWriters() {
+        FakeClock clock = new FakeClock();
+        TokenBucket bucket = new TokenBucket(RATE, clock);
+
+        bucket.consume((int) RATE);
+        assertEquals(ONE_SECOND, bucket.getWaitNanos());
+
+        bucket.setRate(RATE * 4);
+        assertEquals(ONE_SECOND / 4, bucket.getWaitNanos());
+
+        bucket.setRate(0);
+        assertEquals(0, bucket.getWaitNanos());
+
+        // the debt is forgotten when the limit is removed
+        bucket.setRate(RATE);
+        assertEquals(0, bucket.getWaitNanos());
+    }
+
+    /**
+     * Writes the given bytes in chunks, waiting before each chunk as long as the bucket says.
+     */
+    private static void write(TokenBucket bucket, FakeClock clock, long bytes) {
+        long written = 0;
+
+        while (written < bytes) {
+            long waitNanos = bucket.getWaitNanos();
+
+            if (waitNanos > 0) {
+                clock.advance(waitNanos);
+                continue;
+            }
+
+            int chunk = (int) Math.min(CHUNK, bytes - written);
+            bucket.consume(chunk);
+            written += chunk;
+        }
+    }
+
+    private static final class FakeClock implements TokenBucket.Clock {
+        long now = 0;
+
+        void advance(long nanos) {
+            now += nanos;
+        }
+
+        @Override
+        public long nanoTime() {
+            return now;
+        }
+    }
+}
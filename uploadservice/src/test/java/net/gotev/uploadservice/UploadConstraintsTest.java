@@ -0,0 +1,194 @@
+package net.gotev.uploadservice;
+
+import net.gotev.uploadservice.network.FakeNetworkMonitor;
+import net.gotev.uploadservice.network.NetworkMonitor;
+import net.gotev.uploadservice.network.NetworkState;
+import net.gotev.uploadservice.scheduling.FifoPolicy;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static net.gotev.uploadservice.network.FakeNetworkMonitor.CELLULAR;
+import static net.gotev.uploadservice.network.FakeNetworkMonitor.ROAMING;
+import static net.gotev.uploadservice.network.FakeNetworkMonitor.WIFI;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of {@link UploadConstraints}, with the network states provided by a
+ * {@link FakeNetworkMonitor}.
+ *
+ * @author Aleksandar Gotev
+ */
+public class UploadConstraintsTest {
+
+    private static final long NOON = at(12, 0, 0);
+
+    @BeforeClass
+    public static void disableLogs() {
+        Logger.setLogLevel(Logger.LogLevel.OFF);
+    }
+
+    @Test
+    public void noConstraintsAreAlwaysSatisfied() {
+        UploadConstraints constraints = new UploadConstraints();
+
+        assertTrue(constraints.isSatisfiedBy(NetworkState.DISCONNECTED, NOON));
+        assertTrue(constraints.isSatisfiedBy(ROAMING, NOON));
+        assertEquals(0, constraints.getTimeUntilOffPeak(NOON));
+    }
+
+    @Test
+    public void unmeteredOnly() {
+        FakeNetworkMonitor monitor = new FakeNetworkMonitor(CELLULAR);
+        UploadConstraints constraints = new UploadConstraints().setUnmeteredOnly(true);
+
+        assertFalse(constraints.isSatisfiedBy(monitor.getCurrentState(), NOON));
+
+        monitor.setState(WIFI);
+        assertTrue(constraints.isSatisfiedBy(monitor.getCurrentState(), NOON));
+
+        monitor.setState(NetworkState.DISCONNECTED);
+        assertFalse(constraints.isSatisfiedBy(monitor.getCurrentState(), NOON));
+    }
+
+    @Test
+    public void notRoaming() {
+        UploadConstraints constraints = new UploadConstraints().setNotRoaming(true);
+
+        assertTrue(constraints.isSatisfiedBy(CELLULAR, NOON));
+        assertFalse(constraints.isSatisfiedBy(ROAMING, NOON));
+        assertFalse(constraints.isSatisfiedBy(NetworkState.DISCONNECTED, NOON));
+    }
+
+    @Test
+    public void minBandwidthIsMetWhenTheEstimateIsUnknown() {
+        UploadConstraints constraints = new UploadConstraints().setMinBandwidthKbps(1000);
+
+        assertTrue(constraints.isSatisfiedBy(bandwidth(0), NOON));
+        assertFalse(constraints.isSatisfiedBy(bandwidth(999), NOON));
+        assertTrue(constraints.isSatisfiedBy(bandwidth(1000), NOON));
+        assertFalse(constraints.isSatisfiedBy(NetworkState.DISCONNECTED, NOON));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeMinBandwidthIsRejected() {
+        new UploadConstraints().setMinBandwidthKbps(-1);
+    }
+
+    @Test
+    public void offPeakWindowWithinTheDay() {
+        UploadConstraints constraints = new UploadConstraints().setOffPeakWindow(1, 0, 5, 0);
+
+        assertEquals(TimeUnit.MINUTES.toMillis(30), constraints.getTimeUntilOffPeak(at(0, 30, 0)));
+        assertEquals(0, constraints.getTimeUntilOffPeak(at(1, 0, 0)));
+        assertEquals(0, constraints.getTimeUntilOffPeak(at(4, 59, 59)));
+        assertEquals(TimeUnit.HOURS.toMillis(20), constraints.getTimeUntilOffPeak(at(5, 0, 0)));
+        assertEquals(TimeUnit.HOURS.toMillis(13), constraints.getTimeUntilOffPeak(NOON));
+
+        assertFalse(constraints.isSatisfiedBy(WIFI, NOON));
+        assertTrue(constraints.isSatisfiedBy(WIFI, at(3, 0, 0)));
+    }
+
+    @Test
+    public void offPeakWindowSpanningMidnight() {
+        UploadConstraints constraints = new UploadConstraints().setOffPeakWindow(23, 0, 6, 0);
+
+        assertEquals(0, constraints.getTimeUntilOffPeak(at(23, 0, 0)));
+        assertEquals(0, constraints.getTimeUntilOffPeak(at(23, 59, 59)));
+        assertEquals(0, constraints.getTimeUntilOffPeak(at(0, 0, 0)));
+        assertEquals(0, constraints.getTimeUntilOffPeak(at(5, 59, 59)));
+        assertEquals(TimeUnit.HOURS.toMillis(17), constraints.getTimeUntilOffPeak(at(6, 0, 0)));
+        assertEquals(TimeUnit.HOURS.toMillis(11), constraints.getTimeUntilOffPeak(NOON));
+        assertEquals(TimeUnit.SECONDS.toMillis(30),
+                constraints.getTimeUntilOffPeak(at(22, 59, 30)));
+
+        assertTrue(constraints.isSatisfiedBy(WIFI, at(2, 0, 0)));
+        assertFalse(constraints.isSatisfiedBy(WIFI, NOON));
+    }
+
+    @Test
+    public void offPeakWindowEndingAtMidnight() {
+        UploadConstraints constraints = new UploadConstraints().setOffPeakWindow(22, 0, 0, 0);
+
+        assertEquals(0, constraints.getTimeUntilOffPeak(at(23, 59, 59)));
+        assertEquals(TimeUnit.HOURS.toMillis(22), constraints.getTimeUntilOffPeak(at(0, 0, 0)));
+    }
+
+    @Test
+    public void networkAndTimeConstraintsMustBothBeMet() {
+        UploadConstraints constraints = new UploadConstraints()
+                .setUnmeteredOnly(true)
+                .setOffPeakWindow(23, 0, 6, 0);
+
+        assertTrue(constraints.isSatisfiedBy(WIFI, at(1, 0, 0)));
+        assertFalse(constraints.isSatisfiedBy(CELLULAR, at(1, 0, 0)));
+        assertFalse(constraints.isSatisfiedBy(WIFI, NOON));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void emptyOffPeakWindowIsRejected() {
+        new UploadConstraints().setOffPeakWindow(3, 0, 3, 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidOffPeakHourIsRejected() {
+        new UploadConstraints().setOffPeakWindow(24, 0, 3, 0);
+    }
+
+    @Test
+    public void parkedUploadStartsWhenTheNetworkChanges() {
+        FakeNetworkMonitor monitor = new FakeNetworkMonitor(CELLULAR);
+        final List<NetworkState> notified = new ArrayList<>();
+
+        monitor.start(null, new NetworkMonitor.Listener() {
+            @Override
+            public void onNetworkStateChanged(NetworkState state) {
+                notified.add(state);
+            }
+        });
+
+        UploadQueue queue = new UploadQueue();
+        QueuedUpload wifiOnly = newUpload("wifiOnly", new UploadConstraints().setUnmeteredOnly(true));
+        queue.add(wifiOnly);
+
+        assertNull(queue.poll(new FifoPolicy(), monitor.getCurrentState()));
+
+        monitor.setState(WIFI);
+        assertEquals(1, notified.size());
+        assertSame(WIFI, notified.get(0));
+        assertSame(wifiOnly, queue.poll(new FifoPolicy(), monitor.getCurrentState()));
+
+        monitor.stop();
+        assertFalse(monitor.isStarted());
+    }
+
+    private static QueuedUpload newUpload(String id, UploadConstraints constraints) {
+        UploadTaskParameters params = new UploadTaskParameters();
+        params.id = id;
+        params.constraints = constraints;
+        return new QueuedUpload(null, null, null, null, params, 0);
+    }
+
+    private static NetworkState bandwidth(int upstreamBandwidthKbps) {
+        return new NetworkState(true, true, false, false, upstreamBandwidthKbps);
+    }
+
+    /**
+     * Gets a timestamp at the given local time, on a day without daylight saving changes.
+     */
+    private static long at(int hour, int minute, int second) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.clear();
+        calendar.set(2026, Calendar.JANUARY, 15, hour, minute, second);
+        return calendar.getTimeInMillis();
+    }
+}
@@ -0,0 +1,368 @@
+package net.gotev.uploadservice;
+
+import net.gotev.uploadservice.network.NetworkState;
+import net.gotev.uploadservice.scheduling.FifoPolicy;
+import net.gotev.uploadservice.scheduling.SchedulingPolicy;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Stress tests of the state transitions of {@link QueuedUpload} and of {@link UploadQueue},
+ * with plain threads which add, poll, run and cancel uploads like the upload service does.
+ *
+ * @author Aleksandar Gotev
+ */
+public class UploadQueueConcurrencyTest {
+
+    private static final int ITERATIONS = 20_000;
+    private static final int PRODUCERS = 4;
+    private static final int UPLOADS_PER_PRODUCER = 2_000;
+    private static final int WORKERS = 6;
+    private static final String[] SERIAL_KEYS = {"a", "b", "c"};
+
+    private static final SchedulingPolicy FIFO = new FifoPolicy();
+
+    @BeforeClass
+    public static void disableLogs() {
+        Logger.setLogLevel(Logger.LogLevel.OFF);
+    }
+
+    @Test
+    public void cancelRacingWithWorkerHasSingleWinner() throws Exception {
+        final CyclicBarrier barrier = new CyclicBarrier(2);
+        final AtomicReference<QueuedUpload> current = new AtomicReference<>();
+        final boolean[] started = new boolean[ITERATIONS];
+
+        Thread worker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < ITERATIONS; i++) {
+                    await(barrier);
+                    QueuedUpload upload = current.get();
+                    started[i] = upload.startMaterializing() && upload.start();
+                    await(barrier);
+                }
+            }
+        });
+        worker.start();
+
+        for (int i = 0; i < ITERATIONS; i++) {
+            QueuedUpload upload = newUpload("upload" + i, 0, null);
+            current.set(upload);
+            await(barrier);
+            int previousState = upload.cancel();
+            await(barrier);
+
+            // the upload is either started by the worker or cancelled, never both
+            if (started[i]) {
+                assertEquals(QueuedUpload.STATE_STARTED, previousState);
+            } else {
+                assertTrue("unexpected state " + previousState,
+                        previousState == QueuedUpload.STATE_QUEUED
+                                || previousState == QueuedUpload.STATE_MATERIALIZING);
+            }
+
+            assertFalse(upload.startMaterializing());
+            assertFalse(upload.start());
+            assertEquals(started[i] ? QueuedUpload.STATE_STARTED : QueuedUpload.STATE_CANCELLED,
+                    upload.cancel());
+        }
+
+        worker.join();
+    }
+
+    @Test
+    public void concurrentCancelsReportTheUploadOnce() throws Exception {
+        final int threads = 4;
+        final CyclicBarrier barrier = new CyclicBarrier(threads);
+        final AtomicReference<QueuedUpload> current = new AtomicReference<>();
+        final AtomicInteger winners = new AtomicInteger();
+        List<Thread> cancellers = new ArrayList<>();
+
+        for (int t = 0; t < threads; t++) {
+            final boolean first = t == 0;
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < ITERATIONS; i++) {
+                        if (first) {
+                            current.set(newUpload("upload" + i, 0, null));
+                        }
+                        await(barrier);
+
+                        if (current.get().cancel() == QueuedUpload.STATE_QUEUED) {
+                            winners.incrementAndGet();
+                        }
+                        await(barrier);
+                    }
+                }
+            });
+            cancellers.add(thread);
+            thread.start();
+        }
+
+        for (Thread thread : cancellers) {
+            thread.join();
+        }
+
+        assertEquals(ITERATIONS, winners.get());
+    }
+
+    @Test
+    public void stressAddPollCancel() throws Exception {
+        final UploadQueue queue = new UploadQueue();
+        final int total = PRODUCERS * UPLOADS_PER_PRODUCER;
+
+        // how every upload ended: started or cancelled. It must end only once
+        final Map<String, String> endings = new ConcurrentHashMap<>();
+        final Map<String, Boolean> succeeded = new ConcurrentHashMap<>();
+        final Map<String, String> runningBySerialKey = new ConcurrentHashMap<>();
+        final ConcurrentLinkedQueue<String> errors = new ConcurrentLinkedQueue<>();
+        final AtomicInteger finished = new AtomicInteger();
+        final CountDownLatch producersDone = new CountDownLatch(PRODUCERS);
+
+        final UploadLifecycle lifecycle = new UploadLifecycle() {
+            @Override
+            public void finish(QueuedUpload upload, boolean successful, String ending) {
+                if (endings.put(upload.id, ending) != null) {
+                    errors.add(upload.id + " ended twice");
+                }
+
+                if (successful) {
+                    succeeded.put(upload.id, true);
+                }
+
+                // what the service does when an upload is done
+                queue.recordOutcome(upload.id, successful);
+                queue.releaseSerialKey(upload.params);
+                finished.incrementAndGet();
+
+                if (!successful) {
+                    for (QueuedUpload failed : queue.takeUploadsWithFailedDependencies()) {
+                        finish(failed, false, "dependency failed");
+                    }
+                }
+            }
+        };
+
+        List<Thread> threads = new ArrayList<>();
+
+        for (int p = 0; p < PRODUCERS; p++) {
+            final int producer = p;
+            threads.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Random random = new Random(producer);
+                    String previous = null;
+
+                    for (int i = 0; i < UPLOADS_PER_PRODUCER; i++) {
+                        String key = random.nextInt(4) == 0
+                                ? SERIAL_KEYS[random.nextInt(SERIAL_KEYS.length)] : null;
+                        QueuedUpload upload = newUpload("p" + producer + "-" + i,
+                                random.nextInt(3), key);
+
+                        // some uploads depend on the previous one of the same producer
+                        if (previous != null && random.nextInt(4) == 0) {
+                            upload.params.dependencies.add(previous);
+                        }
+
+                        if (!queue.add(upload)) {
+                            errors.add(upload.id + " not added");
+                        }
+
+                        if (queue.getFailedDependencyOf(upload) != null) {
+                            for (QueuedUpload failed : queue.takeUploadsWithFailedDependencies()) {
+                                lifecycle.finish(failed, false, "dependency failed");
+                            }
+                        }
+
+                        previous = upload.id;
+                    }
+
+                    producersDone.countDown();
+                }
+            }));
+        }
+
+        for (int w = 0; w < WORKERS; w++) {
+            threads.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    while (finished.get() < total) {
+                        QueuedUpload next = queue.poll(FIFO, NetworkState.DISCONNECTED);
+
+                        if (next == null) {
+                            Thread.yield();
+                            continue;
+                        }
+
+                        if (!next.start()) {
+                            // cancelled while its task was being created
+                            queue.remove(next);
+                            lifecycle.finish(next, false, "cancelled");
+                            continue;
+                        }
+
+                        queue.remove(next);
+                        run(next);
+                        lifecycle.finish(next, true, "started");
+                    }
+                }
+
+                private void run(QueuedUpload upload) {
+                    for (String dependency : upload.params.dependencies) {
+                        if (!succeeded.containsKey(dependency)) {
+                            errors.add(upload.id + " started before " + dependency);
+                        }
+                    }
+
+                    String key = upload.params.serialKey;
+                    if (key != null && runningBySerialKey.putIfAbsent(key, upload.id) != null) {
+                        errors.add(upload.id + " runs with " + runningBySerialKey.get(key));
+                    }
+
+                    Thread.yield();
+
+                    if (key != null) {
+                        runningBySerialKey.remove(key, upload.id);
+                    }
+                }
+            }));
+        }
+
+        threads.add(new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Random random = new Random(PRODUCERS);
+
+                // cancels uploads while they are being added and polled
+                while (producersDone.getCount() > 0 || finished.get() < total) {
+                    for (QueuedUpload upload : queue.getAll()) {
+                        if (random.nextInt(200) != 0)
+                            continue;
+
+                        if (upload.cancel() == QueuedUpload.STATE_QUEUED) {
+                            // the worker reports the uploads whose task is being created
+                            queue.remove(upload);
+                            lifecycle.finish(upload, false, "cancelled");
+                        }
+                    }
+                    Thread.yield();
+                }
+            }
+        }));
+
+        for (Thread thread : threads) {
+            thread.start();
+        }
+
+        for (Thread thread : threads) {
+            thread.join(TimeUnit.SECONDS.toMillis(60));
+            assertFalse("stuck with " + finished.get() + " of " + total + " uploads finished. "
+                    + "Errors: " + errors, thread.isAlive());
+        }
+
+        assertTrue(errors.toString(), errors.isEmpty());
+        assertEquals(total, endings.size());
+        assertEquals(total, finished.get());
+        assertTrue(queue.isEmpty());
+        assertNull(queue.poll(FIFO, NetworkState.DISCONNECTED));
+    }
+
+    @Test
+    public void finishedUploadStartsAllItsDependentsTogether() throws Exception {
+        final int dependents = 3;
+        final UploadQueue queue = new UploadQueue();
+        final ConcurrentLinkedQueue<String> started = new ConcurrentLinkedQueue<>();
+        final ConcurrentLinkedQueue<String> errors = new ConcurrentLinkedQueue<>();
+
+        // each dependent keeps running until all of them are running
+        final CyclicBarrier running = new CyclicBarrier(dependents);
+
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(dependents, dependents, 1,
+                TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+
+        QueuedUpload parent = newUpload("parent", 0, null);
+        queue.add(parent);
+
+        for (int i = 0; i < dependents; i++) {
+            QueuedUpload upload = newUpload("child" + i, 0, null);
+            upload.params.dependencies.add(parent.id);
+            queue.add(upload);
+        }
+
+        assertSame(parent, queue.poll(FIFO, NetworkState.DISCONNECTED));
+        assertTrue(parent.start());
+        queue.remove(parent);
+        assertNull(queue.poll(FIFO, NetworkState.DISCONNECTED));
+
+        Runnable dispatcher = new Runnable() {
+            @Override
+            public void run() {
+                QueuedUpload next = queue.poll(FIFO, NetworkState.DISCONNECTED);
+                if (next == null || !next.start())
+                    return;
+
+                queue.remove(next);
+                started.add(next.id);
+
+                try {
+                    running.await(5, TimeUnit.SECONDS);
+                } catch (Exception exc) {
+                    errors.add(next.id + " ran alone");
+                }
+            }
+        };
+
+        // what the service does when the parent is done
+        queue.recordOutcome(parent.id, true);
+        UploadService.dispatchQueuedUploads(pool, queue, dispatcher);
+
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(30, TimeUnit.SECONDS));
+        assertEquals(dependents, started.size());
+        assertTrue(errors.toString(), errors.isEmpty());
+        assertTrue(queue.isEmpty());
+    }
+
+    private interface UploadLifecycle {
+        void finish(QueuedUpload upload, boolean successful, String ending);
+    }
+
+    private static QueuedUpload newUpload(String id, int priority, String serialKey) {
+        UploadTaskParameters params = new UploadTaskParameters();
+        params.id = id;
+        params.priority = priority;
+        params.serialKey = serialKey;
+        return new QueuedUpload(null, null, null, null, params, 0);
+    }
+
+    private static void await(CyclicBarrier barrier) {
+        try {
+            barrier.await(10, TimeUnit.SECONDS);
+        } catch (Exception exc) {
+            throw new IllegalStateException(exc);
+        }
+    }
+}
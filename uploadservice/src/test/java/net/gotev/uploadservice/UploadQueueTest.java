@@ -0,0 +1,211 @@
+package net.gotev.uploadservice;
+
+import net.gotev.uploadservice.network.NetworkState;
+import net.gotev.uploadservice.scheduling.FifoPolicy;
+import net.gotev.uploadservice.scheduling.SchedulingPolicy;
+import net.gotev.uploadservice.scheduling.WaitingUpload;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static net.gotev.uploadservice.network.FakeNetworkMonitor.CELLULAR;
+import static net.gotev.uploadservice.network.FakeNetworkMonitor.WIFI;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of the order in which {@link UploadQueue} gives the uploads to the worker threads,
+ * and of {@link UploadQueue#canStartNow}, which decides if a new upload can preempt a running
+ * one.
+ *
+ * @author Aleksandar Gotev
+ */
+public class UploadQueueTest {
+
+    private static final FifoPolicy FIFO = new FifoPolicy();
+    private static final int LOW_PRIORITY = UploadRequest.PRIORITY_DEFAULT;
+    private static final int HIGH_PRIORITY = UploadRequest.PRIORITY_DEFAULT + 10;
+
+    @BeforeClass
+    public static void disableLogs() {
+        Logger.setLogLevel(Logger.LogLevel.OFF);
+    }
+
+    @Test
+    public void uploadBlockedOnDependencyCantStart() {
+        UploadQueue queue = new UploadQueue();
+        QueuedUpload dependency = newUpload("dependency", LOW_PRIORITY);
+        queue.add(dependency);
+
+        // the dependency is running
+        assertSame(dependency, queue.poll(FIFO, WIFI));
+        assertTrue(dependency.start());
+        queue.remove(dependency);
+
+        QueuedUpload urgent = newUpload("urgent", HIGH_PRIORITY);
+        urgent.params.dependencies.add(dependency.id);
+        queue.add(urgent);
+
+        // preempting the dependency would only delay the urgent upload
+        assertFalse(queue.canStartNow(urgent, WIFI, System.currentTimeMillis()));
+
+        queue.recordOutcome(dependency.id, true);
+        assertTrue(queue.canStartNow(urgent, WIFI, System.currentTimeMillis()));
+    }
+
+    @Test
+    public void uploadWaitingForItsSerialKeyCantStart() {
+        UploadQueue queue = new UploadQueue();
+        QueuedUpload holder = newUpload("holder", LOW_PRIORITY);
+        holder.params.serialKey = "album";
+        queue.add(holder);
+
+        assertSame(holder, queue.poll(FIFO, WIFI));
+        assertTrue(holder.start());
+        queue.remove(holder);
+
+        QueuedUpload urgent = newUpload("urgent", HIGH_PRIORITY);
+        urgent.params.serialKey = "album";
+        queue.add(urgent);
+
+        assertFalse(queue.canStartNow(urgent, WIFI, System.currentTimeMillis()));
+
+        queue.recordOutcome(holder.id, true);
+        queue.releaseSerialKey(holder.params);
+        assertTrue(queue.canStartNow(urgent, WIFI, System.currentTimeMillis()));
+    }
+
+    @Test
+    public void uploadWithUnmetConstraintsCantStart() {
+        UploadQueue queue = new UploadQueue();
+        QueuedUpload wifiOnly = newUpload("wifiOnly", HIGH_PRIORITY);
+        wifiOnly.params.constraints = new UploadConstraints().setUnmeteredOnly(true);
+        queue.add(wifiOnly);
+
+        assertFalse(queue.canStartNow(wifiOnly, CELLULAR, System.currentTimeMillis()));
+        assertFalse(queue.canStartNow(wifiOnly, NetworkState.DISCONNECTED, System.currentTimeMillis()));
+        assertTrue(queue.canStartNow(wifiOnly, WIFI, System.currentTimeMillis()));
+    }
+
+    @Test
+    public void cancelledUploadCantStart() {
+        UploadQueue queue = new UploadQueue();
+        QueuedUpload upload = newUpload("upload", HIGH_PRIORITY);
+        queue.add(upload);
+
+        assertTrue(queue.canStartNow(upload, WIFI, System.currentTimeMillis()));
+
+        upload.cancel();
+        assertFalse(queue.canStartNow(upload, WIFI, System.currentTimeMillis()));
+    }
+
+    @Test
+    public void fifoTakesUploadsInArrivalOrder() {
+        UploadQueue queue = new UploadQueue();
+        int added = 0;
+        int expected = 0;
+
+        // uploads keep arriving while the first ones are taken, and some get cancelled
+        for (int round = 0; round < 100; round++) {
+            for (int i = 0; i < 1000; i++) {
+                QueuedUpload upload = newUpload(Integer.toString(added), LOW_PRIORITY);
+                queue.add(upload);
+
+                if (isCancelled(added)) {
+                    upload.cancel();
+                }
+                added++;
+            }
+
+            for (int i = 0; i < 500; i++) {
+                expected = assertNextIs(queue, expected);
+            }
+        }
+
+        while (expected < added) {
+            expected = assertNextIs(queue, expected);
+        }
+
+        assertNull(queue.poll(FIFO, WIFI));
+    }
+
+    private static boolean isCancelled(int index) {
+        return index % 7 == 0;
+    }
+
+    /**
+     * Polls the queue expecting the upload with the given index, or the first one after it
+     * which has not been cancelled.
+     * @return index of the upload which is expected next
+     */
+    private static int assertNextIs(UploadQueue queue, int expected) {
+        while (isCancelled(expected)) {
+            expected++;
+        }
+
+        QueuedUpload next = queue.poll(FIFO, WIFI);
+        assertEquals(Integer.toString(expected), next.id);
+        queue.remove(next);
+        return expected + 1;
+    }
+
+    @Test
+    public void policySeesTheStartableUploadsInArrivalOrder() {
+        UploadQueue queue = new UploadQueue();
+        List<QueuedUpload> uploads = new ArrayList<>();
+
+        for (int i = 0; i < 5; i++) {
+            QueuedUpload upload = newUpload("upload" + i, LOW_PRIORITY);
+            uploads.add(upload);
+            queue.add(upload);
+        }
+
+        uploads.get(1).cancel();
+        uploads.get(3).params.constraints = new UploadConstraints().setUnmeteredOnly(true);
+
+        RecordingPolicy lastOne = new RecordingPolicy();
+        assertSame(uploads.get(4), queue.poll(lastOne, CELLULAR));
+        assertEquals(Arrays.asList("upload0", "upload2", "upload4"), lastOne.seen);
+
+        // the parked upload is back once the constraints are met
+        lastOne.seen.clear();
+        assertSame(uploads.get(3), queue.poll(lastOne, WIFI));
+        assertEquals(Arrays.asList("upload0", "upload2", "upload3"), lastOne.seen);
+
+        // a single upload is taken without asking the policy
+        lastOne.seen.clear();
+        queue.poll(FIFO, WIFI);
+        assertSame(uploads.get(2), queue.poll(lastOne, WIFI));
+        assertTrue(lastOne.seen.isEmpty());
+        assertNull(queue.poll(lastOne, WIFI));
+    }
+
+    /**
+     * Selects the last upload, recording the IDs of the uploads it has seen.
+     */
+    private static final class RecordingPolicy implements SchedulingPolicy {
+        final List<String> seen = new ArrayList<>();
+
+        @Override
+        public int selectNext(List<? extends WaitingUpload> waiting) {
+            for (WaitingUpload upload : waiting) {
+                seen.add(upload.getParams().id);
+            }
+            return waiting.size() - 1;
+        }
+    }
+
+    private static QueuedUpload newUpload(String id, int priority) {
+        UploadTaskParameters params = new UploadTaskParameters();
+        params.id = id;
+        params.priority = priority;
+        return new QueuedUpload(null, null, null, null, params, 0);
+    }
+}
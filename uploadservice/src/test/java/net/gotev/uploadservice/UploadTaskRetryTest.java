@@ -0,0 +1,156 @@
+package net.gotev.uploadservice;
+
+import net.gotev.uploadservice.network.FakeNetworkMonitor;
+import net.gotev.uploadservice.network.NetworkState;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static net.gotev.uploadservice.network.FakeNetworkMonitor.WIFI;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of the wait of {@link UploadTask} before retrying a failed upload, which ends early
+ * when the network comes back, like the upload service does with {@link UploadTask#retryWithin}.
+ *
+ * @author Aleksandar Gotev
+ */
+public class UploadTaskRetryTest {
+
+    // much longer than the tests, so only retryWithin can make the task retry in time
+    private static final int RETRY_WAIT_MILLIS = (int) TimeUnit.MINUTES.toMillis(10);
+
+    private int initialRetryWaitTime;
+
+    @BeforeClass
+    public static void disableLogs() {
+        Logger.setLogLevel(Logger.LogLevel.OFF);
+    }
+
+    @Before
+    public void setUp() {
+        initialRetryWaitTime = UploadService.INITIAL_RETRY_WAIT_TIME;
+        UploadService.INITIAL_RETRY_WAIT_TIME = RETRY_WAIT_MILLIS;
+    }
+
+    @After
+    public void tearDown() {
+        UploadService.INITIAL_RETRY_WAIT_TIME = initialRetryWaitTime;
+    }
+
+    @Test
+    public void retryWakesUpWhenTheNetworkIsRestored() throws InterruptedException {
+        FakeNetworkMonitor monitor = new FakeNetworkMonitor(WIFI);
+        NetworkDependentTask task = new NetworkDependentTask(monitor);
+        startRetryingOnReconnection(monitor, task, 0);
+
+        Thread thread = runAndLoseConnectivity(monitor, task);
+
+        long restored = System.nanoTime();
+        monitor.setState(WIFI);
+        thread.join(TimeUnit.SECONDS.toMillis(10));
+
+        assertFalse("the task is still waiting to retry", thread.isAlive());
+        assertEquals(2, task.attemptTimes.size());
+        assertTrue(task.attemptTimes.get(1) >= restored);
+    }
+
+    @Test
+    public void retryWaitsUntilTheWindowExpires() throws InterruptedException {
+        long window = 500;
+
+        FakeNetworkMonitor monitor = new FakeNetworkMonitor(WIFI);
+        NetworkDependentTask task = new NetworkDependentTask(monitor);
+        startRetryingOnReconnection(monitor, task, window);
+
+        Thread thread = runAndLoseConnectivity(monitor, task);
+
+        long restored = System.nanoTime();
+        monitor.setState(WIFI);
+        thread.join(TimeUnit.SECONDS.toMillis(10));
+
+        assertFalse("the task is still waiting to retry", thread.isAlive());
+        assertEquals(2, task.attemptTimes.size());
+
+        long waited = TimeUnit.NANOSECONDS.toMillis(task.attemptTimes.get(1) - restored);
+        assertTrue("retried after " + waited + "ms, before the window of " + window + "ms",
+                waited >= window - 50);
+
+        // the task doesn't wait anymore, so there's nothing left to shorten
+        assertFalse(task.retryWithin(0));
+    }
+
+    /**
+     * Makes the task retry within the given delay when the network comes back, like the
+     * upload service does.
+     */
+    private static void startRetryingOnReconnection(FakeNetworkMonitor monitor, UploadTask task,
+                                                    long delay) {
+        monitor.start(null, state -> {
+            if (state.isConnected()) {
+                task.retryWithin(delay);
+            }
+        });
+    }
+
+    /**
+     * Runs the task in a new thread, losing connectivity during the first attempt.
+     * @return thread of the task, which is waiting to retry
+     */
+    private static Thread runAndLoseConnectivity(FakeNetworkMonitor monitor,
+                                                 NetworkDependentTask task)
+            throws InterruptedException {
+        task.loseConnectivity = true;
+        Thread thread = new Thread(task);
+        thread.start();
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (task.getSnapshot(UploadSnapshot.State.RUNNING).getState()
+                != UploadSnapshot.State.WAITING_RETRY) {
+            assertTrue("the task is not waiting to retry", System.nanoTime() < deadline);
+            Thread.sleep(10);
+        }
+
+        assertEquals(NetworkState.DISCONNECTED, monitor.getCurrentState());
+        return thread;
+    }
+
+    /**
+     * Task whose upload fails when the network is not connected.
+     */
+    private static final class NetworkDependentTask extends UploadTask {
+        private final FakeNetworkMonitor monitor;
+        final List<Long> attemptTimes = Collections.synchronizedList(new ArrayList<Long>());
+        volatile boolean loseConnectivity;
+
+        NetworkDependentTask(FakeNetworkMonitor monitor) {
+            this.monitor = monitor;
+            params = new UploadTaskParameters();
+            params.id = "upload";
+            params.setMaxRetries(1);
+        }
+
+        @Override
+        protected void upload() throws Exception {
+            attemptTimes.add(System.nanoTime());
+
+            if (loseConnectivity) {
+                loseConnectivity = false;
+                monitor.setState(NetworkState.DISCONNECTED);
+            }
+
+            if (!monitor.getCurrentState().isConnected())
+                throw new IOException("Connection lost");
+        }
+    }
+}
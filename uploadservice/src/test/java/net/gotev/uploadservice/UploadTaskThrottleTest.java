@@ -0,0 +1,113 @@
+package net.gotev.uploadservice;
+
+import net.gotev.uploadservice.http.BodyWriter;
+import net.gotev.uploadservice.http.impl.HurlBodyWriter;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of {@link UploadTask#throttle(int)}, with a body written by a {@link BodyWriter} to a
+ * loopback socket like the upload tasks do.
+ *
+ * @author Aleksandar Gotev
+ */
+public class UploadTaskThrottleTest {
+
+    private static final long RATE = 500_000;
+    private static final int BODY_SIZE = 1_000_000;
+
+    @BeforeClass
+    public static void disableLogs() {
+        Logger.setLogLevel(Logger.LogLevel.OFF);
+    }
+
+    @Test
+    public void bodyIsWrittenAtTheMaxUploadRate() throws Exception {
+        ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        AtomicLong received = new AtomicLong();
+        Thread reader = new Thread(() -> {
+            try {
+                Socket socket = server.accept();
+                try {
+                    InputStream in = socket.getInputStream();
+                    byte[] buffer = new byte[8192];
+                    int read;
+
+                    while ((read = in.read(buffer)) > 0) {
+                        received.addAndGet(read);
+                    }
+                } finally {
+                    socket.close();
+                }
+            } catch (IOException exc) {
+                exc.printStackTrace();
+            }
+        });
+        reader.start();
+
+        ThrottledTask task = new ThrottledTask(RATE);
+        long start = System.nanoTime();
+
+        try {
+            Socket socket = new Socket(server.getInetAddress(), server.getLocalPort());
+            try {
+                new HurlBodyWriter(socket.getOutputStream())
+                        .writeStream(new ByteArrayInputStream(new byte[BODY_SIZE]), task);
+            } finally {
+                socket.close();
+            }
+        } finally {
+            server.close();
+        }
+
+        double seconds = (System.nanoTime() - start) / (double) TimeUnit.SECONDS.toNanos(1);
+        reader.join(TimeUnit.SECONDS.toMillis(10));
+        assertEquals(BODY_SIZE, received.get());
+
+        // the last buffer is written in debt, so the task doesn't wait for it
+        double expected = (double) (BODY_SIZE - UploadService.BUFFER_SIZE) / RATE;
+
+        // bounds are generous, as the test runs on machines with unpredictable load
+        assertTrue("body written in " + seconds + "s, expected about " + expected + "s",
+                seconds >= expected * 0.7 && seconds <= expected * 3);
+    }
+
+    /**
+     * Task which only throttles the bytes written by a body writer.
+     */
+    private static final class ThrottledTask extends UploadTask
+            implements BodyWriter.OnStreamWriteListener {
+
+        ThrottledTask(long maxUploadRate) {
+            params = new UploadTaskParameters();
+            setMaxUploadRate(maxUploadRate);
+        }
+
+        @Override
+        protected void upload() {
+        }
+
+        @Override
+        public boolean shouldContinueWriting() {
+            return shouldContinue;
+        }
+
+        @Override
+        public void onBytesWritten(int bytesWritten) {
+            throttle(bytesWritten);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package net.gotev.uploadservice.network;
+
+import android.content.Context;
+
+/**
+ * Network monitor whose state is set by the tests, which notifies the listener like the
+ * system would do.
+ *
+ * @author Aleksandar Gotev
+ */
+public class FakeNetworkMonitor implements NetworkMonitor {
+
+    public static final NetworkState WIFI = new NetworkState(true, true, true, false, 0);
+    public static final NetworkState CELLULAR = new NetworkState(true, true, false, false, 0);
+    public static final NetworkState ROAMING = new NetworkState(true, true, false, true, 0);
+
+    private volatile NetworkState state;
+    private volatile Listener listener;
+
+    public FakeNetworkMonitor(NetworkState state) {
+        this.state = state;
+    }
+
+    @Override
+    public void start(Context context, Listener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public void stop() {
+        listener = null;
+    }
+
+    @Override
+    public NetworkState getCurrentState() {
+        return state;
+    }
+
+    public boolean isStarted() {
+        return listener != null;
+    }
+
+    /**
+     * Changes the network state and notifies the listener, if the monitor has been started.
+     *
+     * @param state new network state
+     */
+    public void setState(NetworkState state) {
+        this.state = state;
+
+        Listener current = listener;
+        if (current != null) {
+            current.onNetworkStateChanged(state);
+        }
+    }
+}
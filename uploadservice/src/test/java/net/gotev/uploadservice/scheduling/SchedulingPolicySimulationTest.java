@@ -0,0 +1,217 @@
+package net.gotev.uploadservice.scheduling;
+
+import net.gotev.uploadservice.UploadTaskParameters;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs the same workloads through every scheduling policy on a simulated worker thread which
+ * uploads one byte per time unit, and compares the mean and 99th percentile latency, from
+ * when an upload is enqueued to when it's done.
+ *
+ * @author Aleksandar Gotev
+ */
+public class SchedulingPolicySimulationTest {
+
+    private static final long SEED = 42;
+    private static final int UPLOADS = 2000;
+
+    private static final String SMALL = "small";
+    private static final String BULK = "bulk";
+    private static final String INTERACTIVE = "interactive";
+
+    @Test
+    public void shortestJobFirstLowersMeanLatencyAndDelaysBigUploads() {
+        List<SimulatedUpload> workload = mixedSizes();
+
+        Latency fifo = simulate(new FifoPolicy(), workload, null);
+        Latency sjf = simulate(new ShortestJobFirstPolicy(), workload, null);
+
+        assertTrue("SJF " + sjf + " mean not lower than FIFO " + fifo, sjf.mean < fifo.mean / 2);
+
+        // small uploads don't wait behind the big ones anymore, which wait longer instead
+        Latency fifoSmall = simulate(new FifoPolicy(), workload, SMALL);
+        Latency sjfSmall = simulate(new ShortestJobFirstPolicy(), workload, SMALL);
+
+        assertTrue("SJF " + sjfSmall + " not better than FIFO " + fifoSmall + " for small uploads",
+                sjfSmall.mean < fifoSmall.mean / 5 && sjfSmall.p99 < fifoSmall.p99 / 5);
+        assertTrue("SJF " + sjf + " p99 not higher than FIFO " + fifo, sjf.p99 > fifo.p99);
+    }
+
+    @Test
+    public void earliestDeadlineFirstLowersLatencyOfUrgentUploads() {
+        List<SimulatedUpload> workload = mixedSizes();
+
+        // one upload out of ten has to be done soon after it's enqueued
+        Random random = new Random(SEED);
+        for (SimulatedUpload upload : workload) {
+            if (random.nextInt(10) == 0) {
+                upload.params.deadline = upload.arrival + upload.size * 4;
+                upload.params.tags.add(0, INTERACTIVE);
+            }
+        }
+
+        Latency fifo = simulate(new FifoPolicy(), workload, INTERACTIVE);
+        Latency edf = simulate(new EarliestDeadlineFirstPolicy(), workload, INTERACTIVE);
+
+        assertTrue("EDF " + edf + " not better than FIFO " + fifo + " for urgent uploads",
+                edf.mean < fifo.mean / 2 && edf.p99 < fifo.p99);
+    }
+
+    @Test
+    public void weightedFairShareProtectsSmallGroupFromBacklog() {
+        List<SimulatedUpload> workload = new ArrayList<>();
+        Random random = new Random(SEED);
+
+        // a big backlog of one group is enqueued at once, then small uploads of another
+        // group keep arriving while it's being uploaded
+        for (int i = 0; i < 200; i++) {
+            workload.add(new SimulatedUpload("bulk" + i, BULK, 0, 50_000 + random.nextInt(50_000)));
+        }
+
+        long arrival = 0;
+        for (int i = 0; i < 200; i++) {
+            arrival += random.nextInt(100_000);
+            workload.add(new SimulatedUpload("interactive" + i, INTERACTIVE, arrival,
+                    1_000 + random.nextInt(9_000)));
+        }
+
+        Latency fifo = simulate(new FifoPolicy(), workload, INTERACTIVE);
+        Latency wfs = simulate(new WeightedFairSharePolicy(), workload, INTERACTIVE);
+        Latency weighted = simulate(new WeightedFairSharePolicy()
+                .setWeight(INTERACTIVE, 4), workload, INTERACTIVE);
+
+        assertTrue("WFS " + wfs + " not better than FIFO " + fifo + " for the small group",
+                wfs.mean < fifo.mean / 10 && wfs.p99 < fifo.p99 / 10);
+        assertTrue("weighted WFS " + weighted + " not better than WFS " + wfs,
+                weighted.mean <= wfs.mean && weighted.p99 <= wfs.p99);
+    }
+
+    @Test
+    public void fifoHasTheLowestMaximumLatency() {
+        List<SimulatedUpload> workload = mixedSizes();
+
+        long fifo = simulate(new FifoPolicy(), workload, null).max;
+
+        for (SchedulingPolicy policy : Arrays.asList(new ShortestJobFirstPolicy(),
+                new EarliestDeadlineFirstPolicy(), new WeightedFairSharePolicy())) {
+            long other = simulate(policy, workload, null).max;
+            assertTrue(policy.getClass().getSimpleName() + " max latency " + other
+                    + " lower than FIFO " + fifo, fifo <= other);
+        }
+    }
+
+    /**
+     * Mostly small uploads with some big ones, arriving so that the worker is busy about
+     * 90% of the time.
+     */
+    private static List<SimulatedUpload> mixedSizes() {
+        List<SimulatedUpload> workload = new ArrayList<>(UPLOADS);
+        Random random = new Random(SEED);
+        long arrival = 0;
+
+        for (int i = 0; i < UPLOADS; i++) {
+            long size = random.nextInt(5) == 0
+                    ? 1_000_000 + random.nextInt(9_000_000)
+                    : 10_000 + random.nextInt(90_000);
+
+            // mean size is about 1.1 MB, so arrivals are spaced on average by 1.2 MB
+            arrival += (long) (-Math.log(1 - random.nextDouble()) * 1_200_000);
+            workload.add(new SimulatedUpload("upload" + i, size < 1_000_000 ? SMALL : null,
+                    arrival, size));
+        }
+
+        return workload;
+    }
+
+    /**
+     * Runs the uploads one at a time, choosing the next one with the policy among the ones
+     * which have arrived.
+     * @param tag tag of the uploads whose latency is measured, or null to measure all of them
+     * @return latency of the measured uploads
+     */
+    private static Latency simulate(SchedulingPolicy policy, List<SimulatedUpload> workload,
+                                    String tag) {
+        List<Long> latencies = new ArrayList<>();
+        List<SimulatedUpload> waiting = new ArrayList<>();
+        int arrived = 0;
+        long now = 0;
+
+        while (arrived < workload.size() || !waiting.isEmpty()) {
+            if (waiting.isEmpty()) {
+                now = Math.max(now, workload.get(arrived).arrival);
+            }
+
+            while (arrived < workload.size() && workload.get(arrived).arrival <= now) {
+                waiting.add(workload.get(arrived++));
+            }
+
+            SimulatedUpload next = waiting.remove(policy.selectNext(waiting));
+            now += next.size;
+
+            if (tag == null || next.params.tags.contains(tag)) {
+                latencies.add(now - next.arrival);
+            }
+        }
+
+        return new Latency(latencies);
+    }
+
+    private static final class SimulatedUpload implements WaitingUpload {
+        final UploadTaskParameters params = new UploadTaskParameters();
+        final long arrival;
+        final long size;
+
+        SimulatedUpload(String id, String tag, long arrival, long size) {
+            params.id = id;
+            if (tag != null) {
+                params.tags.add(tag);
+            }
+            this.arrival = arrival;
+            this.size = size;
+        }
+
+        @Override
+        public UploadTaskParameters getParams() {
+            return params;
+        }
+
+        @Override
+        public long getTotalBytes() {
+            return size;
+        }
+    }
+
+    private static final class Latency {
+        final double mean;
+        final long p99;
+        final long max;
+
+        Latency(List<Long> latencies) {
+            Collections.sort(latencies);
+
+            long total = 0;
+            for (long latency : latencies) {
+                total += latency;
+            }
+
+            mean = (double) total / latencies.size();
+            p99 = latencies.get((int) Math.ceil(latencies.size() * 0.99) - 1);
+            max = latencies.get(latencies.size() - 1);
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "(mean %.0f, p99 %d)", mean, p99);
+        }
+    }
+}